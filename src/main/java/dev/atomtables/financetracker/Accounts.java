@@ -0,0 +1,121 @@
+package dev.atomtables.financetracker;
+
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleObjectProperty;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Accounts caches the list of accounts and remembers which one the views are showing.
+ * The list may be read from any thread; the selection belongs to the FX thread.
+ */
+public class Accounts {
+    // Singleton instance, loaded from the database on first use
+    public static final Accounts accounts = new Accounts();
+
+    // Stands for "every account" in account pickers (no real account has id 0)
+    public static final Database.Account ALL = new Database.Account(0, "All accounts", "");
+
+    private volatile List<Database.Account> list;
+    // Account the views show, or null for every account
+    private final ObjectProperty<Database.Account> current = new SimpleObjectProperty<>(null);
+
+    private Accounts() {}
+
+    /**
+     * Every account, in the order they were added (never empty: account 1 always exists)
+     */
+    public List<Database.Account> list() throws IOException {
+        List<Database.Account> accounts = list;
+        if (accounts != null) return accounts;
+        synchronized (this) {
+            if (list == null) {
+                // With the records in another store, everything is in the default account
+                List<Database.Account> loaded = LedgerStore.onDatabase() ? Database.database.getAccounts() : List.of();
+                list = loaded.isEmpty() ? List.of(new Database.Account(Database.DEFAULT_ACCOUNT, "Main card", "")) : List.copyOf(loaded);
+            }
+            return list;
+        }
+    }
+
+    /**
+     * Forgets the loaded accounts and shows every account again (for a data reset)
+     */
+    public synchronized void reset() {
+        list = null;
+        current.set(null);
+    }
+
+    /**
+     * ALL followed by every account, for account pickers
+     */
+    public List<Database.Account> choices() throws IOException {
+        List<Database.Account> choices = new ArrayList<>();
+        choices.add(ALL);
+        choices.addAll(list());
+        return choices;
+    }
+
+    /**
+     * Shows one account in the views, or every account for null or ALL
+     */
+    public void select(Database.Account account) {
+        current.set(account == null || account.id() == ALL.id() ? null : account);
+    }
+
+    /**
+     * The account with this id, or null
+     */
+    public Database.Account get(int id) throws IOException {
+        for (Database.Account account : list()) if (account.id() == id) return account;
+        return null;
+    }
+
+    /**
+     * Saves a new account and returns it
+     */
+    public synchronized Database.Account add(String name, String card) throws IOException {
+        LedgerStore.requireDatabase("Accounts");
+        int id = Database.database.addAccount(name.strip(), card.strip());
+        Database.Account account = new Database.Account(id, name.strip(), card.strip());
+        List<Database.Account> updated = new ArrayList<>(list());
+        updated.add(account);
+        list = List.copyOf(updated);
+        return account;
+    }
+
+    /**
+     * Saves a renamed account (or a new card label for it)
+     */
+    public synchronized void update(Database.Account account) throws IOException {
+        LedgerStore.requireDatabase("Accounts");
+        Database.database.updateAccount(account);
+        List<Database.Account> updated = new ArrayList<>(list());
+        updated.replaceAll(a -> a.id() == account.id() ? account : a);
+        list = List.copyOf(updated);
+        if (current.get() != null && current.get().id() == account.id()) current.set(account);
+    }
+
+    /**
+     * The account the views show (null = every account). Listen to it to follow switches.
+     */
+    public ObjectProperty<Database.Account> currentProperty() {
+        return current;
+    }
+
+    /**
+     * Id of the shown account, or null for every account
+     */
+    public Integer currentId() {
+        return current.get() == null ? null : current.get().id();
+    }
+
+    /**
+     * Account new records go in: the shown one, or the default when every account is shown
+     */
+    public int accountForNewRecords() {
+        return current.get() == null ? Database.DEFAULT_ACCOUNT : current.get().id();
+    }
+}
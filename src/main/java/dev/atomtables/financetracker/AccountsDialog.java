@@ -0,0 +1,89 @@
+package dev.atomtables.financetracker;
+
+import javafx.geometry.Insets;
+import javafx.scene.control.*;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+
+import java.io.IOException;
+
+public class AccountsDialog {
+
+    // Displays every account and lets the user add one or rename the selected one (and change its card label).
+    // Records stay with their account; nothing is deleted.
+    public static void showDialog() {
+        Dialog<Void> dialog = new Dialog<>();
+        dialog.setTitle("Accounts and Cards");
+        dialog.setHeaderText("Every record belongs to one account");
+        dialog.getDialogPane().getButtonTypes().add(ButtonType.CLOSE);
+
+        ListView<Database.Account> list = new ListView<>();
+        list.setPrefSize(400, 180);
+
+        // Input fields for a new or renamed account
+        TextField nameField = new TextField();
+        nameField.setPromptText("Name, e.g. Savings");
+        TextField cardField = new TextField();
+        cardField.setPromptText("Card, e.g. Visa 4242 (optional)");
+        list.getSelectionModel().selectedItemProperty().addListener((obs, old, account) -> {
+            if (account == null) return;
+            nameField.setText(account.name());
+            cardField.setText(account.card());
+        });
+
+        GridPane grid = new GridPane();
+        grid.setHgap(10);
+        grid.setVgap(10);
+        grid.add(new Label("Name:"), 0, 0);
+        grid.add(nameField, 1, 0);
+        grid.add(new Label("Card:"), 0, 1);
+        grid.add(cardField, 1, 1);
+
+        Label status = new Label();
+        Button add = new Button("Add account");
+        Button rename = new Button("Update selected account");
+
+        add.setOnAction(e -> {
+            if (nameField.getText().isBlank()) {
+                status.setText("Enter a name for the account.");
+                return;
+            }
+            try {
+                Database.Account account = Accounts.accounts.add(nameField.getText(), cardField.getText());
+                refresh(list);
+                status.setText("Added " + account + ".");
+            } catch (IOException ex) {
+                status.setText("Error adding account: " + ex.getMessage());
+            }
+        });
+
+        rename.setOnAction(e -> {
+            Database.Account selected = list.getSelectionModel().getSelectedItem();
+            if (selected == null || nameField.getText().isBlank()) return;
+            try {
+                Accounts.accounts.update(new Database.Account(selected.id(), nameField.getText().strip(), cardField.getText().strip()));
+                refresh(list);
+                status.setText("Updated.");
+            } catch (IOException ex) {
+                status.setText("Error updating account: " + ex.getMessage());
+            }
+        });
+
+        VBox content = new VBox(10, list, grid, new HBox(10, add, rename), status);
+        content.setPadding(new Insets(10));
+        dialog.getDialogPane().setContent(content);
+
+        refresh(list);
+        dialog.showAndWait();
+    }
+
+    // Reloads the account list
+    private static void refresh(ListView<Database.Account> list) {
+        try {
+            list.getItems().setAll(Accounts.accounts.list());
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package dev.atomtables.financetracker;
+
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import java.io.IOException;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * AnomalyDetector scores each spending record against running statistics of its merchant and of its type,
+ * kept on a log scale (amounts are heavy-tailed): a Welford mean/variance over all history and an EWMA
+ * mean/variance that follows recent behaviour. A record is unusual when it sits more than THRESHOLD
+ * deviations above both for some key. Each key's state is a few numbers updated in place, so scoring a
+ * record never looks at history. State and flags are stored with the id of the last record seen, so on
+ * start only records added since are processed (with nothing stored, the archived years too). With a
+ * ledger store other than SQLite they are kept in memory only and rebuilt from all records on each start.
+ * Use from the FX thread.
+ */
+public class AnomalyDetector {
+    // Singleton instance, loaded lazily on first use
+    public static final AnomalyDetector anomalies = new AnomalyDetector();
+
+    // Deviations above normal at which a record is flagged
+    public static final double THRESHOLD = 3.0;
+    // A key needs this many records before it can flag anything
+    private static final int MIN_SAMPLES = 5;
+    // Weight of the newest record in the EWMA
+    private static final double ALPHA = 0.1;
+    // Smallest deviation used (on the log scale), so a merchant that always charges the same isn't flagged for cents
+    private static final double MIN_SD = 0.15;
+    // How many recent flags are kept for the UI
+    private static final int FLAGS_KEPT = 20;
+
+    /**
+     * Running statistics of log(1 + |amount|) for one key ("m:" + merchant or "t:" + type)
+     */
+    public record Stats(String key, int count, double mean, double m2, double ewmaMean, double ewmaVar, int lastId) {
+        public double sd() {
+            return count > 1 ? Math.sqrt(m2 / (count - 1)) : 0;
+        }
+
+        // Welford's update, plus the EWMA update
+        Stats plus(double x, int id) {
+            if (count == 0) return new Stats(key, 1, x, 0, x, 0, Math.max(lastId, id));
+            int n = count + 1;
+            double delta = x - mean;
+            double newMean = mean + delta / n;
+            double diff = x - ewmaMean;
+            double step = ALPHA * diff;
+            return new Stats(key, n, newMean, m2 + delta * (x - newMean), ewmaMean + step,
+                    (1 - ALPHA) * (ewmaVar + diff * step), Math.max(lastId, id));
+        }
+
+        // Welford's update in reverse; the EWMA can't forget one value, so it is left as it is
+        Stats minus(double x) {
+            if (count <= 1) return new Stats(key, 0, 0, 0, ewmaMean, ewmaVar, lastId);
+            int n = count - 1;
+            double newMean = (count * mean - x) / n;
+            return new Stats(key, n, newMean, Math.max(0, m2 - (x - newMean) * (x - mean)), ewmaMean, ewmaVar, lastId);
+        }
+
+        // How many deviations x is above both the long-run and the recent normal (0 if too little data)
+        double score(double x) {
+            if (count < MIN_SAMPLES) return 0;
+            double longRun = (x - mean) / Math.max(sd(), MIN_SD);
+            double recent = (x - ewmaMean) / Math.max(Math.sqrt(ewmaVar), MIN_SD);
+            return Math.min(longRun, recent);
+        }
+    }
+
+    /**
+     * A flagged record, with its score and a short explanation
+     */
+    public record Flag(int financeId, double score, String reason) {}
+
+    private final Map<String, Stats> stats = new HashMap<>();
+    private final Map<Integer, Flag> flags = new HashMap<>();
+    private final ObservableList<Flag> recent = FXCollections.observableArrayList();
+    private final List<Flag> pending = new ArrayList<>();
+    private boolean built = false;
+
+    private AnomalyDetector() {}
+
+    private static double value(Database.Finance f) {
+        return Math.log1p(Math.abs(f.amount));
+    }
+
+    // The keys a spending record counts towards
+    private static List<String> keys(Database.Finance f) {
+        String merchant = RecurringDetector.normalizeMerchant(f.name);
+        List<String> keys = new ArrayList<>(2);
+        if (!merchant.isEmpty()) keys.add("m:" + merchant);
+        if (f.type != null) keys.add("t:" + f.type.name());
+        return keys;
+    }
+
+    /**
+     * Loads the stored statistics and flags, scores records added since, then follows the ledger
+     */
+    public void ensureBuilt() throws IOException {
+        if (built) return;
+        long start = Metrics.metrics.start();
+        int watermark = 0;
+        if (LedgerStore.onDatabase()) {
+            for (Stats s : Database.database.getAnomalyStats()) {
+                stats.put(s.key(), s);
+                watermark = Math.max(watermark, s.lastId());
+            }
+            for (Flag flag : Database.database.getAnomalyFlags()) flags.put(flag.financeId(), flag);
+        }
+
+        // Ledger records are in id order, so only the tail past the watermark is new
+        ObservableList<Database.Finance> finances = Ledger.ledger.getFinances();
+        int caughtUp = 0;
+        for (int i = finances.size() - 1; i >= 0 && finances.get(i).id > watermark; i--) caughtUp++;
+        Set<String> changed = new HashSet<>();
+        List<Database.Finance> fresh = finances.subList(finances.size() - caughtUp, finances.size());
+        // Built from nothing (no stored state): the archived years are history too
+        if (watermark == 0) fresh = Archive.withClosedYears(fresh);
+        for (Database.Finance f : fresh) add(f, changed);
+        save(changed);
+        Metrics.metrics.count("anomaly.caughtUp", fresh.size());
+
+        finances.addListener(follower);
+        built = true;
+        Metrics.metrics.stop("anomaly.build.time", start);
+    }
+
+    // Applies the ledger's change events; held in a field so reset() can unsubscribe it
+    private final ListChangeListener<Database.Finance> follower = change -> {
+        Set<String> touched = new HashSet<>();
+        while (change.next()) {
+            // A replacement that keeps name, type and amount (new tags) doesn't change any statistics
+            Map<Integer, Database.Finance> removed = new HashMap<>();
+            for (Database.Finance f : change.getRemoved()) removed.put(f.id, f);
+            for (Database.Finance f : change.getAddedSubList()) {
+                Database.Finance old = removed.get(f.id);
+                if (old != null && old.amount == f.amount && old.type == f.type && Objects.equals(old.name, f.name)) {
+                    removed.remove(f.id);
+                    continue;
+                }
+                if (old != null) remove(removed.remove(f.id), touched);
+                add(f, touched);
+            }
+            for (Database.Finance f : removed.values()) remove(f, touched);
+        }
+        save(touched);
+    };
+
+    /**
+     * Forgets every statistic and flag and stops following the ledger (for a data reset, which empties
+     * the stored ones too); the next use loads them again
+     */
+    public void reset() throws IOException {
+        if (built) Ledger.ledger.getFinances().removeListener(follower);
+        built = false;
+        stats.clear();
+        flags.clear();
+        pending.clear();
+        recent.clear();
+    }
+
+    // Scores a record against the statistics so far, then adds it to them
+    private void add(Database.Finance f, Set<String> changed) {
+        if (f.amount >= 0) return;
+        double x = value(f);
+        double best = 0;
+        Stats worst = null;
+        for (String key : keys(f)) {
+            Stats s = stats.getOrDefault(key, new Stats(key, 0, 0, 0, 0, 0, 0));
+            double score = s.score(x);
+            if (score > best) {
+                best = score;
+                worst = s;
+            }
+            stats.put(key, s.plus(x, f.id));
+            changed.add(key);
+        }
+        if (best >= THRESHOLD) flag(f, best, worst);
+    }
+
+    // Takes a deleted record back out of its statistics and drops its flag
+    private void remove(Database.Finance f, Set<String> changed) {
+        if (f.amount >= 0) return;
+        double x = value(f);
+        for (String key : keys(f)) {
+            Stats s = stats.get(key);
+            if (s == null) continue;
+            stats.put(key, s.minus(x));
+            changed.add(key);
+        }
+        if (flags.remove(f.id) != null && LedgerStore.onDatabase()) Database.database.deleteAnomalyFlagAsync(f.id);
+    }
+
+    private void flag(Database.Finance f, double score, Stats against) {
+        double typical = Math.expm1(against.mean());
+        String label = against.key().startsWith("m:") ? "at " + f.name : "for " + f.type.value;
+        String reason = NumberFormat.getCurrencyInstance(Locale.US).format(-f.amount) + " is "
+                + String.format("%.1f", Math.abs(f.amount) / Math.max(typical, 0.01)) + "x the usual "
+                + NumberFormat.getCurrencyInstance(Locale.US).format(typical) + " " + label;
+        Flag flag = new Flag(f.id, score, reason);
+        flags.put(f.id, flag);
+        if (LedgerStore.onDatabase()) Database.database.saveAnomalyFlagAsync(flag);
+        Metrics.metrics.count("anomaly.flagged", 1);
+        // Flags are handed to the UI in one batch after the current change (or import) is processed
+        if (!Platform.isFxApplicationThread()) return;
+        if (pending.isEmpty()) Platform.runLater(this::publish);
+        pending.add(flag);
+    }
+
+    private void publish() {
+        List<Flag> newest = new ArrayList<>(pending.subList(Math.max(0, pending.size() - FLAGS_KEPT), pending.size()));
+        pending.clear();
+        Collections.reverse(newest);
+        recent.addAll(0, newest);
+        if (recent.size() > FLAGS_KEPT) recent.remove(FLAGS_KEPT, recent.size());
+    }
+
+    // Queues saving the keys that changed; emptied keys are deleted
+    private void save(Set<String> changed) {
+        boolean persist = LedgerStore.onDatabase();
+        for (String key : changed) {
+            Stats s = stats.get(key);
+            if (s.count() == 0) {
+                stats.remove(key);
+                if (persist) Database.database.deleteAnomalyStatsAsync(key);
+            } else if (persist) {
+                Database.database.saveAnomalyStatsAsync(s);
+            }
+        }
+    }
+
+    /**
+     * The flag of a record, or null if it isn't unusual
+     */
+    public Flag flagFor(int financeId) {
+        return flags.get(financeId);
+    }
+
+    /**
+     * Flags raised while the app has been running, newest first.
+     * Subscribe with a (weak) ListChangeListener to be notified.
+     */
+    public ObservableList<Flag> getRecent() {
+        return recent;
+    }
+
+    /**
+     * Statistics for a key, or null
+     */
+    public Stats statsFor(String key) {
+        return stats.get(key);
+    }
+}
@@ -1,15 +1,20 @@
 package dev.atomtables.financetracker;
 
+import dev.atomtables.financetracker.views.MainView;
 import javafx.animation.Interpolator;
 import javafx.animation.KeyFrame;
 import javafx.animation.KeyValue;
 import javafx.animation.Timeline;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.beans.value.WritableValue;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Node;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyCodeCombination;
+import javafx.scene.input.KeyCombination;
 import javafx.scene.layout.AnchorPane;
 import javafx.scene.layout.StackPane;
 import javafx.stage.Stage;
@@ -31,6 +36,7 @@ public class App extends Application {
     public static StackPane parent;        // The root node of the scene, used for transitions
 
     private static final ArrayList<String> navStack = new ArrayList<>(); // Navigation history stack
+    private static final DiagnosticsOverlay diagnostics = new DiagnosticsOverlay(); // Hidden metrics overlay
 
     @Override
     public void start(Stage stage) throws IOException {
@@ -39,19 +45,33 @@ public class App extends Application {
         parent = fxmlLoader.load();
         scene = new Scene(parent);
 
-        // Determine whether a user exists in the database
-        if (Database.database.getUser() != null) {
+        // Determine whether a user exists; a dashboard snapshot means one did last time,
+        // so the first frame can be shown (from that same snapshot) without querying the database
+        DashboardSnapshot snapshot = DashboardSnapshot.load();
+        if (snapshot != null || Ledger.ledger.getUser() != null) {
             // If user exists, load the main application view
-            Parent r = (new FXMLLoader(App.class.getResource("tabs/MainView.fxml"))).load();
+            MainView.paintFirstFrom(snapshot);
+            Parent r = load("tabs/MainView");
             parent.getChildren().add(r);
             navStack.add("tabs/MainView");
         } else {
             // Otherwise, load the welcome screen
-            Parent r = (new FXMLLoader(App.class.getResource("WelcomeView.fxml"))).load();
+            Parent r = load("WelcomeView");
             parent.getChildren().add(r);
             navStack.add("WelcomeView");
         }
 
+        // Ctrl+Shift+D toggles the hidden diagnostics overlay
+        scene.getAccelerators().put(new KeyCodeCombination(KeyCode.D, KeyCombination.SHORTCUT_DOWN, KeyCombination.SHIFT_DOWN),
+                diagnostics::toggle);
+
+        // Ctrl+Z undoes the last edit made since launch, Ctrl+Shift+Z (or Ctrl+Y) redoes it
+        Platform.runLater(ChangeLog.changes::start);
+        scene.getAccelerators().put(new KeyCodeCombination(KeyCode.Z, KeyCombination.SHORTCUT_DOWN), () -> undoRedo(true));
+        scene.getAccelerators().put(new KeyCodeCombination(KeyCode.Z, KeyCombination.SHORTCUT_DOWN, KeyCombination.SHIFT_DOWN),
+                () -> undoRedo(false));
+        scene.getAccelerators().put(new KeyCodeCombination(KeyCode.Y, KeyCombination.SHORTCUT_DOWN), () -> undoRedo(false));
+
         // Apply application-wide styles
         scene.getStylesheets().add(Objects.requireNonNull(getClass().getResource("design.css")).toExternalForm());
 
@@ -60,6 +80,30 @@ public class App extends Application {
         stage.setScene(scene);
         stage.show();
         stage.setResizable(false);
+
+        // Report long-running work on the FX thread to JFR (idle unless a recording wants it)
+        FxStallWatchdog.start();
+
+        // Move closed years out of the finances table, and back up the database once a day, in the background
+        Archive.archive.startArchiving();
+        Backups.backups.start();
+    }
+
+    // Undoes (or redoes) one edit; the views follow the ledger, so nothing else needs refreshing
+    private static void undoRedo(boolean undo) {
+        try {
+            if (undo) ChangeLog.changes.undo();
+            else ChangeLog.changes.redo();
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    @Override
+    public void stop() {
+        // Make sure queued writes reach the database (and the ledger store, if it is another one) before the JVM exits
+        if (LedgerStore.store != Database.database) LedgerStore.store.close();
+        Database.database.close();
     }
 
     public static void main(String[] args) {
@@ -82,10 +126,28 @@ public class App extends Application {
         }
     }
 
+    // Loads an FXML view, timing the parse plus controller initialize
+    static Parent load(String fxml) throws IOException {
+        long start = Metrics.metrics.start();
+        try {
+            return (new FXMLLoader(App.class.getResource(fxml + ".fxml"))).load();
+        } finally {
+            Metrics.metrics.stop("view." + fxml + ".load.time", start);
+        }
+    }
+
     // Loads and transitions to a new root view with a slide-in animation
-    static void loadRoot/*with animation*/(String fxml) throws IOException {
+    static void loadRoot/*with animation*/(String fxml, String action) throws IOException {
+        long start = Metrics.metrics.start();
+        // JFR event spanning the whole navigation, committed when the animation ends
+        JfrEvents.Navigation event = new JfrEvents.Navigation();
+        event.begin();
+        event.action = action;
+        event.target = fxml;
+
         Node old = parent.getChildren().getFirst(); // Get current displayed view
-        Parent root = (new FXMLLoader(App.class.getResource(fxml + ".fxml"))).load(); // Load new view
+        Parent root = load(fxml); // Load new view
+        event.loadTime = System.nanoTime() - start;
 
         if (scene != null) {
             // Prepare the new view to slide in from the right
@@ -97,31 +159,37 @@ public class App extends Application {
             KeyValue kv = new KeyValue(root.translateXProperty(), 0, Interpolator.LINEAR);
             KeyFrame kf = new KeyFrame(Duration.seconds(0.3), kv);
             timeline.getKeyFrames().add(kf);
+            long animationStart = System.nanoTime();
             timeline.setOnFinished(t -> {
                 // Remove the old view after the animation completes
                 parent.getChildren().remove(old);
+                event.animationTime = System.nanoTime() - animationStart;
+                event.commit();
             });
             timeline.play();
         } else {
             System.err.println("scene is null");
+            event.commit();
         }
+        Metrics.metrics.stop("view.navigate.time", start);
     }
 
     // Navigate back to the previous view in the stack
     public static void goBack() throws IOException {
         navStack.removeLast(); // Remove current view from navigation stack
-        loadRoot(navStack.getLast()); // Load the previous view
+        loadRoot(navStack.getLast(), "back"); // Load the previous view
     }
 
     // Add a new view to the navigation stack and show it
     public static void addRoot(String fxml) throws IOException {
-        loadRoot(fxml); // Load new view
+        loadRoot(fxml, "add"); // Load new view
         navStack.add(fxml); // Add to stack
     }
 
     // Set a new root view, clearing all previous navigation history
     public static void setRoot(String fxml) throws IOException {
         navStack.clear(); // Clear navigation stack
-        addRoot(fxml);    // Load and push new root view
+        loadRoot(fxml, "set"); // Load new root view
+        navStack.add(fxml);    // Push it as the only entry
     }
 }
\ No newline at end of file
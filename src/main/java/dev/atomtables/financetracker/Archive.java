@@ -0,0 +1,405 @@
+package dev.atomtables.financetracker;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Archive partitions the ledger by year and moves closed years out of the finances table. A closed
+ * year's records are written to a compressed, read-only segment file (archive/&lt;year&gt;-&lt;n&gt;.seg) and
+ * replaced in the database by per-month summaries, so the finances table, its indexes and the ledger
+ * only hold the open years. Database reads that reach into an archived year merge the segment (or,
+ * for whole months, just its summaries) back in. Safe to use from any thread.
+ */
+public class Archive {
+    // Singleton instance; the archived years are loaded from the database on first use
+    public static final Archive archive = new Archive();
+
+    // Directory the segment files live in, next to the database
+    public static final Path DIR = Path.of("archive");
+    // Years kept in the finances table: the current one and the one before
+    public static final int OPEN_YEARS = 2;
+
+    // Bumped whenever the segment layout changes
+    private static final int VERSION = 1;
+
+    /**
+     * An archived year: the segment file holding its records and how many there are
+     */
+    public record Segment(int year, String file, int records) {}
+
+    /**
+     * Money and number of records of one month (1-12) of an archived year, for one account, type and direction
+     */
+    public record Summary(int year, int month, int account, Database.Finance.Type type, boolean direction,
+                          double credits, double debits, long count) {}
+
+    private volatile Map<Integer, Segment> segments; // Archived year -> segment
+    private volatile Map<Integer, List<Summary>> summaries; // Archived year -> its summaries
+    // Segments read recently, by file name; the garbage collector may drop them when memory runs low
+    private final Map<String, SoftReference<List<Database.Finance>>> loaded = new HashMap<>();
+
+    private Archive() {}
+
+    // Loads the archived years and their summaries the first time they are needed
+    private void ensureLoaded() throws IOException {
+        if (segments != null) return;
+        synchronized (this) {
+            if (segments != null) return;
+            Map<Integer, Segment> bySegment = new TreeMap<>();
+            for (Segment segment : Database.database.getArchiveSegments()) bySegment.put(segment.year(), segment);
+            Map<Integer, List<Summary>> byYear = new HashMap<>();
+            for (Summary s : Database.database.getArchiveSummaries()) {
+                byYear.computeIfAbsent(s.year(), y -> new ArrayList<>()).add(s);
+            }
+            summaries = byYear;
+            segments = bySegment;
+        }
+    }
+
+    /**
+     * Forgets the archived years and deletes every segment file (for a data reset, run after the
+     * database no longer refers to them, so a crash part way only leaves unused files behind)
+     */
+    public synchronized void reset() throws IOException {
+        forget();
+        if (!Files.isDirectory(DIR)) return;
+        try (var files = Files.list(DIR)) {
+            files.forEach(Archive::delete);
+        }
+    }
+
+    /**
+     * Forgets the archived years and the segments read, so they are loaded again from the database
+     * (after it was restored from a backup)
+     */
+    public synchronized void forget() {
+        segments = null;
+        summaries = null;
+        synchronized (loaded) {
+            loaded.clear();
+        }
+    }
+
+    /**
+     * Deletes the segment files the database doesn't refer to (those of the data a restore replaced)
+     */
+    public synchronized void deleteUnusedSegments() throws IOException {
+        if (!Files.isDirectory(DIR)) return;
+        Set<String> used = new HashSet<>();
+        for (Segment segment : Database.database.getArchiveSegments()) used.add(segment.file());
+        try (var files = Files.list(DIR)) {
+            files.filter(file -> !used.contains(file.getFileName().toString())).forEach(Archive::delete);
+        }
+    }
+
+    /**
+     * First year that stays in the finances table
+     */
+    public static int firstOpenYear() {
+        return LocalDate.now().getYear() - OPEN_YEARS + 1;
+    }
+
+    /**
+     * Epoch millis at the start of the first open year: older records are (or are about to be) archived
+     */
+    public static long firstOpenMillis() {
+        return startMillis(firstOpenYear());
+    }
+
+    /**
+     * The given ledger records plus every closed year's (archived, or about to be), in id order, for an
+     * index built from nothing that should see the history the ledger doesn't hold. A record the ledger
+     * holds too (dated back this session) comes once, as the given copy. With a store other than SQLite
+     * the ledger holds every year, so the records are returned as they are.
+     */
+    public static List<Database.Finance> withClosedYears(List<Database.Finance> records) throws IOException {
+        if (!LedgerStore.onDatabase()) return records;
+        Set<Integer> held = new HashSet<>();
+        for (Database.Finance f : records) held.add(f.id);
+        List<Database.Finance> all = new ArrayList<>(records);
+        for (Database.Finance f : Database.database.getFinances(FinanceFilter.NONE.withDates(null, firstOpenMillis()))) {
+            if (!held.contains(f.id)) all.add(f);
+        }
+        all.sort(Comparator.comparingInt(f -> f.id));
+        return all;
+    }
+
+    /**
+     * Archives the closed years on a background thread, so launch never waits on the segment rewrite.
+     * The ledger only loads the open years, so nothing on screen changes when it is done.
+     * Only the SQLite store archives; the others keep every year.
+     */
+    public void startArchiving() {
+        if (!LedgerStore.onDatabase()) return;
+        Thread thread = new Thread(() -> {
+            try {
+                archiveClosedYears();
+            } catch (IOException | RuntimeException e) {
+                // Nothing is deleted unless its segment was written whole; the records just stay in the
+                // table until the next launch
+                Metrics.metrics.count("archive.errors", 1);
+            }
+        }, "archive");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Moves every record dated before the first open year into its year's segment.
+     * Cheap when there is nothing to move: one indexed range query that finds no rows.
+     */
+    public void archiveClosedYears() throws IOException {
+        ensureLoaded();
+        List<Database.Finance> closed = Database.database.getHotFinances(
+                FinanceFilter.NONE.withDates(null, startMillis(firstOpenYear())));
+        if (closed.isEmpty()) return;
+        Map<Integer, List<Database.Finance>> byYear = new TreeMap<>();
+        for (Database.Finance f : closed) byYear.computeIfAbsent(yearOf(f.date.getTime()), y -> new ArrayList<>()).add(f);
+        for (var entry : byYear.entrySet()) archiveYear(entry.getKey(), entry.getValue());
+    }
+
+    // Writes a year's records (those archived before plus the newly closed ones) to a new segment, syncs
+    // it to disk and reads it back, then swaps it in and removes the rows from the finances table in one
+    // write. A crash (or power loss) before that write leaves the old segment in use and the rows in place.
+    private synchronized void archiveYear(int year, List<Database.Finance> hot) throws IOException {
+        long start = Metrics.metrics.start();
+        Segment previous = segments.get(year);
+        // By id, so a record already in the old segment is not archived twice
+        Map<Integer, Database.Finance> byId = new TreeMap<>();
+        if (previous != null) for (Database.Finance f : read(previous)) byId.put(f.id, f);
+        for (Database.Finance f : hot) byId.put(f.id, f);
+        List<Database.Finance> records = new ArrayList<>(byId.values());
+
+        Segment segment = new Segment(year, year + "-" + System.currentTimeMillis() + ".seg", records.size());
+        write(segment, records);
+        verify(segment, records);
+        List<Summary> summary = summarize(year, records);
+        Database.database.commitArchive(segment, summary, hot);
+        QueryCache.cache.clear();
+
+        Map<Integer, Segment> updatedSegments = new TreeMap<>(segments);
+        updatedSegments.put(year, segment);
+        Map<Integer, List<Summary>> updatedSummaries = new HashMap<>(summaries);
+        updatedSummaries.put(year, summary);
+        summaries = updatedSummaries;
+        segments = updatedSegments;
+        synchronized (loaded) {
+            loaded.put(segment.file(), new SoftReference<>(records));
+        }
+        if (previous != null) {
+            synchronized (loaded) {
+                loaded.remove(previous.file());
+            }
+            delete(DIR.resolve(previous.file()));
+        }
+        Metrics.metrics.count("archive.records", hot.size());
+        Metrics.metrics.stop("archive.year.time", start);
+    }
+
+    // Sums records per month, account, type and direction
+    private static List<Summary> summarize(int year, List<Database.Finance> records) {
+        record Key(int month, int account, Database.Finance.Type type, boolean direction) {}
+        Map<Key, double[]> sums = new HashMap<>(); // {credits, debits, count}
+        for (Database.Finance f : records) {
+            int month = zoned(f.date.getTime()).getMonthValue();
+            double[] sum = sums.computeIfAbsent(new Key(month, f.accountId, f.type, f.direction), k -> new double[3]);
+            if (f.amount > 0) sum[0] += f.amount;
+            else sum[1] += f.amount;
+            sum[2]++;
+        }
+        List<Summary> out = new ArrayList<>();
+        sums.forEach((k, sum) -> out.add(new Summary(year, k.month(), k.account(), k.type(), k.direction(), sum[0], sum[1], (long) sum[2])));
+        return out;
+    }
+
+    /**
+     * Archived years, oldest first
+     */
+    public List<Segment> segments() throws IOException {
+        ensureLoaded();
+        return List.copyOf(segments.values());
+    }
+
+    /**
+     * Archived records matching a filter, in id order. Only segments of years the filter's date range
+     * reaches are read, so a query over recent months never opens one.
+     */
+    public List<Database.Finance> find(FinanceFilter filter) throws IOException {
+        ensureLoaded();
+        List<Database.Finance> out = new ArrayList<>();
+        for (Segment segment : segments.values()) {
+            if (!overlaps(segment.year(), filter.from(), filter.to())) continue;
+            for (Database.Finance f : read(segment)) if (filter.test(f)) out.add(f.copy());
+        }
+        out.sort(Comparator.comparingInt(f -> f.id));
+        return out;
+    }
+
+    /**
+     * Totals of the archived records matching a query. Months the query covers whole are answered from
+     * the summaries; only a month cut by the query's bounds is scanned from its segment.
+     */
+    public QueryCache.Totals totals(QueryCache.Query query) throws IOException {
+        ensureLoaded();
+        double credits = 0, debits = 0;
+        long count = 0;
+        for (Segment segment : segments.values()) {
+            int year = segment.year();
+            if (!overlaps(year, query.from(), query.to())) continue;
+            for (int month = 1; month <= 12; month++) {
+                long monthStart = startMillis(year, month);
+                long monthEnd = month == 12 ? startMillis(year + 1) : startMillis(year, month + 1);
+                if (monthEnd <= query.from() || monthStart >= query.to()) continue;
+                if (query.from() <= monthStart && monthEnd <= query.to()) {
+                    for (Summary s : summaries.getOrDefault(year, List.of())) {
+                        if (s.month() != month || !matches(query, s.account(), s.type(), s.direction())) continue;
+                        credits += s.credits();
+                        debits += s.debits();
+                        count += s.count();
+                    }
+                } else {
+                    Metrics.metrics.count("archive.partialMonths", 1);
+                    for (Database.Finance f : read(segment)) {
+                        long date = f.date.getTime();
+                        if (date < Math.max(monthStart, query.from()) || date >= Math.min(monthEnd, query.to())) continue;
+                        if (!matches(query, f.accountId, f.type, f.direction)) continue;
+                        if (f.amount > 0) credits += f.amount;
+                        else debits += f.amount;
+                        count++;
+                    }
+                }
+            }
+        }
+        return new QueryCache.Totals(credits, debits, count);
+    }
+
+    /**
+     * True if a date range (epoch millis, either bound may be null) reaches into any archived year
+     */
+    public boolean covers(Long from, Long to) throws IOException {
+        ensureLoaded();
+        for (int year : segments.keySet()) if (overlaps(year, from, to)) return true;
+        return false;
+    }
+
+    private static boolean matches(QueryCache.Query query, int account, Database.Finance.Type type, boolean direction) {
+        if (query.account() != null && query.account() != account) return false;
+        if (query.types() != null && !query.types().contains(type)) return false;
+        return query.direction() == null || query.direction() == direction;
+    }
+
+    private static boolean overlaps(int year, Long from, Long to) {
+        return (from == null || from < startMillis(year + 1)) && (to == null || to > startMillis(year));
+    }
+
+    // A segment's records, from memory if it was read recently
+    private List<Database.Finance> read(Segment segment) throws IOException {
+        synchronized (loaded) {
+            SoftReference<List<Database.Finance>> ref = loaded.get(segment.file());
+            List<Database.Finance> records = ref == null ? null : ref.get();
+            if (records != null) return records;
+        }
+        long start = Metrics.metrics.start();
+        List<Database.Finance> records = readFile(segment);
+        synchronized (loaded) {
+            loaded.put(segment.file(), new SoftReference<>(records));
+        }
+        Metrics.metrics.stop("archive.read.time", start);
+        return records;
+    }
+
+    // Reads a segment's file, whole
+    private static List<Database.Finance> readFile(Segment segment) throws IOException {
+        List<Database.Finance> records = new ArrayList<>(segment.records());
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(Files.newInputStream(DIR.resolve(segment.file()))))) {
+            if (in.readInt() != VERSION) throw new IOException("Archive segment " + segment.file() + " has an unknown version");
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) records.add(FinanceCodec.read(in));
+        }
+        return records;
+    }
+
+    // Writes a segment to a temporary file and forces it to disk, moves it into place, makes it
+    // read-only and forces the directory, so the rename survives a power loss too
+    private static void write(Segment segment, List<Database.Finance> records) throws IOException {
+        Files.createDirectories(DIR);
+        Path file = DIR.resolve(segment.file());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             GZIPOutputStream gzip = new GZIPOutputStream(Channels.newOutputStream(channel))) {
+            DataOutputStream out = new DataOutputStream(gzip);
+            out.writeInt(VERSION);
+            out.writeInt(records.size());
+            for (Database.Finance f : records) FinanceCodec.write(out, f);
+            gzip.finish();
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        file.toFile().setReadOnly();
+        try (FileChannel dir = FileChannel.open(DIR, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // Some platforms (Windows) can't open a directory; there the rename is durable once it returns
+        }
+    }
+
+    // Reads a segment just written back from disk and checks it holds exactly the records given, before
+    // anything is deleted from the database on the strength of it
+    private static void verify(Segment segment, List<Database.Finance> records) throws IOException {
+        List<Database.Finance> written = readFile(segment);
+        boolean same = written.size() == records.size();
+        for (int i = 0; same && i < written.size(); i++) same = written.get(i).id.equals(records.get(i).id);
+        if (!same) {
+            delete(DIR.resolve(segment.file()));
+            throw new IOException("Archive segment " + segment.file() + " did not read back as written");
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            file.toFile().setWritable(true);
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    private static int yearOf(long epochMillis) {
+        return zoned(epochMillis).getYear();
+    }
+
+    private static ZonedDateTime zoned(long epochMillis) {
+        return Instant.ofEpochMilli(epochMillis).atZone(ZoneId.systemDefault());
+    }
+
+    private static long startMillis(int year) {
+        return startMillis(year, 1);
+    }
+
+    private static long startMillis(int year, int month) {
+        return LocalDate.of(year, month, 1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,313 @@
+package dev.atomtables.financetracker;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Backups keeps dated copies of the database, and of the archive segments it refers to, in
+ * backups/&lt;time&gt;/. A copy is taken with SQLite's online backup API a few hundred pages at a time on a
+ * background thread, so neither the UI nor the writer waits for it, and it is checked with
+ * PRAGMA integrity_check before it is moved into place; only the newest KEEP are kept. One is taken
+ * a minute after launch if the newest is a day old, and again every day the app stays open.
+ * The records are in the copy only when the ledger store is SQLite (the default). Safe to use from any thread.
+ */
+public class Backups {
+    // Singleton instance
+    public static final Backups backups = new Backups();
+
+    // Directory the backups live in, next to the database
+    public static final Path DIR = Path.of("backups");
+    // How many backups are kept; the oldest go first
+    private static final int KEEP = 7;
+    // How old the newest backup may get before a scheduled one is taken, and how often that is checked
+    private static final Duration INTERVAL = Duration.ofDays(1);
+    private static final Duration FIRST_CHECK = Duration.ofMinutes(1);
+    private static final Duration CHECK_EVERY = Duration.ofHours(1);
+    // Pages copied per step (1 MB of 4 KB pages): large enough to copy quickly, small enough that
+    // the writer only ever waits for one step
+    private static final int PAGES_PER_STEP = 256;
+
+    // Names of a backup's directory (the time it was taken, so they sort oldest first) and of its files
+    private static final DateTimeFormatter STAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+    private static final String DB_FILE = "data.db";
+    private static final String TMP = ".tmp";
+    // Times a backup is retried when an archive segment it needs was replaced while it was copied
+    private static final int ATTEMPTS = 3;
+
+    /**
+     * Told after each step of a backup or restore how many pages are left out of how many
+     */
+    public interface Progress {
+        Progress NONE = (remaining, pages) -> {};
+
+        void step(int remaining, int pages);
+    }
+
+    /**
+     * A backup: its directory, when it was taken and its size on disk
+     */
+    public record Snapshot(Path dir, Instant taken, long bytes) {
+        @Override
+        public String toString() {
+            return DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").format(taken.atZone(ZoneId.systemDefault()))
+                    + "  (" + formatBytes(bytes) + ")";
+        }
+    }
+
+    /**
+     * A finished backup and how fast it was copied
+     */
+    public record Result(Snapshot snapshot, int pages, long nanos) {
+        public double megabytesPerSecond() {
+            return nanos == 0 ? 0 : snapshot.bytes() / 1e6 / (nanos / 1e9);
+        }
+    }
+
+    // Runs every backup and restore, one at a time
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "database-backup");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    private boolean started = false;
+    // The last scheduled backup taken, and why the latest scheduled attempt failed (null if it didn't),
+    // shown in the Backups dialog
+    private volatile Result lastScheduled;
+    private volatile String lastScheduledError;
+
+    private Backups() {}
+
+    /**
+     * Starts the scheduled backups
+     */
+    public synchronized void start() {
+        if (started) return;
+        started = true;
+        executor.scheduleWithFixedDelay(this::backupIfDue, FIRST_CHECK.toMillis(), CHECK_EVERY.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Takes a backup in the background; the future yields it once it is checked and in place
+     */
+    public CompletableFuture<Result> backupNow(Progress progress) {
+        CompletableFuture<Result> result = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                result.complete(backup(progress));
+            } catch (IOException | RuntimeException e) {
+                Metrics.metrics.count("backup.errors", 1);
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Checks a backup and writes it over the live database in the background (after any backup
+     * already running). Once the future completes, DataReset.reload() must be run on the FX thread.
+     */
+    public CompletableFuture<Void> restore(Snapshot snapshot, Progress progress) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                restoreNow(snapshot, progress);
+                result.complete(null);
+            } catch (IOException | RuntimeException e) {
+                Metrics.metrics.count("restore.errors", 1);
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * The last backup taken on schedule, or null if none was taken since launch
+     */
+    public Result lastScheduled() {
+        return lastScheduled;
+    }
+
+    /**
+     * Why the latest scheduled backup failed, or null if it didn't
+     */
+    public String lastScheduledError() {
+        return lastScheduledError;
+    }
+
+    /**
+     * The backups in place, newest first
+     */
+    public List<Snapshot> snapshots() throws IOException {
+        List<Snapshot> out = new ArrayList<>();
+        if (!Files.isDirectory(DIR)) return out;
+        try (var dirs = Files.list(DIR)) {
+            for (Path dir : dirs.sorted(Comparator.reverseOrder()).toList()) {
+                String name = dir.getFileName().toString();
+                if (name.endsWith(TMP) || !Files.isDirectory(dir)) continue;
+                try {
+                    Instant taken = LocalDateTime.parse(name, STAMP).atZone(ZoneId.systemDefault()).toInstant();
+                    out.add(new Snapshot(dir, taken, size(dir)));
+                } catch (DateTimeParseException e) {
+                    // Not one of ours
+                }
+            }
+        }
+        return out;
+    }
+
+    // Scheduled: backs up if there is a user and the newest backup is older than the interval
+    private void backupIfDue() {
+        try {
+            List<Snapshot> existing = snapshots();
+            if (!existing.isEmpty() && existing.get(0).taken().isAfter(Instant.now().minus(INTERVAL))) return;
+            // Nothing worth keeping, and an empty copy would rotate out real ones
+            if (Database.database.getUser() == null) return;
+            lastScheduled = backup(Progress.NONE);
+            lastScheduledError = null;
+        } catch (IOException | RuntimeException e) {
+            Metrics.metrics.count("backup.errors", 1);
+            lastScheduledError = e.getMessage();
+        }
+    }
+
+    // Copies the database and its segments into a temporary directory, checks the copy, moves it into
+    // place and drops the oldest backups. A crash part way only leaves a .tmp directory, cleared next time.
+    private Result backup(Progress progress) throws IOException {
+        long start = Metrics.metrics.start();
+        Files.createDirectories(DIR);
+        deleteTemporary();
+        LocalDateTime now = LocalDateTime.now();
+        String name = STAMP.format(now);
+        Path tmp = DIR.resolve(name + TMP);
+        try {
+            int pages = 0;
+            for (int attempt = 1; ; attempt++) {
+                Files.createDirectories(tmp);
+                pages = Database.database.backupTo(tmp.resolve(DB_FILE), PAGES_PER_STEP, progress);
+                List<String> segments = check(tmp.resolve(DB_FILE));
+                try {
+                    copySegments(segments, Archive.DIR, tmp.resolve(Archive.DIR));
+                    break;
+                } catch (NoSuchFileException e) {
+                    // A year was archived again since the copy was taken, replacing its segment
+                    deleteTree(tmp);
+                    if (attempt == ATTEMPTS) throw e;
+                }
+            }
+            Path dir = DIR.resolve(name);
+            Files.move(tmp, dir, StandardCopyOption.ATOMIC_MOVE);
+            rotate();
+
+            long nanos = Metrics.metrics.stop("backup.time", start);
+            Snapshot snapshot = new Snapshot(dir, now.atZone(ZoneId.systemDefault()).toInstant(), size(dir));
+            Result result = new Result(snapshot, pages, nanos);
+            Metrics.metrics.count("backup.bytes", snapshot.bytes());
+            Metrics.metrics.histogram("backup.kbPerSecond").record(Math.round(result.megabytesPerSecond() * 1000));
+            return result;
+        } finally {
+            deleteTree(tmp);
+        }
+    }
+
+    // Checks the backup, puts its segments in the archive directory, then writes it over the live database
+    private void restoreNow(Snapshot snapshot, Progress progress) throws IOException {
+        long start = Metrics.metrics.start();
+        Path db = snapshot.dir().resolve(DB_FILE);
+        List<String> segments = check(db);
+        copySegments(segments, snapshot.dir().resolve(Archive.DIR), Archive.DIR);
+        Database.database.restoreFrom(db, PAGES_PER_STEP, progress);
+        Metrics.metrics.stop("restore.time", start);
+    }
+
+    // Runs PRAGMA integrity_check on a copy of the database and returns the segment files it refers to
+    private static List<String> check(Path db) throws IOException {
+        if (!Files.isRegularFile(db)) throw new IOException("Backup " + db.getParent() + " has no database");
+        try (var conn = DriverManager.getConnection("jdbc:sqlite:" + db);
+             var stmt = conn.createStatement()) {
+            try (var rs = stmt.executeQuery("PRAGMA integrity_check;")) {
+                String verdict = rs.next() ? rs.getString(1) : null;
+                if (!"ok".equals(verdict)) throw new IOException("Backup " + db.getParent() + " is damaged: " + verdict);
+            }
+            List<String> segments = new ArrayList<>();
+            try (var rs = stmt.executeQuery("SELECT segment FROM archived_years;")) {
+                while (rs.next()) segments.add(rs.getString(1));
+            } catch (SQLException e) {
+                // Taken before archiving existed
+            }
+            return segments;
+        } catch (SQLException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    // Copies segment files between archive directories, each through a temporary file moved into place
+    private static void copySegments(List<String> segments, Path from, Path to) throws IOException {
+        if (segments.isEmpty()) return;
+        Files.createDirectories(to);
+        for (String segment : segments) {
+            Path target = to.resolve(segment);
+            Path tmp = to.resolve(segment + TMP);
+            Files.copy(from.resolve(segment), tmp, StandardCopyOption.REPLACE_EXISTING);
+            target.toFile().setWritable(true);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            target.toFile().setReadOnly();
+        }
+    }
+
+    // Deletes all but the newest KEEP backups
+    private void rotate() throws IOException {
+        List<Snapshot> all = snapshots();
+        for (Snapshot old : all.subList(Math.min(KEEP, all.size()), all.size())) deleteTree(old.dir());
+    }
+
+    // Deletes what a backup that crashed or failed left behind
+    private static void deleteTemporary() throws IOException {
+        try (var dirs = Files.list(DIR)) {
+            for (Path dir : dirs.filter(d -> d.getFileName().toString().endsWith(TMP)).toList()) deleteTree(dir);
+        }
+    }
+
+    // Deletes a directory and everything in it, deepest first (segments are read-only)
+    private static void deleteTree(Path dir) throws IOException {
+        if (!Files.exists(dir)) return;
+        try (var files = Files.walk(dir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                file.toFile().setWritable(true);
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    // Total size of the files in a directory
+    private static long size(Path dir) throws IOException {
+        try (var files = Files.walk(dir)) {
+            return files.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+        }
+    }
+
+    // 1536 -> "1.5 KB"
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+        if (bytes < 1024 * 1024) return String.format("%.1f KB", bytes / 1024.0);
+        return String.format("%.1f MB", bytes / (1024.0 * 1024));
+    }
+}
@@ -0,0 +1,123 @@
+package dev.atomtables.financetracker;
+
+import javafx.application.Platform;
+import javafx.geometry.Insets;
+import javafx.scene.control.*;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+public class BackupsDialog {
+
+    // Lists the backups, newest first, and lets the user take one now or restore one. Both run in the
+    // background with a progress bar; a restore replaces every record, so it asks first and then opens
+    // the screen that fits the restored data.
+    public static void showDialog() {
+        Dialog<Void> dialog = new Dialog<>();
+        dialog.setTitle("Backups");
+        dialog.setHeaderText("A backup is taken every day; the newest are kept");
+        dialog.getDialogPane().getButtonTypes().add(ButtonType.CLOSE);
+
+        ListView<Backups.Snapshot> list = new ListView<>();
+        list.setPrefSize(320, 200);
+        list.setPlaceholder(new Label("No backups yet"));
+        Button backupButton = new Button("Back up now");
+        Button restoreButton = new Button("Restore selected");
+        restoreButton.disableProperty().bind(list.getSelectionModel().selectedItemProperty().isNull());
+        ProgressBar progress = new ProgressBar(0);
+        progress.setPrefWidth(320);
+        progress.setVisible(false);
+        Label status = new Label();
+
+        VBox content = new VBox(10, list, new HBox(10, backupButton, restoreButton), progress, status);
+        content.setPadding(new Insets(10));
+        dialog.getDialogPane().setContent(content);
+        showScheduled(status);
+        refresh(list, status);
+
+        Backups.Progress onStep = (remaining, pages) -> Platform.runLater(() ->
+                progress.setProgress(pages == 0 ? 1 : (pages - remaining) / (double) pages));
+
+        backupButton.setOnAction(event -> {
+            running(content, progress, true);
+            status.setText("Backing up...");
+            Backups.backups.backupNow(onStep).whenComplete((result, failure) -> Platform.runLater(() -> {
+                running(content, progress, false);
+                refresh(list, status);
+                if (failure != null) status.setText("Backup failed: " + cause(failure).getMessage());
+                else status.setText("Backed up " + describe(result));
+            }));
+        });
+
+        restoreButton.setOnAction(event -> {
+            Backups.Snapshot snapshot = list.getSelectionModel().getSelectedItem();
+            Alert a = new Alert(Alert.AlertType.CONFIRMATION);
+            a.setTitle("Restore Backup");
+            a.setHeaderText("Restore the backup from " + snapshot + "?");
+            a.setContentText("Everything entered since then will be replaced. Back up now first to keep it.");
+            a.getButtonTypes().setAll(ButtonType.YES, ButtonType.NO);
+            if (a.showAndWait().filter(ButtonType.YES::equals).isEmpty()) return;
+
+            running(content, progress, true);
+            status.setText("Restoring...");
+            CompletableFuture<Void> restore = Backups.backups.restore(snapshot, onStep);
+            restore.whenComplete((done, failure) -> Platform.runLater(() -> {
+                running(content, progress, false);
+                if (failure != null) {
+                    status.setText("Restore failed: " + cause(failure).getMessage());
+                    return;
+                }
+                try {
+                    DataReset.reload();
+                    dialog.close();
+                    App.setRoot(Ledger.ledger.getUser() != null ? "tabs/MainView" : "WelcomeView");
+                } catch (IOException e) {
+                    System.out.println("Error reloading data: " + e.getMessage());
+                }
+            }));
+        });
+
+        // Don't close while a backup or restore is running
+        dialog.setOnCloseRequest(event -> {
+            if (progress.isVisible()) event.consume();
+        });
+
+        dialog.showAndWait();
+    }
+
+    // Shows the progress bar and locks the list and buttons while work runs in the background
+    private static void running(VBox content, ProgressBar progress, boolean running) {
+        progress.setProgress(0);
+        progress.setVisible(running);
+        content.getChildren().forEach(node -> node.setDisable(running && node != progress && !(node instanceof Label)));
+    }
+
+    // Reports how the last scheduled backup went, which happens with no one watching
+    private static void showScheduled(Label status) {
+        String error = Backups.backups.lastScheduledError();
+        Backups.Result result = Backups.backups.lastScheduled();
+        if (error != null) status.setText("The last scheduled backup failed: " + error);
+        else if (result != null) status.setText("Last scheduled backup: " + describe(result));
+    }
+
+    // "2024-03-01 09:00:00  (1.5 MB) in 120 ms (12.5 MB/s)"
+    private static String describe(Backups.Result result) {
+        return String.format("%s in %d ms (%.1f MB/s)", result.snapshot(), result.nanos() / 1_000_000, result.megabytesPerSecond());
+    }
+
+    private static void refresh(ListView<Backups.Snapshot> list, Label status) {
+        try {
+            list.getItems().setAll(Backups.backups.snapshots());
+        } catch (IOException e) {
+            status.setText("Can't list backups: " + e.getMessage());
+        }
+    }
+
+    // The failure behind a future's CompletionException
+    private static Throwable cause(Throwable failure) {
+        return failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+    }
+}
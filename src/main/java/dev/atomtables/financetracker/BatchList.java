@@ -0,0 +1,96 @@
+package dev.atomtables.financetracker;
+
+import javafx.collections.ModifiableObservableListBase;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
+
+/**
+ * BatchList is an observable array list whose modifications can be grouped: everything done inside
+ * batch() reaches listeners as a single change, however many rows it touched. The ledger uses it so a
+ * bulk edit or delete notifies each view (and each derived index) once instead of once per record.
+ */
+class BatchList<E> extends ModifiableObservableListBase<E> implements RandomAccess {
+    private final ArrayList<E> items = new ArrayList<>();
+
+    /**
+     * Runs the modifications and fires them as one change when they are done
+     */
+    void batch(Runnable modifications) {
+        beginChange();
+        try {
+            modifications.run();
+        } finally {
+            endChange();
+        }
+    }
+
+    /**
+     * Removes the matching elements in a single pass (rather than shifting the rest once per element)
+     * and fires them as one change
+     */
+    @Override
+    public boolean removeIf(Predicate<? super E> filter) {
+        // Test everything first, so a failing filter leaves the list as it was
+        BitSet matches = new BitSet(items.size());
+        for (int i = 0; i < items.size(); i++) if (filter.test(items.get(i))) matches.set(i);
+        if (matches.isEmpty()) return false;
+        beginChange();
+        try {
+            int kept = 0;
+            for (int i = 0; i < items.size(); i++) {
+                E e = items.get(i);
+                if (matches.get(i)) nextRemove(kept, e);
+                else items.set(kept++, e);
+            }
+            items.subList(kept, items.size()).clear();
+            modCount++;
+        } finally {
+            endChange();
+        }
+        return true;
+    }
+
+    /**
+     * Empties the list at once (the base class removes one element at a time, each shifting the rest)
+     */
+    @Override
+    public void clear() {
+        if (items.isEmpty()) return;
+        beginChange();
+        try {
+            nextRemove(0, new ArrayList<>(items));
+            items.clear();
+            modCount++;
+        } finally {
+            endChange();
+        }
+    }
+
+    @Override
+    public E get(int index) {
+        return items.get(index);
+    }
+
+    @Override
+    public int size() {
+        return items.size();
+    }
+
+    @Override
+    protected void doAdd(int index, E element) {
+        items.add(index, element);
+    }
+
+    @Override
+    protected E doSet(int index, E element) {
+        return items.set(index, element);
+    }
+
+    @Override
+    protected E doRemove(int index) {
+        return items.remove(index);
+    }
+}
@@ -0,0 +1,183 @@
+package dev.atomtables.financetracker;
+
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Budgets keeps a monthly spending limit per type and, for every month, the money spent per type in a
+ * flat array. The ledger calls add/remove from its write path, so each record costs one array update
+ * and a comparison against each threshold; nothing is ever rescanned. Crossing a threshold in the
+ * current month queues an Alert, and queued alerts are published together on a later FX pulse, so even
+ * a bulk import of many records only notifies the UI once. Use from the FX thread.
+ */
+public class Budgets {
+    private static final Database.Finance.Type[] TYPES = Database.Finance.Type.values();
+
+    // Singleton instance, filled in by the ledger when it loads
+    public static final Budgets budgets = new Budgets();
+
+    // Fractions of a limit at which an alert fires
+    public static final double[] THRESHOLDS = {0.8, 1.0};
+    // How many recent alerts are kept for the UI
+    private static final int ALERTS_KEPT = 20;
+
+
+    /**
+     * Spending of one type in one month reached the given fraction of its limit
+     */
+    public record Alert(Database.Finance.Type type, LocalDate month, double limit, double spent, double threshold) {
+        public boolean over() {
+            return threshold >= 1;
+        }
+    }
+
+    private final double[] limits = new double[TYPES.length]; // 0 = no budget for that type
+    private final Map<Integer, double[]> spent = new HashMap<>(); // Month index -> spending per type (positive)
+    private final ObservableList<Alert> alerts = FXCollections.observableArrayList();
+    private final List<Alert> pending = new ArrayList<>();
+    private int currentMonth = monthIndex(LocalDate.now());
+
+    private Budgets() {}
+
+    // Months since year 0, so consecutive months are consecutive keys
+    private static int monthIndex(LocalDate date) {
+        return date.getYear() * 12 + date.getMonthValue() - 1;
+    }
+
+    private static int monthIndex(Database.Finance f) {
+        return monthIndex(LocalDate.ofEpochDay(DailyTotals.epochDay(f.date)));
+    }
+
+    /**
+     * Loads the limits and counts every record's spending; called by the ledger when it loads
+     */
+    public void rebuild(List<Database.Finance> finances) throws IOException {
+        long start = Metrics.metrics.start();
+        Arrays.fill(limits, 0);
+        if (LedgerStore.onDatabase()) Database.database.getBudgets().forEach((type, limit) -> limits[type.ordinal()] = limit);
+        spent.clear();
+        currentMonth = monthIndex(LocalDate.now());
+        for (Database.Finance f : finances) apply(f, 1, false);
+        Metrics.metrics.stop("budgets.rebuild.time", start);
+    }
+
+    /**
+     * Drops every limit, count and alert (for a data reset, which empties the stored limits too)
+     */
+    public void reset() {
+        Arrays.fill(limits, 0);
+        spent.clear();
+        pending.clear();
+        alerts.clear();
+        currentMonth = monthIndex(LocalDate.now());
+    }
+
+    /**
+     * Counts a newly written record, queueing alerts for any threshold it crosses
+     */
+    public void add(Database.Finance f) {
+        apply(f, 1, true);
+    }
+
+    /**
+     * Takes a deleted (or replaced) record back out of the counters
+     */
+    public void remove(Database.Finance f) {
+        apply(f, -1, false);
+    }
+
+    // Adds (sign = 1) or subtracts (sign = -1) a record's spending, per split when it has splits
+    private void apply(Database.Finance f, int sign, boolean alert) {
+        if (f.amount >= 0) return;
+        int month = monthIndex(f);
+        // A record dated after the month we think it is may mean a new month has begun
+        if (month > currentMonth) currentMonth = monthIndex(LocalDate.now());
+        double[] totals = spent.computeIfAbsent(month, m -> new double[TYPES.length]);
+        if (f.splits.isEmpty()) {
+            if (f.type != null) spend(totals, month, f.type, sign * -f.amount, alert);
+        } else {
+            for (Database.Finance.Split split : f.splits) spend(totals, month, split.type(), sign * -split.amount(), alert);
+        }
+    }
+
+    private void spend(double[] totals, int month, Database.Finance.Type type, double amount, boolean alert) {
+        int t = type.ordinal();
+        double before = totals[t];
+        totals[t] = before + amount;
+        if (alert && month == currentMonth && limits[t] > 0) check(type, month, before, totals[t]);
+    }
+
+    // Queues an alert for each threshold the spending went from below to at-or-above
+    private void check(Database.Finance.Type type, int month, double before, double after) {
+        double limit = limits[type.ordinal()];
+        for (double threshold : THRESHOLDS) {
+            if (before < threshold * limit && after >= threshold * limit) {
+                queue(new Alert(type, LocalDate.of(month / 12, month % 12 + 1, 1), limit, after, threshold));
+            }
+        }
+    }
+
+    // Alerts are handed to the UI in one batch after the current write (or import) finishes
+    private void queue(Alert alert) {
+        Metrics.metrics.count("budgets.alerts", 1);
+        if (pending.isEmpty()) Platform.runLater(this::publish);
+        pending.add(alert);
+    }
+
+    private void publish() {
+        // If several thresholds of one type were crossed, only the highest is worth showing
+        Map<Database.Finance.Type, Alert> latest = new EnumMap<>(Database.Finance.Type.class);
+        for (Alert alert : pending) {
+            Alert seen = latest.get(alert.type());
+            if (seen == null || alert.threshold() >= seen.threshold()) latest.put(alert.type(), alert);
+        }
+        pending.clear();
+        alerts.addAll(0, latest.values());
+        if (alerts.size() > ALERTS_KEPT) alerts.remove(ALERTS_KEPT, alerts.size());
+    }
+
+    /**
+     * Recent alerts, newest first. Subscribe with a (weak) ListChangeListener to be notified.
+     */
+    public ObservableList<Alert> getAlerts() {
+        return alerts;
+    }
+
+    /**
+     * Monthly limit for a type, or 0 if it has no budget
+     */
+    public double limit(Database.Finance.Type type) {
+        return limits[type.ordinal()];
+    }
+
+    /**
+     * Money spent on a type in the month containing the given date
+     */
+    public double spent(Database.Finance.Type type, LocalDate month) {
+        double[] totals = spent.get(monthIndex(month));
+        return totals == null ? 0 : totals[type.ordinal()];
+    }
+
+    /**
+     * Sets (or with a limit of 0, removes) a type's monthly budget. Alerts straight away if this
+     * month's spending is already past a threshold of the new limit.
+     */
+    public void setLimit(Database.Finance.Type type, double limit) throws IOException {
+        LedgerStore.requireDatabase("Budgets");
+        Ledger.ledger.getFinances(); // Make sure the counters are built
+        Database.database.setBudget(type, limit);
+        limits[type.ordinal()] = Math.max(0, limit);
+        currentMonth = monthIndex(LocalDate.now());
+        if (limit > 0) check(type, currentMonth, 0, spent(type, LocalDate.now()));
+    }
+}
@@ -0,0 +1,92 @@
+package dev.atomtables.financetracker;
+
+import javafx.event.ActionEvent;
+import javafx.geometry.Insets;
+import javafx.scene.control.*;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.VBox;
+
+import java.io.IOException;
+import java.text.NumberFormat;
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+public class BudgetsDialog {
+
+    // Displays every type with this month's spending against its budget and lets the user change the limits.
+    // A blank or zero limit removes the budget.
+    public static void showDialog() {
+        try {
+            Ledger.ledger.getFinances(); // The ledger fills in the budget counters when it loads
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+        Dialog<Void> dialog = new Dialog<>();
+        dialog.setTitle("Monthly Budgets");
+        dialog.setHeaderText("You are alerted at " + Math.round(Budgets.THRESHOLDS[0] * 100) + "% and when a budget runs out");
+        ButtonType saveButton = new ButtonType("Save", ButtonBar.ButtonData.OK_DONE);
+        dialog.getDialogPane().getButtonTypes().addAll(saveButton, ButtonType.CLOSE);
+
+        NumberFormat money = NumberFormat.getCurrencyInstance(Locale.US);
+        LocalDate today = LocalDate.now();
+        Map<Database.Finance.Type, TextField> fields = new EnumMap<>(Database.Finance.Type.class);
+
+        // One row per type: name, limit, progress this month, amount spent
+        GridPane grid = new GridPane();
+        grid.setHgap(10);
+        grid.setVgap(8);
+        int row = 0;
+        for (Database.Finance.Type type : Database.Finance.Type.values()) {
+            double limit = Budgets.budgets.limit(type);
+            double spent = Budgets.budgets.spent(type, today);
+            TextField field = new TextField(limit > 0 ? String.valueOf(limit) : "");
+            field.setPromptText("No budget");
+            field.setPrefWidth(100);
+            fields.put(type, field);
+            ProgressBar progress = new ProgressBar(limit > 0 ? Math.min(1, spent / limit) : 0);
+            progress.setPrefWidth(160);
+            if (limit > 0 && spent >= limit) progress.setStyle("-fx-accent: #ff5050;");
+            grid.add(new Label(type.value), 0, row);
+            grid.add(field, 1, row);
+            grid.add(progress, 2, row);
+            grid.add(new Label(money.format(spent) + (limit > 0 ? " of " + money.format(limit) : " spent")), 3, row);
+            row++;
+        }
+
+        Label status = new Label();
+        VBox content = new VBox(10, grid, status);
+        content.setPadding(new Insets(10));
+        dialog.getDialogPane().setContent(content);
+
+        // Validate every limit before saving any of them
+        dialog.getDialogPane().lookupButton(saveButton).addEventFilter(ActionEvent.ACTION, event -> {
+            Map<Database.Finance.Type, Double> limits = new EnumMap<>(Database.Finance.Type.class);
+            try {
+                for (var entry : fields.entrySet()) {
+                    String text = entry.getValue().getText().strip();
+                    double limit = text.isEmpty() ? 0 : Double.parseDouble(text);
+                    if (limit < 0) throw new NumberFormatException();
+                    limits.put(entry.getKey(), limit);
+                }
+            } catch (NumberFormatException e) {
+                status.setText("Limits must be positive numbers.");
+                event.consume();
+                return;
+            }
+            try {
+                for (var entry : limits.entrySet()) {
+                    if (entry.getValue() != Budgets.budgets.limit(entry.getKey())) {
+                        Budgets.budgets.setLimit(entry.getKey(), entry.getValue());
+                    }
+                }
+            } catch (IOException e) {
+                status.setText("Error saving budgets: " + e.getMessage());
+                event.consume();
+            }
+        });
+
+        dialog.showAndWait();
+    }
+}
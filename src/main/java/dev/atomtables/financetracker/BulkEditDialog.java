@@ -0,0 +1,72 @@
+package dev.atomtables.financetracker;
+
+import javafx.event.ActionEvent;
+import javafx.geometry.Insets;
+import javafx.scene.control.*;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.VBox;
+
+import java.io.IOException;
+import java.util.Optional;
+
+public class BulkEditDialog {
+
+    // Asks for one edit to apply to every selected record: a new name, type or account, and tags to add.
+    // Fields left blank keep each record's own value. Empty if cancelled or nothing was changed.
+    public static Optional<Database.BulkEdit> showDialog(int count) {
+        Dialog<Database.BulkEdit> dialog = new Dialog<>();
+        dialog.setTitle("Edit Selected Logs");
+        dialog.setHeaderText("Edit " + count + (count == 1 ? " record" : " records") + "; blank fields are left as they are");
+        ButtonType applyButton = new ButtonType("Apply", ButtonBar.ButtonData.OK_DONE);
+        dialog.getDialogPane().getButtonTypes().addAll(applyButton, ButtonType.CANCEL);
+
+        TextField nameField = new TextField();
+        nameField.setPromptText("Keep names");
+        ComboBox<Database.Finance.Type> typeCombo = new ComboBox<>();
+        typeCombo.getItems().addAll(Database.Finance.Type.values());
+        typeCombo.setPromptText("Keep types");
+        ComboBox<Database.Account> accountCombo = new ComboBox<>();
+        try {
+            accountCombo.getItems().setAll(Accounts.accounts.list());
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+        accountCombo.setPromptText("Keep accounts");
+        TextField tagsField = new TextField();
+        tagsField.setPromptText("Comma-separated tags to add");
+
+        GridPane grid = new GridPane();
+        grid.setHgap(10);
+        grid.setVgap(8);
+        grid.addRow(0, new Label("Name:"), nameField);
+        grid.addRow(1, new Label("Type:"), typeCombo);
+        grid.addRow(2, new Label("Account:"), accountCombo);
+        grid.addRow(3, new Label("Add tags:"), tagsField);
+
+        Label status = new Label();
+        VBox content = new VBox(10, grid, status);
+        content.setPadding(new Insets(10));
+        dialog.getDialogPane().setContent(content);
+
+        dialog.setResultConverter(button -> {
+            if (button != applyButton) return null;
+            return new Database.BulkEdit(
+                    nameField.getText().isBlank() ? null : nameField.getText().strip(),
+                    typeCombo.getValue(),
+                    accountCombo.getValue() == null ? null : accountCombo.getValue().id(),
+                    NeueDialog.parseTags(tagsField.getText()));
+        });
+
+        // Keep the dialog open until something would change
+        dialog.getDialogPane().lookupButton(applyButton).addEventFilter(ActionEvent.ACTION, event -> {
+            boolean unchanged = nameField.getText().isBlank() && typeCombo.getValue() == null
+                    && accountCombo.getValue() == null && NeueDialog.parseTags(tagsField.getText()).isEmpty();
+            if (unchanged) {
+                status.setText("Fill in at least one field.");
+                event.consume();
+            }
+        });
+
+        return dialog.showAndWait();
+    }
+}
@@ -0,0 +1,166 @@
+package dev.atomtables.financetracker;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * CategoryRules maps keywords in record names to a type and/or tags. All rule keywords are compiled
+ * into one KeywordMatcher, so categorizing a name is a single pass over it no matter how many rules
+ * there are. When several rules match, the longest keyword decides the type and every match adds its tags.
+ */
+public class CategoryRules {
+    // Singleton instance, loaded from the database on first use
+    public static final CategoryRules rules = new CategoryRules();
+
+    /**
+     * A rule: names containing the keyword (ignoring case) get this type (null = leave it) and these tags
+     */
+    public record Rule(int id, String keyword, Database.Finance.Type type, List<String> tags) {}
+
+    /**
+     * What the rules say about one name: the type to use (null if no rule sets one) and the tags to add
+     */
+    public record Category(Database.Finance.Type type, List<String> tags) {}
+
+    private List<Rule> list = List.of();
+    private KeywordMatcher matcher = new KeywordMatcher(List.of());
+    private boolean loaded = false;
+
+    private CategoryRules() {}
+
+    // Fixed rules that are never read from the store, for tests
+    static CategoryRules of(List<Rule> rules) {
+        CategoryRules fixed = new CategoryRules();
+        fixed.compile(rules);
+        fixed.loaded = true;
+        return fixed;
+    }
+
+    // Loads and compiles the rules the first time they are needed
+    private synchronized void ensureLoaded() throws IOException {
+        if (loaded) return;
+        compile(LedgerStore.onDatabase() ? Database.database.getRules() : List.of());
+        loaded = true;
+    }
+
+    /**
+     * Forgets the loaded rules (for a data reset); they are read again when next needed
+     */
+    public synchronized void reset() {
+        compile(List.of());
+        loaded = false;
+    }
+
+    private synchronized void compile(List<Rule> rules) {
+        list = List.copyOf(rules);
+        List<String> keywords = new ArrayList<>();
+        for (Rule rule : list) keywords.add(rule.keyword());
+        matcher = new KeywordMatcher(keywords);
+    }
+
+    /**
+     * Every rule, in the order they were added
+     */
+    public synchronized List<Rule> getRules() throws IOException {
+        ensureLoaded();
+        return list;
+    }
+
+    /**
+     * Categorizes one name, or returns null if no rule matches it
+     */
+    public Category categorize(String name) throws IOException {
+        ensureLoaded();
+        List<Rule> rules;
+        KeywordMatcher m;
+        synchronized (this) {
+            rules = list;
+            m = matcher;
+        }
+        if (name == null || rules.isEmpty()) return null;
+
+        Rule[] best = {null};
+        Set<String> tags = new LinkedHashSet<>();
+        m.match(name, k -> {
+            Rule rule = rules.get(k);
+            tags.addAll(rule.tags());
+            if (rule.type() != null && (best[0] == null || rule.keyword().length() > best[0].keyword().length()
+                    || (rule.keyword().length() == best[0].keyword().length() && rule.id() < best[0].id()))) {
+                best[0] = rule;
+            }
+        });
+        if (best[0] == null && tags.isEmpty()) return null;
+        return new Category(best[0] == null ? null : best[0].type(), List.copyOf(tags));
+    }
+
+    /**
+     * Fills in a new record's type (when it has none) and adds any rule tags it lacks
+     */
+    public void apply(Database.Finance f) throws IOException {
+        Category category = categorize(f.name);
+        if (category == null) return;
+        if (f.type == null) f.type = category.type();
+        f.tags = mergeTags(f.tags, category.tags());
+    }
+
+    /**
+     * Saves a new rule and re-categorizes existing records against the updated rules;
+     * returns how many records changed
+     */
+    public int addRule(String keyword, Database.Finance.Type type, List<String> tags) throws IOException {
+        LedgerStore.requireDatabase("Categorization rules");
+        ensureLoaded();
+        Database.database.addRule(keyword.strip(), type, tags);
+        compile(Database.database.getRules());
+        return recategorize();
+    }
+
+    /**
+     * Deletes a rule and re-categorizes existing records against the remaining rules.
+     * Types and tags the rule already gave records are kept unless another rule now says otherwise.
+     * Returns how many records changed.
+     */
+    public int deleteRule(int id) throws IOException {
+        LedgerStore.requireDatabase("Categorization rules");
+        ensureLoaded();
+        Database.database.deleteRule(id);
+        compile(Database.database.getRules());
+        return recategorize();
+    }
+
+    /**
+     * Runs every existing record through the rules in one pass and writes back only the records
+     * whose type or tags change, in batched updates. Must be called on the FX thread (it updates the ledger).
+     */
+    public int recategorize() throws IOException {
+        long start = Metrics.metrics.start();
+        List<Database.Finance> changed = new ArrayList<>();
+        for (Database.Finance f : Ledger.ledger.getFinances()) {
+            Category category = categorize(f.name);
+            if (category == null) continue;
+            Database.Finance.Type type = category.type() != null && f.splits.isEmpty() ? category.type() : f.type;
+            List<String> tags = mergeTags(f.tags, category.tags());
+            if (type == f.type && Objects.equals(tags, f.tags)) continue;
+            Database.Finance updated = f.copy();
+            updated.type = type;
+            updated.tags = tags;
+            changed.add(updated);
+        }
+        Ledger.ledger.updateCategories(changed);
+        Metrics.metrics.count("rules.recategorized", changed.size());
+        Metrics.metrics.stop("rules.recategorize.time", start);
+        return changed.size();
+    }
+
+    // The existing tags followed by any new ones, or the existing list itself if nothing is new
+    private static List<String> mergeTags(List<String> existing, List<String> extra) {
+        if (existing.containsAll(extra)) return existing;
+        Set<String> merged = new LinkedHashSet<>(existing);
+        merged.addAll(extra);
+        return List.copyOf(merged);
+    }
+}
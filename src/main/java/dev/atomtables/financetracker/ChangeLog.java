@@ -0,0 +1,145 @@
+package dev.atomtables.financetracker;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * ChangeLog reads the sequenced log of changes that Database appends in the same transaction as every
+ * mutation (each entry holds the record before and after), and uses it to undo and redo the edits made
+ * since the app started by writing the recorded versions back through the Ledger. Entries from earlier
+ * sessions are pruned when one starts. The changes of one bulk operation (a bulk edit, an import, a
+ * rule re-categorizing records) share a batch and are undone and redone together. Use from the FX thread.
+ */
+public class ChangeLog {
+    // Singleton instance
+    public static final ChangeLog changes = new ChangeLog();
+
+    // How many edits can be undone
+    private static final int DEPTH = 100;
+    // Changes read per query while catching up
+    private static final int PAGE = 500;
+
+    // Each step is one edit: a single change, or every change of a batch in log order
+    private final Deque<List<Database.Change>> undo = new ArrayDeque<>(); // Newest first
+    private final Deque<List<Database.Change>> redo = new ArrayDeque<>(); // Most recently undone first
+    private long seen = -1; // Seq of the newest change looked at; -1 until start()
+
+    private ChangeLog() {}
+
+    /**
+     * Changes with a sequence number above seq, oldest first (at most limit of them)
+     */
+    public List<Database.Change> since(long seq, int limit) throws IOException {
+        LedgerStore.requireDatabase("The change log");
+        return Database.database.getChanges(seq, limit);
+    }
+
+    /**
+     * Marks where this session begins: only changes made after this can be undone, so the log entries
+     * from before are pruned (in the background)
+     */
+    public void start() {
+        if (seen >= 0 || !LedgerStore.onDatabase()) return;
+        try {
+            seen = Database.database.lastChangeSeq();
+            if (seen > 0) Database.database.pruneChanges(seen);
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Forgets every edit (for a data reset, which empties the log); this session starts over from here
+     */
+    public void reset() throws IOException {
+        undo.clear();
+        redo.clear();
+        if (LedgerStore.onDatabase()) seen = Database.database.lastChangeSeq();
+    }
+
+    /**
+     * Reverts the most recent edit not yet undone. Returns false if there is nothing to undo.
+     */
+    public boolean undo() throws IOException {
+        LedgerStore.requireDatabase("Undo");
+        catchUp();
+        List<Database.Change> step = undo.poll();
+        if (step == null) return false;
+        apply(step, true);
+        redo.push(step);
+        Metrics.metrics.count("changes.undo", 1);
+        return true;
+    }
+
+    /**
+     * Makes the most recently undone edit again. Returns false if there is nothing to redo.
+     */
+    public boolean redo() throws IOException {
+        LedgerStore.requireDatabase("Redo");
+        catchUp();
+        List<Database.Change> step = redo.poll();
+        if (step == null) return false;
+        apply(step, false);
+        undo.push(step);
+        Metrics.metrics.count("changes.redo", 1);
+        return true;
+    }
+
+    // Takes the edits logged since the last look onto the undo stack; a new edit ends the redo history
+    private void catchUp() throws IOException {
+        start();
+        if (seen < 0) return;
+        List<Database.Change> fresh;
+        while (!(fresh = since(seen, PAGE)).isEmpty()) {
+            for (Database.Change change : fresh) {
+                seen = change.seq();
+                if (change.kind() == Database.Change.Kind.USER) continue;
+                // Later changes of the batch on top of the stack join its step
+                List<Database.Change> top = undo.peek();
+                if (change.batch() != null && top != null && Objects.equals(top.get(0).batch(), change.batch())) {
+                    top.add(change);
+                } else {
+                    List<Database.Change> step = new ArrayList<>();
+                    step.add(change);
+                    undo.push(step);
+                }
+                redo.clear();
+            }
+        }
+        while (undo.size() > DEPTH) undo.removeLast();
+    }
+
+    // Turns each record of a step from one version to another (after to before when undoing): present to
+    // absent deletes it, absent to present restores it under its id, and otherwise it is overwritten.
+    // A single change goes through the single-record methods; a batch through the bulk ones, so it is
+    // written in one transaction and published once.
+    private void apply(List<Database.Change> step, boolean undoing) throws IOException {
+        List<Integer> deletes = new ArrayList<>();
+        List<Database.Finance> restores = new ArrayList<>();
+        List<Database.Finance> replaces = new ArrayList<>();
+        for (int i = 0; i < step.size(); i++) {
+            // Undo walks the batch backwards
+            Database.Change change = step.get(undoing ? step.size() - 1 - i : i);
+            Database.Finance from = undoing ? change.after() : change.before();
+            Database.Finance to = undoing ? change.before() : change.after();
+            if (to == null) deletes.add(change.financeId());
+            else if (from == null) restores.add(to.copy());
+            else replaces.add(to.copy());
+        }
+        if (step.size() == 1) {
+            if (!deletes.isEmpty()) Ledger.ledger.deleteFinance(deletes.get(0));
+            else if (!restores.isEmpty()) Ledger.ledger.restoreFinance(restores.get(0));
+            else Ledger.ledger.replaceFinance(replaces.get(0));
+        } else {
+            if (!deletes.isEmpty()) Ledger.ledger.deleteFinances(deletes);
+            if (!restores.isEmpty()) Ledger.ledger.restoreFinances(restores);
+            if (!replaces.isEmpty()) Ledger.ledger.replaceFinances(replaces);
+        }
+        // The undo or redo was logged too; skip past it so it isn't taken for a new edit
+        seen = Database.database.lastChangeSeq();
+    }
+}
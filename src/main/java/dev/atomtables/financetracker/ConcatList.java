@@ -0,0 +1,66 @@
+package dev.atomtables.financetracker;
+
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.collections.ObservableListBase;
+import javafx.collections.WeakListChangeListener;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ConcatList is a read-only, live view of one observable list followed by another. Changes to either
+ * are passed on shifted to their place in the whole, so a filtered or sorted list on top of it keeps
+ * applying single-row changes. The log view uses it to show archived records after the ledger's.
+ */
+public final class ConcatList<E> extends ObservableListBase<E> {
+    private final ObservableList<? extends E> first;
+    private final ObservableList<? extends E> second;
+    // Held here so the sources (which outlive this view) only keep weak references to it
+    private final ListChangeListener<E> onFirst;
+    private final ListChangeListener<E> onSecond;
+
+    public ConcatList(ObservableList<? extends E> first, ObservableList<? extends E> second) {
+        this.first = first;
+        this.second = second;
+        onFirst = change -> forward(change, 0);
+        onSecond = change -> forward(change, first.size());
+        first.addListener(new WeakListChangeListener<>(onFirst));
+        second.addListener(new WeakListChangeListener<>(onSecond));
+    }
+
+    @Override
+    public E get(int index) {
+        int split = first.size();
+        return index < split ? first.get(index) : second.get(index - split);
+    }
+
+    @Override
+    public int size() {
+        return first.size() + second.size();
+    }
+
+    // Re-fires a source's change at its offset in this list (for the second list, the first's current size)
+    private void forward(ListChangeListener.Change<? extends E> change, int offset) {
+        beginChange();
+        try {
+            while (change.next()) {
+                int from = change.getFrom() + offset, to = change.getTo() + offset;
+                if (change.wasPermutated()) {
+                    // Passed on as the range being replaced by itself in the new order; the element that was
+                    // at index i is now at getPermutation(i)
+                    List<E> before = new ArrayList<>(change.getTo() - change.getFrom());
+                    for (int i = change.getFrom(); i < change.getTo(); i++) before.add(change.getList().get(change.getPermutation(i)));
+                    nextReplace(from, to, before);
+                } else if (change.wasUpdated()) {
+                    for (int i = from; i < to; i++) nextUpdate(i);
+                } else {
+                    if (change.wasRemoved()) nextRemove(from, change.getRemoved());
+                    if (change.wasAdded()) nextAdd(from, to);
+                }
+            }
+        } finally {
+            endChange();
+        }
+    }
+}
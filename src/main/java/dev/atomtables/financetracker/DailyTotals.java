@@ -0,0 +1,163 @@
+package dev.atomtables.financetracker;
+
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import java.io.IOException;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * DailyTotals keeps the money spent and earned on every calendar day in flat primitive arrays
+ * indexed by epoch day, so the heatmap and other per-day views never have to rescan finances
+ */
+public class DailyTotals {
+    // Singleton instance, built lazily from the ledger on first use
+    public static final DailyTotals daily = new DailyTotals();
+
+    private long firstDay;                 // Epoch day stored at index 0
+    private double[] spent = new double[0];  // Total spending per day (stored as positive numbers)
+    private double[] earned = new double[0]; // Total income per day
+    private long minDay = Long.MAX_VALUE;  // Earliest day that has ever held a record
+    private long maxDay = Long.MIN_VALUE;  // Latest day that has ever held a record
+    private boolean built = false;
+
+    private DailyTotals() {}
+
+    /**
+     * Converts a transaction date to the local epoch day it falls on
+     */
+    public static long epochDay(Date date) {
+        return date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate().toEpochDay();
+    }
+
+    /**
+     * Builds the arrays once from the ledger, then follows its change events
+     */
+    public synchronized void ensureBuilt() throws IOException {
+        if (built) return;
+        ObservableList<Database.Finance> finances = Ledger.ledger.getFinances();
+        rebuild(finances);
+        finances.addListener(follower);
+    }
+
+    // Applies the ledger's change events; held in a field so reset() can unsubscribe it
+    private final ListChangeListener<Database.Finance> follower = change -> {
+        while (change.next()) {
+            for (Database.Finance f : change.getRemoved()) remove(f);
+            for (Database.Finance f : change.getAddedSubList()) add(f);
+        }
+    };
+
+    /**
+     * Drops every total and stops following the ledger (for a data reset); the next use builds it again
+     */
+    public synchronized void reset() throws IOException {
+        if (built) Ledger.ledger.getFinances().removeListener(follower);
+        rebuild(List.of());
+        built = false;
+    }
+
+    /**
+     * Discards all totals and rebuilds them from the given records
+     */
+    public synchronized void rebuild(List<Database.Finance> finances) {
+        spent = new double[0];
+        earned = new double[0];
+        minDay = Long.MAX_VALUE;
+        maxDay = Long.MIN_VALUE;
+        for (Database.Finance f : finances) {
+            apply(f, 1);
+        }
+        built = true;
+    }
+
+    /**
+     * Records a newly inserted finance in O(1) (amortized when the day range grows)
+     */
+    public synchronized void add(Database.Finance f) {
+        if (built) apply(f, 1);
+    }
+
+    /**
+     * Removes a deleted finance in O(1)
+     */
+    public synchronized void remove(Database.Finance f) {
+        if (built) apply(f, -1);
+    }
+
+    // Adds (sign = 1) or subtracts (sign = -1) a finance from its day's totals
+    private void apply(Database.Finance f, int sign) {
+        long day = epochDay(f.date);
+        int i = slot(day);
+        if (f.amount < 0) spent[i] += sign * -f.amount;
+        else earned[i] += sign * f.amount;
+    }
+
+    // Returns the array index for a day, growing the arrays (doubling) to cover it when needed
+    private int slot(long day) {
+        if (spent.length == 0) {
+            firstDay = day;
+            spent = new double[64];
+            earned = new double[64];
+        } else if (day < firstDay || day >= firstDay + spent.length) {
+            long lo = Math.min(firstDay, day);
+            long hi = Math.max(firstDay + spent.length, day + 1);
+            int size = spent.length;
+            while (size < hi - lo) size *= 2;
+            // Keep any extra room on the side we grew towards
+            long newFirst = day < firstDay ? hi - size : lo;
+            spent = copyInto(spent, (int) (firstDay - newFirst), size);
+            earned = copyInto(earned, (int) (firstDay - newFirst), size);
+            firstDay = newFirst;
+        }
+        minDay = Math.min(minDay, day);
+        maxDay = Math.max(maxDay, day);
+        return (int) (day - firstDay);
+    }
+
+    private static double[] copyInto(double[] old, int offset, int size) {
+        double[] grown = new double[size];
+        System.arraycopy(old, 0, grown, offset, old.length);
+        return grown;
+    }
+
+    /**
+     * Money spent on the given epoch day, as a positive number
+     */
+    public synchronized double spentOn(long day) {
+        long i = day - firstDay;
+        return i < 0 || i >= spent.length ? 0 : spent[(int) i];
+    }
+
+    /**
+     * Money earned on the given epoch day
+     */
+    public synchronized double earnedOn(long day) {
+        long i = day - firstDay;
+        return i < 0 || i >= earned.length ? 0 : earned[(int) i];
+    }
+
+    /**
+     * Copies the spending for days [from, to] into a new array, so callers can read it without holding the lock
+     */
+    public synchronized double[] spentBetween(long from, long to) {
+        double[] out = new double[(int) Math.max(0, to - from + 1)];
+        for (int d = 0; d < out.length; d++) {
+            long i = from + d - firstDay;
+            if (i >= 0 && i < spent.length) out[d] = spent[(int) i];
+        }
+        return out;
+    }
+
+    /**
+     * Earliest day with a record, or Long.MAX_VALUE when empty
+     */
+    public synchronized long firstRecordedDay() { return minDay; }
+
+    /**
+     * Latest day with a record, or Long.MIN_VALUE when empty
+     */
+    public synchronized long lastRecordedDay() { return maxDay; }
+}
@@ -0,0 +1,97 @@
+package dev.atomtables.financetracker;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * DashboardSnapshot is the last state the home screen showed (greeting, balance, monthly totals),
+ * kept in a small file next to the database so the next launch can paint it before running any SQL.
+ * It is only a hint: the view reconciles it with the database right after the first frame.
+ */
+public record DashboardSnapshot(String firstName, double balance, long monthStart,
+                                double thisMonthCredits, double thisMonthDebits,
+                                double lastMonthCredits, double lastMonthDebits) {
+    public static final Path FILE = Path.of("dashboard.snapshot");
+
+    // Bumped whenever the file layout changes, so old snapshots are ignored instead of misread
+    private static final int VERSION = 1;
+
+    // Saves run here, off the FX thread, SAVE_DELAY_MS after the first of a burst, with its newest snapshot
+    private static final long SAVE_DELAY_MS = 500;
+    private static final ScheduledExecutorService saver = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "dashboard-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final AtomicReference<DashboardSnapshot> pending = new AtomicReference<>();
+
+    /**
+     * Reads the snapshot, or returns null if there is none or it can't be used
+     */
+    public static DashboardSnapshot load() {
+        if (!Files.exists(FILE)) return null;
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(FILE))) {
+            if (in.readInt() != VERSION) return null;
+            return new DashboardSnapshot(in.readUTF(), in.readDouble(), in.readLong(),
+                    in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Saves the snapshot in the background shortly; one saved before then replaces it, so a burst of
+     * changes writes the file once, with the last state
+     */
+    public void saveLater() {
+        if (pending.getAndSet(this) == null) saver.schedule(DashboardSnapshot::savePending, SAVE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private static void savePending() {
+        DashboardSnapshot snapshot = pending.getAndSet(null);
+        if (snapshot != null) snapshot.save();
+    }
+
+    // Writes the snapshot to a temporary file and moves it into place, so a crash never leaves half a file
+    private void save() {
+        Path tmp = FILE.resolveSibling(FILE.getFileName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(tmp))) {
+                out.writeInt(VERSION);
+                out.writeUTF(firstName);
+                out.writeDouble(balance);
+                out.writeLong(monthStart);
+                out.writeDouble(thisMonthCredits);
+                out.writeDouble(thisMonthDebits);
+                out.writeDouble(lastMonthCredits);
+                out.writeDouble(lastMonthDebits);
+            }
+            Files.move(tmp, FILE, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Removes the snapshot, e.g. when the data it describes is deleted
+     */
+    public static void delete() {
+        pending.set(null);
+        // On the saver thread, after any save already under way, so that can't bring the file back
+        try {
+            saver.submit(() -> Files.deleteIfExists(FILE)).get();
+        } catch (InterruptedException | ExecutionException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package dev.atomtables.financetracker;
+
+import java.io.IOException;
+
+/**
+ * DataReset deletes all of the user's data without restarting the app: the database is emptied in one
+ * transaction (the file stays open where it is) and every cache, rollup and index is cleared in place,
+ * so the UI can go straight back to the welcome screen. reload() does the in-memory half on its own,
+ * for when a restore has replaced the data instead. Use from the FX thread.
+ */
+public class DataReset {
+    private DataReset() {}
+
+    /**
+     * Deletes everything. The order keeps a crash at any point startable: the dashboard snapshot goes
+     * first (left behind, it would open the dashboard of a deleted user), then the data in one
+     * transaction, then the archive files nothing refers to any more; the rest is only in memory.
+     */
+    public static void run() throws IOException {
+        long start = Metrics.metrics.start();
+        DashboardSnapshot.delete();
+        Database.database.reset();
+        if (LedgerStore.store != Database.database) LedgerStore.store.reset();
+        Archive.archive.reset();
+        clearMemory();
+        Metrics.metrics.stop("reset.time", start);
+    }
+
+    /**
+     * Drops everything held in memory about the data after the database was restored from a backup, so
+     * it is all read again from the restored data on next use, then deletes the archive files only the
+     * replaced data referred to
+     */
+    public static void reload() throws IOException {
+        long start = Metrics.metrics.start();
+        DashboardSnapshot.delete();
+        Archive.archive.forget();
+        clearMemory();
+        Archive.archive.deleteUnusedSegments();
+        Metrics.metrics.stop("reload.time", start);
+    }
+
+    // Clears every cache, index and rollup, and the ledger itself
+    private static void clearMemory() throws IOException {
+        QueryCache.cache.clear();
+
+        // Unhook the indexes before the ledger empties, so they are cleared at once instead of record by record
+        TagIndex.index.reset();
+        DailyTotals.daily.reset();
+        MerchantLeaderboard.leaderboard.reset();
+        RecurringDetector.recurring.reset();
+        AnomalyDetector.anomalies.reset();
+        Ledger.ledger.reset();
+
+        Accounts.accounts.reset();
+        CategoryRules.rules.reset();
+        ChangeLog.changes.reset();
+        // A dashboard still on screen may have saved a new snapshot as the ledger emptied
+        DashboardSnapshot.delete();
+    }
+}
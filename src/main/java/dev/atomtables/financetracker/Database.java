@@ -1,25 +1,56 @@
 package dev.atomtables.financetracker;
 
+import org.sqlite.SQLiteConnection;
+import org.sqlite.SQLiteErrorCode;
+
 import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 /**
- * Database class handles all database operations for the finance tracker application
+ * Database class handles all database operations for the finance tracker application.
+ * It is also the default LedgerStore (SQLite).
  */
-public class Database {
+public class Database implements LedgerStore {
+    // JDBC connection string for SQLite database (-Dfinancetracker.db overrides it, e.g. to benchmark elsewhere)
+    public static final String DB = System.getProperty("financetracker.db", "jdbc:sqlite:data.db");
+
     // Singleton instance of the database
     public static final Database database = new Database();
 
-    // JDBC connection string for SQLite database
-    public static final String DB = "jdbc:sqlite:data.db";
+    // Single writer thread that every mutation is queued on
+    private final DatabaseWriter writer = new DatabaseWriter(DB);
+
+    // Long-lived read connection and its prepared statements, shared by all readers (guarded by itself)
+    private final Object readLock = new Object();
+    private StatementCache reader;
+
+    // JFR events for the read and write currently running, so row counts can be attached to them
+    private JfrEvents.Sql readEvent;  // Guarded by readLock
+    private JfrEvents.Sql writeEvent; // Only touched by the writer thread
+
+    /**
+     * A read run against the shared read connection's cached statements
+     */
+    private interface Read<T> {
+        T run(StatementCache statements) throws SQLException;
+    }
 
     /**
      * Constructor initializes the database tables if they do not exist
      */
     private Database() {
+        createTables();
+    }
+
+    // Creates the tables that do not exist and brings older ones up to date (also run after restoring
+    // a backup, which may come from an older version)
+    private void createTables() {
         // SQL for user table
         String userTable = """
                 CREATE TABLE IF NOT EXISTS user (
@@ -38,16 +69,156 @@ public class Database {
                     direction BOOLEAN NOT NULL,
                     amount FLOAT NOT NULL,
                     type TEXT NOT NULL,
-                    date TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+                    date TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                    account_id INTEGER NOT NULL DEFAULT 1
                 );
                 """;
+        // Accounts (cards) the records belong to; account 1 always exists
+        String accountTable = """
+                CREATE TABLE IF NOT EXISTS accounts (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    name TEXT NOT NULL,
+                    card TEXT NOT NULL DEFAULT ''
+                );""";
+        // Many-to-many tags on finance records
+        String tagTable = """
+                CREATE TABLE IF NOT EXISTS finance_tags (
+                    finance_id INTEGER NOT NULL,
+                    tag TEXT NOT NULL,
+                    PRIMARY KEY (finance_id, tag)
+                ) WITHOUT ROWID;""";
+        // Auto-categorization rules: names containing keyword get type (if set) and tags (comma-separated)
+        String ruleTable = """
+                CREATE TABLE IF NOT EXISTS category_rules (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    keyword TEXT NOT NULL,
+                    type TEXT,
+                    tags TEXT NOT NULL DEFAULT ''
+                );""";
+        // Recurring-transaction buckets (see RecurringDetector); days is a comma-separated list of epoch days
+        String recurringTable = """
+                CREATE TABLE IF NOT EXISTS recurring_series (
+                    merchant TEXT NOT NULL,
+                    direction BOOLEAN NOT NULL,
+                    band INTEGER NOT NULL,
+                    name TEXT NOT NULL,
+                    count INTEGER NOT NULL,
+                    amount_sum FLOAT NOT NULL,
+                    days TEXT NOT NULL,
+                    last_id INTEGER NOT NULL,
+                    cadence TEXT,
+                    next_day INTEGER NOT NULL,
+                    PRIMARY KEY (merchant, direction, band)
+                );""";
+        // Monthly spending limit per type (see Budgets)
+        String budgetTable = """
+                CREATE TABLE IF NOT EXISTS budgets (
+                    type TEXT PRIMARY KEY,
+                    monthly_limit FLOAT NOT NULL
+                );""";
+        // Running amount statistics per merchant/type and the records they flagged (see AnomalyDetector)
+        String anomalyStatsTable = """
+                CREATE TABLE IF NOT EXISTS anomaly_stats (
+                    key TEXT PRIMARY KEY,
+                    count INTEGER NOT NULL,
+                    mean FLOAT NOT NULL,
+                    m2 FLOAT NOT NULL,
+                    ewma_mean FLOAT NOT NULL,
+                    ewma_var FLOAT NOT NULL,
+                    last_id INTEGER NOT NULL
+                );""";
+        String anomalyFlagTable = """
+                CREATE TABLE IF NOT EXISTS anomaly_flags (
+                    finance_id INTEGER PRIMARY KEY,
+                    score FLOAT NOT NULL,
+                    reason TEXT NOT NULL
+                );""";
+        // Years moved out of finances into archive segments, and their monthly totals (see Archive)
+        String archivedYearTable = """
+                CREATE TABLE IF NOT EXISTS archived_years (
+                    year INTEGER PRIMARY KEY,
+                    segment TEXT NOT NULL,
+                    records INTEGER NOT NULL
+                );""";
+        String archiveSummaryTable = """
+                CREATE TABLE IF NOT EXISTS archive_summaries (
+                    year INTEGER NOT NULL,
+                    month INTEGER NOT NULL,
+                    account_id INTEGER NOT NULL,
+                    type TEXT NOT NULL,
+                    direction BOOLEAN NOT NULL,
+                    credits FLOAT NOT NULL,
+                    debits FLOAT NOT NULL,
+                    count INTEGER NOT NULL,
+                    PRIMARY KEY (year, month, account_id, type, direction)
+                ) WITHOUT ROWID;""";
+        // Every change to the user and the finance records, in order, with the record before and after it
+        // (encoded by FinanceCodec; see ChangeLog). Changes made by one bulk operation share a batch.
+        String changeTable = """
+                CREATE TABLE IF NOT EXISTS changes (
+                    seq INTEGER PRIMARY KEY AUTOINCREMENT,
+                    at INTEGER NOT NULL,
+                    kind TEXT NOT NULL,
+                    finance_id INTEGER,
+                    before BLOB,
+                    after BLOB,
+                    batch INTEGER
+                );""";
+        // Named counters that only go up, each bumped in the write that takes a value (see nextBatch)
+        String counterTable = """
+                CREATE TABLE IF NOT EXISTS counters (
+                    name TEXT PRIMARY KEY,
+                    value INTEGER NOT NULL
+                ) WITHOUT ROWID;""";
+        // Portions of a split record, one row per type it is spread across
+        String splitTable = """
+                CREATE TABLE IF NOT EXISTS finance_splits (
+                    finance_id INTEGER NOT NULL,
+                    type TEXT NOT NULL,
+                    amount FLOAT NOT NULL
+                );""";
 
         // Create tables if they do not exist
         try (var conn = DriverManager.getConnection(DB);
              var stmt = conn.createStatement()) {
+            // WAL lets reads carry on while the writer thread commits
+            stmt.execute("PRAGMA journal_mode = WAL;");
             stmt.execute(userTable);
             stmt.execute(financialRecordTable);
+            // Databases from before accounts existed get the column, with every record in account 1
+            boolean hasAccount = false;
+            try (var rs = stmt.executeQuery("PRAGMA table_info(finances);")) {
+                while (rs.next()) hasAccount |= "account_id".equals(rs.getString("name"));
+            }
+            if (!hasAccount) stmt.execute("ALTER TABLE finances ADD COLUMN account_id INTEGER NOT NULL DEFAULT 1;");
+            stmt.execute(accountTable);
+            stmt.execute("INSERT INTO accounts (id, name) SELECT " + DEFAULT_ACCOUNT + ", 'Main card' WHERE NOT EXISTS (SELECT 1 FROM accounts);");
+            // Date-range scans (dashboard months, last-month filter) use this instead of a full scan
+            stmt.execute("CREATE INDEX IF NOT EXISTS finances_date ON finances (date);");
+            // Per-account scans and totals lead with the account, so one account never reads another's rows
+            stmt.execute("CREATE INDEX IF NOT EXISTS finances_account_date ON finances (account_id, date);");
+            stmt.execute(tagTable);
+            stmt.execute(splitTable);
+            stmt.execute("CREATE INDEX IF NOT EXISTS finance_splits_finance ON finance_splits (finance_id);");
+            stmt.execute(ruleTable);
+            stmt.execute(recurringTable);
+            stmt.execute(budgetTable);
+            stmt.execute(anomalyStatsTable);
+            stmt.execute(anomalyFlagTable);
+            stmt.execute(archivedYearTable);
+            stmt.execute(archiveSummaryTable);
+            stmt.execute(changeTable);
+            // Change logs from before bulk operations get the column, with every change on its own
+            boolean hasBatch = false;
+            try (var rs = stmt.executeQuery("PRAGMA table_info(changes);")) {
+                while (rs.next()) hasBatch |= "batch".equals(rs.getString("name"));
+            }
+            if (!hasBatch) stmt.execute("ALTER TABLE changes ADD COLUMN batch INTEGER;");
+            stmt.execute(counterTable);
+            // Batch ids carry on after those already in the log
+            stmt.execute("INSERT OR IGNORE INTO counters (name, value) SELECT 'batch', COALESCE(MAX(batch), 0) FROM changes;");
         } catch (SQLException e) {
+            Metrics.metrics.count("db.init.errors", 1);
             System.out.println(e.getMessage());
         }
     }
@@ -76,6 +247,28 @@ public class Database {
         }
     }
 
+    // Account that records belong to unless they say otherwise (created with the database)
+    public static final int DEFAULT_ACCOUNT = 1;
+
+    /**
+     * An account (a card or bank account) that records belong to
+     */
+    public record Account(int id, String name, String card) {
+        @Override
+        public String toString() {
+            return card.isEmpty() ? name : name + " (" + card + ")";
+        }
+    }
+
+    /**
+     * One entry of the change log: what happened to which record, and the record before and after it
+     * (before is null for an ADD, after for a DELETE). USER changes carry the user instead.
+     * Changes made together by one bulk operation have the same batch (null for a change made alone).
+     */
+    public record Change(long seq, long at, Kind kind, Integer financeId, Finance before, Finance after, User user, Long batch) {
+        public enum Kind { ADD, DELETE, UPDATE, USER }
+    }
+
     /**
      * Finance class represents a financial record
      */
@@ -96,12 +289,20 @@ public class Database {
             };
         }
 
+        /**
+         * One portion of a split record: the part of its amount that belongs to a type
+         */
+        public record Split(Type type, double amount) {}
+
         public Integer id; // Unique ID
         public String name; // Name/description
         public Boolean direction; // true = income, false = expense
         public double amount; // Amount of money
         public Type type; // Type/category
         public Date date; // Date of transaction
+        public List<String> tags = List.of(); // Normalized tags (see TagIndex.normalizeTag)
+        public List<Split> splits = List.of(); // Empty unless the amount is spread across several types
+        public int accountId = DEFAULT_ACCOUNT; // Account the record belongs to
 
         // Getters for TableView and other uses
         public double getAmount() { return amount; }
@@ -110,99 +311,1345 @@ public class Database {
         public Integer getId() { return id; }
         public Type getType() { return type; }
         public Date getDate() { return date; }
+        public List<String> getTags() { return tags; }
+
+        /**
+         * A copy of this record, for publishing an updated version without touching the one views hold
+         */
+        public Finance copy() {
+            Finance f = new Finance();
+            f.id = id;
+            f.name = name;
+            f.direction = direction;
+            f.amount = amount;
+            f.type = type;
+            f.date = date;
+            f.tags = tags;
+            f.splits = splits;
+            f.accountId = accountId;
+            return f;
+        }
     }
 
     /**
-     * Adds a user to the database
+     * Adds a user to the database, waiting for the write to commit
      */
+    @Override
     public void setUser(User user) throws IOException {
+        await(setUserAsync(user));
+    }
+
+    /**
+     * Queues adding a user on the writer thread
+     */
+    public CompletableFuture<Void> setUserAsync(User user) {
         String createUserSQL = """
                 INSERT INTO user (firstName, lastName, email, dateOfBirth, occupation, balance) VALUES (?,?,?,?,?,?);""";
-        try (var conn = DriverManager.getConnection(DB);
-             var stmt = conn.prepareStatement(createUserSQL)) {
+        return write("setUser", "INSERT", statements -> {
+            var stmt = statements.prepare(createUserSQL);
             stmt.setString(1, user.firstName);
             stmt.setString(2, user.lastName);
             stmt.setString(3, user.email);
             stmt.setString(4, user.dateOfBirth);
             stmt.setString(5, user.occupation);
             stmt.setFloat(6, (float) user.balance);
-            stmt.executeUpdate();
-        } catch (SQLException e) {
-            System.out.println(e.getMessage());
-        }
+            rowsWritten(stmt.executeUpdate());
+            logChange(statements, Change.Kind.USER, null, null, FinanceCodec.encodeUser(user));
+            return null;
+        });
     }
 
     /**
      * Retrieves the first user from the database
      */
+    @Override
     public User getUser() throws IOException {
-        String getUserSQL = "SELECT * FROM user LIMIT 1;";
-        try (var conn = DriverManager.getConnection(DB);
-             var stmt = conn.createStatement();
-             var rs = stmt.executeQuery(getUserSQL)) {
-            if (!rs.next()) return null;
-            return new User(rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getString(5), rs.getFloat(6));
-        } catch (SQLException e) {
-            System.out.println(e.getMessage());
-        }
-        return null;
+        String getUserSQL = "SELECT firstName, lastName, email, dateOfBirth, occupation, balance FROM user LIMIT 1;";
+        return read("getUser", "SELECT", statements -> {
+            try (var rs = statements.prepare(getUserSQL).executeQuery()) {
+                if (!rs.next()) return null;
+                rowsRead("getUser", 1);
+                return new User(rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getString(5), rs.getFloat(6));
+            }
+        });
     }
 
     /**
      * Retrieves all finance records from the database
      */
     public ArrayList<Finance> getFinances() throws IOException {
-        String getFinancesSQL = "SELECT * FROM finances;";
-        ArrayList<Finance> finances = new ArrayList<>();
-        try (var conn = DriverManager.getConnection(DB);
-             var stmt = conn.createStatement();
-             var rs = stmt.executeQuery(getFinancesSQL)) {
-            while (rs.next()) {
-                Finance f = new Finance();
-                f.id = rs.getInt(1);
-                f.name = rs.getString(2);
-                f.direction = rs.getBoolean(3);
-                f.amount = rs.getDouble(4);
-                f.type = Finance.Type.valueOf(rs.getString(5).toUpperCase());
-                f.date = new Date(rs.getTimestamp(6).getTime());
-                finances.add(f);
+        return getFinances(FinanceFilter.NONE);
+    }
+
+    /**
+     * Retrieves the finance records matching a filter, in id order, from the finances table and from any
+     * archived year the filter's date range reaches (see Archive)
+     */
+    @Override
+    public ArrayList<Finance> getFinances(FinanceFilter filter) throws IOException {
+        ArrayList<Finance> finances = getHotFinances(filter);
+        if (!Archive.archive.covers(filter.from(), filter.to())) return finances;
+        List<Finance> archived = Archive.archive.find(filter);
+        if (archived.isEmpty()) return finances;
+        // Both lists are in id order; merge them, keeping the table's copy of any record in both
+        ArrayList<Finance> merged = new ArrayList<>(finances.size() + archived.size());
+        int i = 0, j = 0;
+        while (i < finances.size() || j < archived.size()) {
+            if (j == archived.size() || (i < finances.size() && finances.get(i).id <= archived.get(j).id)) {
+                if (j < archived.size() && finances.get(i).id.equals(archived.get(j).id)) j++;
+                merged.add(finances.get(i++));
+            } else {
+                merged.add(archived.get(j++));
             }
-        } catch (SQLException e) {
-            System.out.println(e.getMessage());
         }
-        return finances;
+        return merged;
+    }
+
+    /**
+     * Retrieves the open years' records: the ledger only holds those. Closed years' records still in
+     * the table are left to Archive.startArchiving(), and reached like archived ones through getFinances(filter).
+     */
+    @Override
+    public List<Finance> getLedgerFinances() throws IOException {
+        return getHotFinances(FinanceFilter.NONE.withDates(Archive.firstOpenMillis(), null));
+    }
+
+    /**
+     * Retrieves every finance record still in the finances table (the open years)
+     */
+    public ArrayList<Finance> getHotFinances() throws IOException {
+        return getHotFinances(FinanceFilter.NONE);
+    }
+
+    /**
+     * Retrieves the finance records in the finances table matching a filter, in id order, with a single
+     * parameterized query. Archived years are not read. Fails as a whole if any part of the read fails,
+     * so a record never comes back without its tags or splits.
+     */
+    public ArrayList<Finance> getHotFinances(FinanceFilter filter) throws IOException {
+        List<Object> params = new ArrayList<>();
+        String getFinancesSQL = "SELECT id, name, direction, amount, type, date, account_id FROM finances WHERE "
+                + filter.where(params) + " ORDER BY id;";
+        ArrayList<Finance> records = read("getFinances", "SELECT", statements -> {
+            ArrayList<Finance> finances = new ArrayList<>();
+            var stmt = statements.prepare(getFinancesSQL);
+            for (int i = 0; i < params.size(); i++) stmt.setObject(i + 1, params.get(i));
+            try (var rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Finance f = new Finance();
+                    f.id = rs.getInt(1);
+                    f.name = rs.getString(2);
+                    f.direction = rs.getBoolean(3);
+                    f.amount = rs.getDouble(4);
+                    f.type = Finance.Type.valueOf(rs.getString(5).toUpperCase());
+                    f.date = new Date(rs.getTimestamp(6).getTime());
+                    f.accountId = rs.getInt(7);
+                    finances.add(f);
+                }
+            }
+            rowsRead("getFinances", finances.size());
+            if (finances.isEmpty()) return finances;
+
+            // Attach tags and splits with one query each, over the same filtered set of ids
+            Map<Integer, Finance> byId = new HashMap<>();
+            for (Finance f : finances) byId.put(f.id, f);
+            String ids = "SELECT id FROM finances WHERE " + filter.where(new ArrayList<>());
+            var tagStmt = statements.prepare("SELECT finance_id, tag FROM finance_tags WHERE finance_id IN (" + ids + ");");
+            for (int i = 0; i < params.size(); i++) tagStmt.setObject(i + 1, params.get(i));
+            try (var rs = tagStmt.executeQuery()) {
+                while (rs.next()) {
+                    Finance f = byId.get(rs.getInt(1));
+                    if (f == null) continue;
+                    if (f.tags.isEmpty()) f.tags = new ArrayList<>();
+                    f.tags.add(rs.getString(2));
+                }
+            }
+            var splitStmt = statements.prepare("SELECT finance_id, type, amount FROM finance_splits WHERE finance_id IN (" + ids + ");");
+            for (int i = 0; i < params.size(); i++) splitStmt.setObject(i + 1, params.get(i));
+            try (var rs = splitStmt.executeQuery()) {
+                while (rs.next()) {
+                    Finance f = byId.get(rs.getInt(1));
+                    if (f == null) continue;
+                    if (f.splits.isEmpty()) f.splits = new ArrayList<>();
+                    f.splits.add(new Finance.Split(Finance.Type.valueOf(rs.getString(2).toUpperCase()), rs.getDouble(3)));
+                }
+            }
+            return finances;
+        });
+        return records;
+    }
+
+    /**
+     * Sums the records matching a query: credits (positive amounts), debits (the rest) and count. The
+     * finances table is summed in SQL, plus the summaries of any archived year the query reaches.
+     * Normally reached through QueryCache, which keeps the result.
+     */
+    @Override
+    public QueryCache.Totals sumTotals(QueryCache.Query query) throws IOException {
+        QueryCache.Totals totals = sumHotTotals(query);
+        if (!Archive.archive.covers(query.from(), query.to())) return totals;
+        return totals.plus(Archive.archive.totals(query));
+    }
+
+    // Sums the records in the finances table matching a query, in SQL
+    private QueryCache.Totals sumHotTotals(QueryCache.Query query) throws IOException {
+        // Build the WHERE clause from the query; each shape of it gets its own cached statement
+        StringBuilder sql = new StringBuilder("""
+                SELECT COALESCE(SUM(CASE WHEN amount > 0 THEN amount ELSE 0 END), 0),
+                       COALESCE(SUM(CASE WHEN amount > 0 THEN 0 ELSE amount END), 0),
+                       COUNT(*)
+                FROM finances WHERE""");
+        // With an account, the (account_id, date) index confines the scan to that account's rows
+        if (query.account() != null) sql.append(" account_id = ? AND");
+        sql.append(" date >= ? AND date < ?");
+        if (query.types() != null) {
+            sql.append(" AND type IN (").append(String.join(",", Collections.nCopies(query.types().size(), "?"))).append(")");
+        }
+        if (query.direction() != null) sql.append(" AND direction = ?");
+        String sumTotalsSQL = sql.append(";").toString();
+
+        return read("sumTotals", "SELECT", statements -> {
+            var stmt = statements.prepare(sumTotalsSQL);
+            int i = 1;
+            if (query.account() != null) stmt.setInt(i++, query.account());
+            stmt.setLong(i++, query.from());
+            stmt.setLong(i++, query.to());
+            if (query.types() != null) {
+                for (Finance.Type type : query.types()) stmt.setString(i++, type.value);
+            }
+            if (query.direction() != null) stmt.setBoolean(i, query.direction());
+            try (var rs = stmt.executeQuery()) {
+                rs.next();
+                rowsRead("sumTotals", rs.getLong(3));
+                return new QueryCache.Totals(rs.getDouble(1), rs.getDouble(2), rs.getLong(3));
+            }
+        });
     }
 
     /**
-     * Adds a finance record to the database
+     * Adds a finance record to the database and sets its generated id, waiting for the write to commit
      */
+    @Override
     public void addFinance(Finance f) throws IOException {
-        String addFinanceSQL = """
-                INSERT INTO finances (name, direction, amount, type, date) VALUES (?,?,?,?,?);""";
-        try (var conn = DriverManager.getConnection(DB);
-             var stmt = conn.prepareStatement(addFinanceSQL)) {
-            stmt.setString(1, f.name);
-            stmt.setBoolean(2, f.direction);
-            stmt.setDouble(3, f.amount);
-            stmt.setString(4, f.type.value);
-            stmt.setTimestamp(5, new java.sql.Timestamp(f.date.getTime()));
-            stmt.executeUpdate();
-        } catch (SQLException e) {
-            System.out.println(e.getMessage());
+        await(addFinanceAsync(f));
+    }
+
+    /**
+     * Queues adding a finance record on the writer thread; the future yields the generated id
+     * (which is also set on the record)
+     */
+    @Override
+    public CompletableFuture<Integer> addFinanceAsync(Finance f) {
+        return write("addFinance", "INSERT", statements -> insertFinance(statements, f, false, null))
+                .whenComplete((id, failure) -> {
+                    // Drop cached results covering this record's account and month
+                    if (failure == null) QueryCache.cache.invalidate(f.accountId, f.date.getTime());
+                });
+    }
+
+    /**
+     * Queues adding many finance records, one write each so the writer group-commits them, logged as one
+     * batch so they are undone together. The futures yield the generated ids (also set on the records).
+     */
+    @Override
+    public List<CompletableFuture<Integer>> addFinancesAsync(List<Finance> fs) {
+        // Picked by the first write to run; the writes run in order on the writer thread
+        long[] batch = {-1};
+        List<CompletableFuture<Integer>> writes = new ArrayList<>(fs.size());
+        for (Finance f : fs) {
+            writes.add(write("addFinance", "INSERT", statements -> {
+                if (batch[0] < 0) batch[0] = nextBatch(statements);
+                return insertFinance(statements, f, false, batch[0]);
+            }).whenComplete((id, failure) -> {
+                if (failure == null) QueryCache.cache.invalidate(f.accountId, f.date.getTime());
+            }));
+        }
+        return writes;
+    }
+
+    /**
+     * Puts a deleted record back under its old id (to undo the delete), waiting for the write to commit
+     */
+    @Override
+    public void restoreFinance(Finance f) throws IOException {
+        await(write("restoreFinance", "INSERT", statements -> insertFinance(statements, f, true, null)));
+        QueryCache.cache.invalidate(f.accountId, f.date.getTime());
+    }
+
+    // Inserts a record with its tags and splits (on the writer thread) and logs it; without keepId the
+    // record gets a generated id, which is set on it and returned
+    private int insertFinance(StatementCache statements, Finance f, boolean keepId, Long batch) throws SQLException {
+        String addFinanceSQL = keepId
+                ? "INSERT INTO finances (name, direction, amount, type, date, account_id, id) VALUES (?,?,?,?,?,?,?) RETURNING id;"
+                : "INSERT INTO finances (name, direction, amount, type, date, account_id) VALUES (?,?,?,?,?,?) RETURNING id;";
+        var stmt = statements.prepare(addFinanceSQL);
+        stmt.setString(1, f.name);
+        stmt.setBoolean(2, f.direction);
+        stmt.setDouble(3, f.amount);
+        stmt.setString(4, f.type.value);
+        stmt.setTimestamp(5, new java.sql.Timestamp(f.date.getTime()));
+        stmt.setInt(6, f.accountId);
+        if (keepId) stmt.setInt(7, f.id);
+        // Hand the generated id back to the caller
+        try (var rs = stmt.executeQuery()) {
+            if (rs.next()) f.id = rs.getInt(1);
+        }
+        int rows = 1 + insertTags(statements, f.id, f.tags) + insertSplits(statements, f.id, f.splits);
+        logChange(statements, Change.Kind.ADD, f.id, null, FinanceCodec.encode(f), batch);
+        rowsWritten(rows);
+        return f.id;
+    }
+
+    // Inserts the splits of a record (on the writer thread); returns the rows added
+    private int insertSplits(StatementCache statements, int id, List<Finance.Split> splits) throws SQLException {
+        var stmt = statements.prepare("INSERT INTO finance_splits (finance_id, type, amount) VALUES (?,?,?);");
+        int rows = 0;
+        for (Finance.Split split : splits) {
+            stmt.setInt(1, id);
+            stmt.setString(2, split.type().value);
+            stmt.setDouble(3, split.amount());
+            rows += stmt.executeUpdate();
         }
+        return rows;
     }
 
     /**
-     * Deletes a finance record by ID
+     * Deletes a finance record by ID, waiting for the write to commit
      */
+    @Override
     public void deleteFinance(int id) throws IOException {
+        await(deleteFinanceAsync(id));
+    }
+
+    /**
+     * Queues deleting a finance record on the writer thread; the future yields the number of rows removed
+     */
+    public CompletableFuture<Integer> deleteFinanceAsync(int id) {
+        String deleteFinanceSQL = "DELETE FROM finances WHERE id = ? RETURNING account_id, date;";
+        String deleteTagsSQL = "DELETE FROM finance_tags WHERE finance_id = ?;";
+        String deleteSplitsSQL = "DELETE FROM finance_splits WHERE finance_id = ?;";
+        List<long[]> deleted = new ArrayList<>(); // {account, date} of each deleted row
+        return write("deleteFinance", "DELETE", statements -> {
+            Finance before = loadFinance(statements, id);
+            var stmt = statements.prepare(deleteFinanceSQL);
+            stmt.setInt(1, id);
+            // Collect the deleted record's account and date so only cached results for its month are dropped
+            try (var rs = stmt.executeQuery()) {
+                while (rs.next()) deleted.add(new long[]{rs.getInt(1), rs.getLong(2)});
+            }
+            for (String sql : List.of(deleteTagsSQL, deleteSplitsSQL)) {
+                var child = statements.prepare(sql);
+                child.setInt(1, id);
+                child.executeUpdate();
+            }
+            if (before != null) logChange(statements, Change.Kind.DELETE, id, FinanceCodec.encode(before), null);
+            rowsWritten(deleted.size());
+            return deleted.size();
+        }).whenComplete((rows, failure) -> {
+            if (failure == null) deleted.forEach(d -> QueryCache.cache.invalidate((int) d[0], d[1]));
+        });
+    }
+
+    /**
+     * Replaces the tags of a finance record, waiting for the write to commit
+     */
+    @Override
+    public void setTags(int id, List<String> tags) throws IOException {
+        await(setTagsAsync(id, tags));
+    }
+
+    /**
+     * Queues replacing the tags of a finance record on the writer thread
+     */
+    public CompletableFuture<Integer> setTagsAsync(int id, List<String> tags) {
+        String clearTagsSQL = "DELETE FROM finance_tags WHERE finance_id = ?;";
+        return write("setTags", "UPDATE", statements -> {
+            Finance before = loadFinance(statements, id);
+            var stmt = statements.prepare(clearTagsSQL);
+            stmt.setInt(1, id);
+            int rows = stmt.executeUpdate() + insertTags(statements, id, tags);
+            if (before != null) {
+                Finance after = before.copy();
+                after.tags = List.copyOf(new LinkedHashSet<>(tags));
+                logChange(statements, Change.Kind.UPDATE, id, FinanceCodec.encode(before), FinanceCodec.encode(after));
+            }
+            rowsWritten(rows);
+            return rows;
+        });
+    }
+
+    /**
+     * Writes new types and tags for many records, waiting for every batch to commit.
+     * Records are written in batches of UPDATE_BATCH per queued write, so the writer can group-commit
+     * them instead of taking one transaction per record. Tags are only ever added here. The changes are
+     * logged as one batch, so a rule's re-categorization is undone in one step.
+     */
+    @Override
+    public void updateCategories(List<Finance> changed) throws IOException {
+        String updateTypeSQL = "UPDATE finances SET type = ? WHERE id = ?;";
+        long[] changeBatch = {-1}; // Picked by the first write to run
+        List<CompletableFuture<Integer>> batches = new ArrayList<>();
+        for (int from = 0; from < changed.size(); from += UPDATE_BATCH) {
+            List<Finance> batch = changed.subList(from, Math.min(changed.size(), from + UPDATE_BATCH));
+            batches.add(write("updateCategories", "UPDATE", statements -> {
+                var stmt = statements.prepare(updateTypeSQL);
+                if (changeBatch[0] < 0) changeBatch[0] = nextBatch(statements);
+                int rows = 0;
+                for (Finance f : batch) {
+                    Finance before = loadFinance(statements, f.id);
+                    if (before == null) continue;
+                    stmt.setString(1, f.type.value);
+                    stmt.setInt(2, f.id);
+                    rows += stmt.executeUpdate() + insertTags(statements, f.id, f.tags);
+                    Finance after = before.copy();
+                    after.type = f.type;
+                    Set<String> tags = new LinkedHashSet<>(before.tags);
+                    tags.addAll(f.tags);
+                    after.tags = List.copyOf(tags);
+                    logChange(statements, Change.Kind.UPDATE, f.id, FinanceCodec.encode(before), FinanceCodec.encode(after), changeBatch[0]);
+                }
+                rowsWritten(rows);
+                return rows;
+            }).whenComplete((rows, failure) -> {
+                // Type-filtered cached totals for these months are now stale
+                if (failure == null) batch.forEach(f -> QueryCache.cache.invalidate(f.accountId, f.date.getTime()));
+            }));
+        }
+        for (CompletableFuture<Integer> batch : batches) await(batch);
+    }
+
+    // Records per queued write in updateCategories
+    private static final int UPDATE_BATCH = 500;
+
+    /**
+     * Overwrites every field of a record (name, direction, amount, type, date, account, tags and splits)
+     * with those of f, waiting for the write to commit
+     */
+    @Override
+    public void replaceFinance(Finance f) throws IOException {
+        Finance before = await(write("replaceFinance", "UPDATE", statements -> overwriteFinance(statements, f, null)));
+        if (before == null) return;
+        // Both the month it left and the month it is in now may have moved
+        QueryCache.cache.invalidate(List.of(before, f));
+    }
+
+    // Overwrites a record on the writer thread and logs it; returns the record as it was, or null if there is none
+    private Finance overwriteFinance(StatementCache statements, Finance f, Long batch) throws SQLException {
+        String updateFinanceSQL = "UPDATE finances SET name = ?, direction = ?, amount = ?, type = ?, date = ?, account_id = ? WHERE id = ?;";
+        String clearTagsSQL = "DELETE FROM finance_tags WHERE finance_id = ?;";
+        String clearSplitsSQL = "DELETE FROM finance_splits WHERE finance_id = ?;";
+        Finance old = loadFinance(statements, f.id);
+        if (old == null) return null;
+        var stmt = statements.prepare(updateFinanceSQL);
+        stmt.setString(1, f.name);
+        stmt.setBoolean(2, f.direction);
+        stmt.setDouble(3, f.amount);
+        stmt.setString(4, f.type.value);
+        stmt.setTimestamp(5, new java.sql.Timestamp(f.date.getTime()));
+        stmt.setInt(6, f.accountId);
+        stmt.setInt(7, f.id);
+        int rows = stmt.executeUpdate();
+        for (String sql : List.of(clearTagsSQL, clearSplitsSQL)) {
+            var clear = statements.prepare(sql);
+            clear.setInt(1, f.id);
+            rows += clear.executeUpdate();
+        }
+        rows += insertTags(statements, f.id, f.tags) + insertSplits(statements, f.id, f.splits);
+        logChange(statements, Change.Kind.UPDATE, f.id, FinanceCodec.encode(old), FinanceCodec.encode(f), batch);
+        rowsWritten(rows);
+        return old;
+    }
+
+    /**
+     * A change to apply to many records at once; null fields (and an empty tag list) leave that part of
+     * each record as it is. Tags are added to those the record has.
+     */
+    public record BulkEdit(String name, Finance.Type type, Integer accountId, List<String> addTags) {
+        public BulkEdit {
+            addTags = addTags == null ? List.of() : List.copyOf(addTags);
+        }
+
+        /**
+         * Nothing would change
+         */
+        public boolean isEmpty() {
+            return name == null && type == null && accountId == null && addTags.isEmpty();
+        }
+
+        /**
+         * A copy of f with this edit applied
+         */
+        public Finance applyTo(Finance f) {
+            Finance edited = f.copy();
+            if (name != null) edited.name = name;
+            if (type != null) edited.type = type;
+            if (accountId != null) edited.accountId = accountId;
+            if (!addTags.isEmpty()) {
+                Set<String> tags = new LinkedHashSet<>(f.tags);
+                tags.addAll(addTags);
+                edited.tags = List.copyOf(tags);
+            }
+            return edited;
+        }
+    }
+
+    // Ids per IN (...) list in the bulk statements. A short last chunk repeats its final id to fill the
+    // list, so each statement is prepared once and reused for every chunk.
+    private static final int ID_CHUNK = 500;
+
+    // The statement with its "(?)" widened to a list of ID_CHUNK parameters
+    private static String inChunk(String sql) {
+        return sql.replace("(?)", "(" + "?,".repeat(ID_CHUNK - 1) + "?)");
+    }
+
+    // Binds ids[from..from + ID_CHUNK) (padded with the last of them) starting at parameter first
+    private static void bindChunk(java.sql.PreparedStatement stmt, int first, List<Integer> ids, int from) throws SQLException {
+        int to = Math.min(ids.size(), from + ID_CHUNK);
+        for (int i = 0; i < ID_CHUNK; i++) stmt.setInt(first + i, ids.get(Math.min(from + i, to - 1)));
+    }
+
+    /**
+     * Deletes many finance records in one transaction, with a statement per table for every ID_CHUNK ids
+     * rather than one per record, waiting for it to commit. Returns the records as they were (those
+     * that existed), in id order.
+     */
+    @Override
+    public List<Finance> deleteFinances(Collection<Integer> ids) throws IOException {
+        List<Integer> sorted = new ArrayList<>(new TreeSet<>(ids));
+        if (sorted.isEmpty()) return List.of();
+        List<String> deleteSQL = List.of(
+                inChunk("DELETE FROM finances WHERE id IN (?);"),
+                inChunk("DELETE FROM finance_tags WHERE finance_id IN (?);"),
+                inChunk("DELETE FROM finance_splits WHERE finance_id IN (?);"));
+        List<Finance> deleted = await(write("deleteFinances", "DELETE", statements -> {
+            List<Finance> before = loadFinances(statements, sorted);
+            long batch = nextBatch(statements);
+            int rows = 0;
+            for (int from = 0; from < sorted.size(); from += ID_CHUNK) {
+                for (String sql : deleteSQL) {
+                    var stmt = statements.prepare(sql);
+                    bindChunk(stmt, 1, sorted, from);
+                    rows += stmt.executeUpdate();
+                }
+            }
+            for (Finance f : before) logChange(statements, Change.Kind.DELETE, f.id, FinanceCodec.encode(f), null, batch);
+            rowsWritten(rows);
+            return before;
+        }));
+        // Once for the whole batch rather than once per record
+        QueryCache.cache.invalidate(deleted);
+        return deleted;
+    }
+
+    /**
+     * Applies one edit to many finance records in one transaction, with an UPDATE (and a tag INSERT) for
+     * every ID_CHUNK ids, waiting for it to commit. Returns the edited records (those that existed), in id order.
+     */
+    @Override
+    public List<Finance> editFinances(Collection<Integer> ids, BulkEdit edit) throws IOException {
+        List<Integer> sorted = new ArrayList<>(new TreeSet<>(ids));
+        if (sorted.isEmpty() || edit.isEmpty()) return List.of();
+        String updateSQL = inChunk("UPDATE finances SET name = COALESCE(?, name), type = COALESCE(?, type), account_id = COALESCE(?, account_id) WHERE id IN (?);");
+        String addTagSQL = inChunk("INSERT OR IGNORE INTO finance_tags (finance_id, tag) SELECT id, ? FROM finances WHERE id IN (?);");
+        List<Finance> before = new ArrayList<>();
+        List<Finance> edited = await(write("editFinances", "UPDATE", statements -> {
+            before.addAll(loadFinances(statements, sorted));
+            long batch = nextBatch(statements);
+            int rows = 0;
+            for (int from = 0; from < sorted.size(); from += ID_CHUNK) {
+                if (edit.name() != null || edit.type() != null || edit.accountId() != null) {
+                    var stmt = statements.prepare(updateSQL);
+                    stmt.setString(1, edit.name());
+                    stmt.setString(2, edit.type() == null ? null : edit.type().value);
+                    if (edit.accountId() == null) stmt.setNull(3, java.sql.Types.INTEGER);
+                    else stmt.setInt(3, edit.accountId());
+                    bindChunk(stmt, 4, sorted, from);
+                    rows += stmt.executeUpdate();
+                }
+                for (String tag : edit.addTags()) {
+                    var stmt = statements.prepare(addTagSQL);
+                    stmt.setString(1, tag);
+                    bindChunk(stmt, 2, sorted, from);
+                    rows += stmt.executeUpdate();
+                }
+            }
+            List<Finance> after = new ArrayList<>(before.size());
+            for (Finance f : before) {
+                Finance e = edit.applyTo(f);
+                logChange(statements, Change.Kind.UPDATE, f.id, FinanceCodec.encode(f), FinanceCodec.encode(e), batch);
+                after.add(e);
+            }
+            rowsWritten(rows);
+            return after;
+        }));
+        List<Finance> touched = new ArrayList<>(before);
+        touched.addAll(edited); // An account change moves the record's totals from one account to the other
+        QueryCache.cache.invalidate(touched);
+        return edited;
+    }
+
+    /**
+     * Puts many deleted records back under their old ids in one transaction (to undo a bulk delete)
+     */
+    @Override
+    public void restoreFinances(List<Finance> fs) throws IOException {
+        if (fs.isEmpty()) return;
+        await(write("restoreFinances", "INSERT", statements -> {
+            long batch = nextBatch(statements);
+            for (Finance f : fs) insertFinance(statements, f, true, batch);
+            return fs.size();
+        }));
+        QueryCache.cache.invalidate(fs);
+    }
+
+    /**
+     * Overwrites many records with those given in one transaction (to undo or redo a bulk edit)
+     */
+    @Override
+    public void replaceFinances(List<Finance> fs) throws IOException {
+        if (fs.isEmpty()) return;
+        List<Finance> touched = new ArrayList<>(fs);
+        await(write("replaceFinances", "UPDATE", statements -> {
+            long batch = nextBatch(statements);
+            for (Finance f : fs) {
+                Finance old = overwriteFinance(statements, f, batch);
+                if (old != null) touched.add(old);
+            }
+            return fs.size();
+        }));
+        QueryCache.cache.invalidate(touched);
+    }
+
+    // Reads many records with their tags and splits on the writer thread, ID_CHUNK ids per query;
+    // ids must be sorted, and the records come back in id order (missing ones left out)
+    private List<Finance> loadFinances(StatementCache statements, List<Integer> ids) throws SQLException {
+        String financeSQL = inChunk("SELECT id, name, direction, amount, type, date, account_id FROM finances WHERE id IN (?);");
+        String tagSQL = inChunk("SELECT finance_id, tag FROM finance_tags WHERE finance_id IN (?);");
+        String splitSQL = inChunk("SELECT finance_id, type, amount FROM finance_splits WHERE finance_id IN (?);");
+        Map<Integer, Finance> byId = new TreeMap<>();
+        Map<Integer, List<String>> tags = new HashMap<>();
+        Map<Integer, List<Finance.Split>> splits = new HashMap<>();
+        for (int from = 0; from < ids.size(); from += ID_CHUNK) {
+            var stmt = statements.prepare(financeSQL);
+            bindChunk(stmt, 1, ids, from);
+            try (var rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Finance f = new Finance();
+                    f.id = rs.getInt(1);
+                    f.name = rs.getString(2);
+                    f.direction = rs.getBoolean(3);
+                    f.amount = rs.getDouble(4);
+                    f.type = Finance.Type.valueOf(rs.getString(5).toUpperCase());
+                    f.date = new Date(rs.getTimestamp(6).getTime());
+                    f.accountId = rs.getInt(7);
+                    byId.put(f.id, f);
+                }
+            }
+            var tagStmt = statements.prepare(tagSQL);
+            bindChunk(tagStmt, 1, ids, from);
+            try (var rs = tagStmt.executeQuery()) {
+                while (rs.next()) tags.computeIfAbsent(rs.getInt(1), id -> new ArrayList<>()).add(rs.getString(2));
+            }
+            var splitStmt = statements.prepare(splitSQL);
+            bindChunk(splitStmt, 1, ids, from);
+            try (var rs = splitStmt.executeQuery()) {
+                while (rs.next()) {
+                    splits.computeIfAbsent(rs.getInt(1), id -> new ArrayList<>())
+                            .add(new Finance.Split(Finance.Type.valueOf(rs.getString(2).toUpperCase()), rs.getDouble(3)));
+                }
+            }
+        }
+        for (Finance f : byId.values()) {
+            f.tags = List.copyOf(tags.getOrDefault(f.id, List.of()));
+            f.splits = List.copyOf(splits.getOrDefault(f.id, List.of()));
+        }
+        return new ArrayList<>(byId.values());
+    }
+
+    // Reads one record with its tags and splits on the writer thread, or null if there is none
+    private Finance loadFinance(StatementCache statements, int id) throws SQLException {
+        var stmt = statements.prepare("SELECT name, direction, amount, type, date, account_id FROM finances WHERE id = ?;");
+        stmt.setInt(1, id);
+        Finance f = new Finance();
+        try (var rs = stmt.executeQuery()) {
+            if (!rs.next()) return null;
+            f.id = id;
+            f.name = rs.getString(1);
+            f.direction = rs.getBoolean(2);
+            f.amount = rs.getDouble(3);
+            f.type = Finance.Type.valueOf(rs.getString(4).toUpperCase());
+            f.date = new Date(rs.getTimestamp(5).getTime());
+            f.accountId = rs.getInt(6);
+        }
+        var tagStmt = statements.prepare("SELECT tag FROM finance_tags WHERE finance_id = ?;");
+        tagStmt.setInt(1, id);
+        List<String> tags = new ArrayList<>();
+        try (var rs = tagStmt.executeQuery()) {
+            while (rs.next()) tags.add(rs.getString(1));
+        }
+        f.tags = List.copyOf(tags);
+        var splitStmt = statements.prepare("SELECT type, amount FROM finance_splits WHERE finance_id = ?;");
+        splitStmt.setInt(1, id);
+        List<Finance.Split> splits = new ArrayList<>();
+        try (var rs = splitStmt.executeQuery()) {
+            while (rs.next()) splits.add(new Finance.Split(Finance.Type.valueOf(rs.getString(1).toUpperCase()), rs.getDouble(2)));
+        }
+        f.splits = List.copyOf(splits);
+        return f;
+    }
+
+    // Appends to the change log, on the writer thread inside the write making the change, so a change
+    // and its log entry commit (or roll back) together
+    private void logChange(StatementCache statements, Change.Kind kind, Integer financeId, byte[] before, byte[] after) throws SQLException {
+        logChange(statements, kind, financeId, before, after, null);
+    }
+
+    // Appends a change made as part of a bulk operation (batch from nextBatch, or null for none)
+    private void logChange(StatementCache statements, Change.Kind kind, Integer financeId, byte[] before, byte[] after, Long batch) throws SQLException {
+        var stmt = statements.prepare("INSERT INTO changes (at, kind, finance_id, before, after, batch) VALUES (?,?,?,?,?,?);");
+        stmt.setLong(1, System.currentTimeMillis());
+        stmt.setString(2, kind.name());
+        if (financeId == null) stmt.setNull(3, java.sql.Types.INTEGER);
+        else stmt.setInt(3, financeId);
+        stmt.setBytes(4, before);
+        stmt.setBytes(5, after);
+        if (batch == null) stmt.setNull(6, java.sql.Types.INTEGER);
+        else stmt.setLong(6, batch);
+        stmt.executeUpdate();
+    }
+
+    // A new batch id for the changes of one bulk operation, bumped in the operation's own write, so no two
+    // committed operations share one (even when one of them logged no changes)
+    private long nextBatch(StatementCache statements) throws SQLException {
+        try (var rs = statements.prepare("INSERT INTO counters (name, value) VALUES ('batch', 1) "
+                + "ON CONFLICT (name) DO UPDATE SET value = value + 1 RETURNING value;").executeQuery()) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    /**
+     * Queues deleting the changes up to and including seq (those from before this session, which can't
+     * be undone), so the log doesn't keep two copies of every record ever edited. Doesn't wait.
+     */
+    public CompletableFuture<Integer> pruneChanges(long seq) {
+        return write("pruneChanges", "DELETE", statements -> {
+            var stmt = statements.prepare("DELETE FROM changes WHERE seq <= ?;");
+            stmt.setLong(1, seq);
+            int rows = stmt.executeUpdate();
+            rowsWritten(rows);
+            return rows;
+        });
+    }
+
+    /**
+     * Retrieves up to limit changes with a sequence number above afterSeq, oldest first.
+     * Pass the last seq seen to catch up from there.
+     */
+    public List<Change> getChanges(long afterSeq, int limit) throws IOException {
+        String getChangesSQL = "SELECT seq, at, kind, finance_id, before, after, batch FROM changes WHERE seq > ? ORDER BY seq LIMIT ?;";
+        List<Change> changes = read("getChanges", "SELECT", statements -> {
+            var stmt = statements.prepare(getChangesSQL);
+            stmt.setLong(1, afterSeq);
+            stmt.setInt(2, limit);
+            List<Change> out = new ArrayList<>();
+            try (var rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Change.Kind kind = Change.Kind.valueOf(rs.getString(3));
+                    int financeId = rs.getInt(4);
+                    Integer id = rs.wasNull() ? null : financeId;
+                    long batchId = rs.getLong(7);
+                    Long batch = rs.wasNull() ? null : batchId;
+                    try {
+                        if (kind == Change.Kind.USER) {
+                            out.add(new Change(rs.getLong(1), rs.getLong(2), kind, id, null, null,
+                                    FinanceCodec.decodeUser(rs.getBytes(6)), batch));
+                        } else {
+                            out.add(new Change(rs.getLong(1), rs.getLong(2), kind, id,
+                                    FinanceCodec.decode(rs.getBytes(5)), FinanceCodec.decode(rs.getBytes(6)), null, batch));
+                        }
+                    } catch (IOException e) {
+                        throw new SQLException("Unreadable change " + rs.getLong(1), e);
+                    }
+                }
+            }
+            rowsRead("getChanges", out.size());
+            return out;
+        });
+        return changes;
+    }
+
+    /**
+     * Sequence number of the newest change, or 0 if nothing has changed yet
+     */
+    public long lastChangeSeq() throws IOException {
+        Long seq = read("lastChangeSeq", "SELECT", statements -> {
+            try (var rs = statements.prepare("SELECT COALESCE(MAX(seq), 0) FROM changes;").executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0L;
+            }
+        });
+        return seq;
+    }
+
+    /**
+     * Retrieves every account, in the order they were added
+     */
+    public List<Account> getAccounts() throws IOException {
+        String getAccountsSQL = "SELECT id, name, card FROM accounts ORDER BY id;";
+        List<Account> accounts = read("getAccounts", "SELECT", statements -> {
+            List<Account> out = new ArrayList<>();
+            try (var rs = statements.prepare(getAccountsSQL).executeQuery()) {
+                while (rs.next()) out.add(new Account(rs.getInt(1), rs.getString(2), rs.getString(3)));
+            }
+            rowsRead("getAccounts", out.size());
+            return out;
+        });
+        return accounts;
+    }
+
+    /**
+     * Saves a new account, waiting for the write to commit; returns its id
+     */
+    public int addAccount(String name, String card) throws IOException {
+        String addAccountSQL = "INSERT INTO accounts (name, card) VALUES (?,?) RETURNING id;";
+        return await(write("addAccount", "INSERT", statements -> {
+            var stmt = statements.prepare(addAccountSQL);
+            stmt.setString(1, name);
+            stmt.setString(2, card);
+            try (var rs = stmt.executeQuery()) {
+                rowsWritten(1);
+                return rs.next() ? rs.getInt(1) : -1;
+            }
+        }));
+    }
+
+    /**
+     * Renames an account and replaces its card label, waiting for the write to commit
+     */
+    public void updateAccount(Account account) throws IOException {
+        String updateAccountSQL = "UPDATE accounts SET name = ?, card = ? WHERE id = ?;";
+        await(write("updateAccount", "UPDATE", statements -> {
+            var stmt = statements.prepare(updateAccountSQL);
+            stmt.setString(1, account.name());
+            stmt.setString(2, account.card());
+            stmt.setInt(3, account.id());
+            int rows = stmt.executeUpdate();
+            rowsWritten(rows);
+            return rows;
+        }));
+    }
+
+    /**
+     * Retrieves every categorization rule, in the order they were added
+     */
+    public List<CategoryRules.Rule> getRules() throws IOException {
+        String getRulesSQL = "SELECT id, keyword, type, tags FROM category_rules ORDER BY id;";
+        List<CategoryRules.Rule> rules = read("getRules", "SELECT", statements -> {
+            List<CategoryRules.Rule> out = new ArrayList<>();
+            try (var rs = statements.prepare(getRulesSQL).executeQuery()) {
+                while (rs.next()) {
+                    String type = rs.getString(3);
+                    List<String> tags = rs.getString(4).isEmpty() ? List.of() : List.of(rs.getString(4).split(","));
+                    out.add(new CategoryRules.Rule(rs.getInt(1), rs.getString(2),
+                            type == null ? null : Finance.Type.valueOf(type.toUpperCase()), tags));
+                }
+            }
+            rowsRead("getRules", out.size());
+            return out;
+        });
+        return rules;
+    }
+
+    /**
+     * Saves a categorization rule, waiting for the write to commit; returns its id
+     */
+    public int addRule(String keyword, Finance.Type type, List<String> tags) throws IOException {
+        String addRuleSQL = "INSERT INTO category_rules (keyword, type, tags) VALUES (?,?,?) RETURNING id;";
+        return await(write("addRule", "INSERT", statements -> {
+            var stmt = statements.prepare(addRuleSQL);
+            stmt.setString(1, keyword);
+            stmt.setString(2, type == null ? null : type.value);
+            stmt.setString(3, String.join(",", tags));
+            try (var rs = stmt.executeQuery()) {
+                rowsWritten(1);
+                return rs.next() ? rs.getInt(1) : -1;
+            }
+        }));
+    }
+
+    /**
+     * Deletes a categorization rule, waiting for the write to commit
+     */
+    public void deleteRule(int id) throws IOException {
+        String deleteRuleSQL = "DELETE FROM category_rules WHERE id = ?;";
+        await(write("deleteRule", "DELETE", statements -> {
+            var stmt = statements.prepare(deleteRuleSQL);
+            stmt.setInt(1, id);
+            int rows = stmt.executeUpdate();
+            rowsWritten(rows);
+            return rows;
+        }));
+    }
+
+    /**
+     * Retrieves the monthly limit of every type that has a budget
+     */
+    public Map<Finance.Type, Double> getBudgets() throws IOException {
+        String getBudgetsSQL = "SELECT type, monthly_limit FROM budgets;";
+        Map<Finance.Type, Double> budgets = read("getBudgets", "SELECT", statements -> {
+            Map<Finance.Type, Double> out = new EnumMap<>(Finance.Type.class);
+            try (var rs = statements.prepare(getBudgetsSQL).executeQuery()) {
+                while (rs.next()) out.put(Finance.Type.valueOf(rs.getString(1).toUpperCase()), rs.getDouble(2));
+            }
+            rowsRead("getBudgets", out.size());
+            return out;
+        });
+        return budgets;
+    }
+
+    /**
+     * Sets a type's monthly limit, or removes its budget when the limit is 0 or less; waits for the write to commit
+     */
+    public void setBudget(Finance.Type type, double limit) throws IOException {
+        String setBudgetSQL = "INSERT OR REPLACE INTO budgets (type, monthly_limit) VALUES (?,?);";
+        String deleteBudgetSQL = "DELETE FROM budgets WHERE type = ?;";
+        await(write("setBudget", limit > 0 ? "INSERT" : "DELETE", statements -> {
+            var stmt = statements.prepare(limit > 0 ? setBudgetSQL : deleteBudgetSQL);
+            stmt.setString(1, type.value);
+            if (limit > 0) stmt.setDouble(2, limit);
+            int rows = stmt.executeUpdate();
+            rowsWritten(rows);
+            return rows;
+        }));
+    }
+
+    /**
+     * Retrieves every stored recurring-transaction bucket
+     */
+    public List<RecurringDetector.Series> getRecurringSeries() throws IOException {
+        String getRecurringSQL = """
+                SELECT merchant, direction, band, name, count, amount_sum, days, last_id, cadence, next_day
+                FROM recurring_series;""";
+        List<RecurringDetector.Series> series = read("getRecurringSeries", "SELECT", statements -> {
+            List<RecurringDetector.Series> out = new ArrayList<>();
+            try (var rs = statements.prepare(getRecurringSQL).executeQuery()) {
+                while (rs.next()) {
+                    String days = rs.getString(7);
+                    String cadence = rs.getString(9);
+                    out.add(new RecurringDetector.Series(
+                            new RecurringDetector.Key(rs.getString(1), rs.getBoolean(2), rs.getInt(3)),
+                            rs.getString(4), rs.getInt(5), rs.getDouble(6),
+                            days.isEmpty() ? new long[0] : Arrays.stream(days.split(",")).mapToLong(Long::parseLong).toArray(),
+                            rs.getInt(8), cadence == null ? null : RecurringDetector.Cadence.valueOf(cadence), rs.getLong(10)));
+                }
+            }
+            rowsRead("getRecurringSeries", out.size());
+            return out;
+        });
+        return series;
+    }
+
+    /**
+     * Queues storing a recurring-transaction bucket, replacing its previous state
+     */
+    public CompletableFuture<Integer> saveRecurringSeriesAsync(RecurringDetector.Series series) {
+        String saveRecurringSQL = """
+                INSERT OR REPLACE INTO recurring_series
+                (merchant, direction, band, name, count, amount_sum, days, last_id, cadence, next_day)
+                VALUES (?,?,?,?,?,?,?,?,?,?);""";
+        return write("saveRecurringSeries", "INSERT", statements -> {
+            var stmt = statements.prepare(saveRecurringSQL);
+            stmt.setString(1, series.key().merchant());
+            stmt.setBoolean(2, series.key().direction());
+            stmt.setInt(3, series.key().band());
+            stmt.setString(4, series.name());
+            stmt.setInt(5, series.count());
+            stmt.setDouble(6, series.amountSum());
+            StringJoiner days = new StringJoiner(",");
+            for (long day : series.days()) days.add(Long.toString(day));
+            stmt.setString(7, days.toString());
+            stmt.setInt(8, series.lastId());
+            stmt.setString(9, series.cadence() == null ? null : series.cadence().name());
+            stmt.setLong(10, series.nextDay());
+            int rows = stmt.executeUpdate();
+            rowsWritten(rows);
+            return rows;
+        });
+    }
+
+    /**
+     * Queues deleting a recurring-transaction bucket
+     */
+    public CompletableFuture<Integer> deleteRecurringSeriesAsync(RecurringDetector.Key key) {
+        String deleteRecurringSQL = "DELETE FROM recurring_series WHERE merchant = ? AND direction = ? AND band = ?;";
+        return write("deleteRecurringSeries", "DELETE", statements -> {
+            var stmt = statements.prepare(deleteRecurringSQL);
+            stmt.setString(1, key.merchant());
+            stmt.setBoolean(2, key.direction());
+            stmt.setInt(3, key.band());
+            int rows = stmt.executeUpdate();
+            rowsWritten(rows);
+            return rows;
+        });
+    }
+
+    /**
+     * Retrieves every stored anomaly statistics key
+     */
+    public List<AnomalyDetector.Stats> getAnomalyStats() throws IOException {
+        String getStatsSQL = "SELECT key, count, mean, m2, ewma_mean, ewma_var, last_id FROM anomaly_stats;";
+        List<AnomalyDetector.Stats> stats = read("getAnomalyStats", "SELECT", statements -> {
+            List<AnomalyDetector.Stats> out = new ArrayList<>();
+            try (var rs = statements.prepare(getStatsSQL).executeQuery()) {
+                while (rs.next()) {
+                    out.add(new AnomalyDetector.Stats(rs.getString(1), rs.getInt(2), rs.getDouble(3), rs.getDouble(4),
+                            rs.getDouble(5), rs.getDouble(6), rs.getInt(7)));
+                }
+            }
+            rowsRead("getAnomalyStats", out.size());
+            return out;
+        });
+        return stats;
+    }
+
+    /**
+     * Queues storing one key's anomaly statistics, replacing its previous state
+     */
+    public CompletableFuture<Integer> saveAnomalyStatsAsync(AnomalyDetector.Stats s) {
+        String saveStatsSQL = """
+                INSERT OR REPLACE INTO anomaly_stats (key, count, mean, m2, ewma_mean, ewma_var, last_id)
+                VALUES (?,?,?,?,?,?,?);""";
+        return write("saveAnomalyStats", "INSERT", statements -> {
+            var stmt = statements.prepare(saveStatsSQL);
+            stmt.setString(1, s.key());
+            stmt.setInt(2, s.count());
+            stmt.setDouble(3, s.mean());
+            stmt.setDouble(4, s.m2());
+            stmt.setDouble(5, s.ewmaMean());
+            stmt.setDouble(6, s.ewmaVar());
+            stmt.setInt(7, s.lastId());
+            int rows = stmt.executeUpdate();
+            rowsWritten(rows);
+            return rows;
+        });
+    }
+
+    /**
+     * Queues deleting one key's anomaly statistics
+     */
+    public CompletableFuture<Integer> deleteAnomalyStatsAsync(String key) {
+        return write("deleteAnomalyStats", "DELETE", statements -> {
+            var stmt = statements.prepare("DELETE FROM anomaly_stats WHERE key = ?;");
+            stmt.setString(1, key);
+            int rows = stmt.executeUpdate();
+            rowsWritten(rows);
+            return rows;
+        });
+    }
+
+    /**
+     * Retrieves every flagged record's flag
+     */
+    public List<AnomalyDetector.Flag> getAnomalyFlags() throws IOException {
+        String getFlagsSQL = "SELECT finance_id, score, reason FROM anomaly_flags;";
+        List<AnomalyDetector.Flag> flags = read("getAnomalyFlags", "SELECT", statements -> {
+            List<AnomalyDetector.Flag> out = new ArrayList<>();
+            try (var rs = statements.prepare(getFlagsSQL).executeQuery()) {
+                while (rs.next()) out.add(new AnomalyDetector.Flag(rs.getInt(1), rs.getDouble(2), rs.getString(3)));
+            }
+            rowsRead("getAnomalyFlags", out.size());
+            return out;
+        });
+        return flags;
+    }
+
+    /**
+     * Queues storing a record's anomaly flag
+     */
+    public CompletableFuture<Integer> saveAnomalyFlagAsync(AnomalyDetector.Flag flag) {
+        String saveFlagSQL = "INSERT OR REPLACE INTO anomaly_flags (finance_id, score, reason) VALUES (?,?,?);";
+        return write("saveAnomalyFlag", "INSERT", statements -> {
+            var stmt = statements.prepare(saveFlagSQL);
+            stmt.setInt(1, flag.financeId());
+            stmt.setDouble(2, flag.score());
+            stmt.setString(3, flag.reason());
+            int rows = stmt.executeUpdate();
+            rowsWritten(rows);
+            return rows;
+        });
+    }
+
+    /**
+     * Queues deleting a record's anomaly flag
+     */
+    public CompletableFuture<Integer> deleteAnomalyFlagAsync(int financeId) {
+        return write("deleteAnomalyFlag", "DELETE", statements -> {
+            var stmt = statements.prepare("DELETE FROM anomaly_flags WHERE finance_id = ?;");
+            stmt.setInt(1, financeId);
+            int rows = stmt.executeUpdate();
+            rowsWritten(rows);
+            return rows;
+        });
+    }
+
+    /**
+     * Retrieves every archived year and its segment file
+     */
+    public List<Archive.Segment> getArchiveSegments() throws IOException {
+        String getSegmentsSQL = "SELECT year, segment, records FROM archived_years ORDER BY year;";
+        List<Archive.Segment> segments = read("getArchiveSegments", "SELECT", statements -> {
+            List<Archive.Segment> out = new ArrayList<>();
+            try (var rs = statements.prepare(getSegmentsSQL).executeQuery()) {
+                while (rs.next()) out.add(new Archive.Segment(rs.getInt(1), rs.getString(2), rs.getInt(3)));
+            }
+            rowsRead("getArchiveSegments", out.size());
+            return out;
+        });
+        return segments;
+    }
+
+    /**
+     * Retrieves the monthly summaries of every archived year
+     */
+    public List<Archive.Summary> getArchiveSummaries() throws IOException {
+        String getSummariesSQL = """
+                SELECT year, month, account_id, type, direction, credits, debits, count FROM archive_summaries;""";
+        List<Archive.Summary> summaries = read("getArchiveSummaries", "SELECT", statements -> {
+            List<Archive.Summary> out = new ArrayList<>();
+            try (var rs = statements.prepare(getSummariesSQL).executeQuery()) {
+                while (rs.next()) {
+                    out.add(new Archive.Summary(rs.getInt(1), rs.getInt(2), rs.getInt(3),
+                            Finance.Type.valueOf(rs.getString(4).toUpperCase()), rs.getBoolean(5),
+                            rs.getDouble(6), rs.getDouble(7), rs.getLong(8)));
+                }
+            }
+            rowsRead("getArchiveSummaries", out.size());
+            return out;
+        });
+        return summaries;
+    }
+
+    /**
+     * Switches a year to a newly written segment and its summaries, and deletes the records it took from
+     * the finances table, all in one write (waiting for it to commit)
+     */
+    public void commitArchive(Archive.Segment segment, List<Archive.Summary> summaries, List<Finance> moved) throws IOException {
+        String clearSummariesSQL = "DELETE FROM archive_summaries WHERE year = ?;";
+        String addSummarySQL = """
+                INSERT INTO archive_summaries (year, month, account_id, type, direction, credits, debits, count)
+                VALUES (?,?,?,?,?,?,?,?);""";
+        String setSegmentSQL = "INSERT OR REPLACE INTO archived_years (year, segment, records) VALUES (?,?,?);";
         String deleteFinanceSQL = "DELETE FROM finances WHERE id = ?;";
-        try (var conn = DriverManager.getConnection(DB);
-             var stmt = conn.prepareStatement(deleteFinanceSQL)) {
+        String deleteTagsSQL = "DELETE FROM finance_tags WHERE finance_id = ?;";
+        String deleteSplitsSQL = "DELETE FROM finance_splits WHERE finance_id = ?;";
+        await(write("commitArchive", "DELETE", statements -> {
+            var clear = statements.prepare(clearSummariesSQL);
+            clear.setInt(1, segment.year());
+            int rows = clear.executeUpdate();
+            var add = statements.prepare(addSummarySQL);
+            for (Archive.Summary s : summaries) {
+                add.setInt(1, s.year());
+                add.setInt(2, s.month());
+                add.setInt(3, s.account());
+                add.setString(4, s.type().value);
+                add.setBoolean(5, s.direction());
+                add.setDouble(6, s.credits());
+                add.setDouble(7, s.debits());
+                add.setLong(8, s.count());
+                rows += add.executeUpdate();
+            }
+            var set = statements.prepare(setSegmentSQL);
+            set.setInt(1, segment.year());
+            set.setString(2, segment.file());
+            set.setInt(3, segment.records());
+            rows += set.executeUpdate();
+            // By id rather than by date, so a record written to that year since it was read stays put
+            for (String sql : List.of(deleteFinanceSQL, deleteTagsSQL, deleteSplitsSQL)) {
+                var stmt = statements.prepare(sql);
+                for (Finance f : moved) {
+                    stmt.setInt(1, f.id);
+                    rows += stmt.executeUpdate();
+                }
+            }
+            rowsWritten(rows);
+            return rows;
+        }));
+    }
+
+    // Inserts tags for a record (on the writer thread), skipping duplicates; returns the rows added
+    private int insertTags(StatementCache statements, int id, List<String> tags) throws SQLException {
+        var stmt = statements.prepare("INSERT OR IGNORE INTO finance_tags (finance_id, tag) VALUES (?,?);");
+        int rows = 0;
+        for (String tag : tags) {
             stmt.setInt(1, id);
-            stmt.executeUpdate();
+            stmt.setString(2, tag);
+            rows += stmt.executeUpdate();
+        }
+        return rows;
+    }
+
+    // How long a backup or restore step waits when the other side holds a lock, and how many times
+    private static final int BACKUP_BUSY_SLEEP_MS = 100;
+    private static final int BACKUP_BUSY_RETRIES = 50;
+
+    // Every table the app keeps data in, emptied by reset()
+    private static final List<String> TABLES = List.of("user", "finances", "finance_tags", "finance_splits",
+            "accounts", "category_rules", "recurring_series", "budgets", "anomaly_stats", "anomaly_flags",
+            "archived_years", "archive_summaries", "changes", "counters");
+
+    /**
+     * Deletes everything (the user, every record, account, rule, budget and all derived and archived
+     * data) in one transaction, after any writes already queued, leaving the database as a fresh one
+     * would be. The file stays open and in place, so a crash can only ever find it whole or empty.
+     * Waits for the write to commit.
+     */
+    @Override
+    public void reset() throws IOException {
+        await(write("reset", "DELETE", statements -> {
+            int rows = 0;
+            for (String table : TABLES) rows += statements.prepare("DELETE FROM " + table + ";").executeUpdate();
+            // Ids and change seqs start again from 1
+            statements.prepare("DELETE FROM sqlite_sequence;").executeUpdate();
+            statements.prepare("INSERT INTO accounts (id, name) VALUES (" + DEFAULT_ACCOUNT + ", 'Main card');").executeUpdate();
+            rowsWritten(rows);
+            return rows;
+        }));
+    }
+
+    /**
+     * Copies the live database into a new file with SQLite's online backup API, pagesPerStep pages at a
+     * time on a connection of its own. That connection holds one read transaction for the whole copy,
+     * so with WAL the writer carries on between steps while the copy stays the snapshot the backup began
+     * with (without it, every commit mid-copy would make SQLite start the copy over). Returns the page count.
+     */
+    public int backupTo(Path file, int pagesPerStep, Backups.Progress progress) throws IOException {
+        int[] pages = {0};
+        try (var conn = DriverManager.getConnection(DB)) {
+            conn.setAutoCommit(false);
+            try (var stmt = conn.createStatement()) {
+                stmt.executeQuery("SELECT count(*) FROM sqlite_master;").close(); // Starts the read transaction
+            }
+            int rc = conn.unwrap(SQLiteConnection.class).getDatabase().backup("main", file.toString(),
+                    (remaining, pageCount) -> {
+                        pages[0] = pageCount;
+                        progress.step(remaining, pageCount);
+                    }, BACKUP_BUSY_SLEEP_MS, BACKUP_BUSY_RETRIES, pagesPerStep);
+            conn.rollback();
+            if (rc != SQLiteErrorCode.SQLITE_OK.code) throw new IOException("Backup failed: " + SQLiteErrorCode.getErrorCode(rc));
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            throw new IOException(e.getMessage(), e);
+        }
+        return pages[0];
+    }
+
+    /**
+     * Overwrites the live database with a backup file, page by page through the writer connection, after
+     * any writes already queued and before any queued later; readers see the old or the new data, never
+     * a mix. Tables the backup's version lacked are then created. Waits for the restore to finish.
+     */
+    public void restoreFrom(Path file, int pagesPerStep, Backups.Progress progress) throws IOException {
+        long start = Metrics.metrics.start();
+        await(writer.submitAlone(statements -> {
+            int rc = statements.connection().unwrap(SQLiteConnection.class).getDatabase().restore("main", file.toString(),
+                    progress::step, BACKUP_BUSY_SLEEP_MS, BACKUP_BUSY_RETRIES, pagesPerStep);
+            if (rc != SQLiteErrorCode.SQLITE_OK.code) throw new SQLException("Restore failed: " + SQLiteErrorCode.getErrorCode(rc), null, rc);
+            return rc;
+        }));
+        createTables();
+        Metrics.metrics.stop("db.restore.time", start);
+    }
+
+    /**
+     * Commits any queued writes, stops the writer thread and closes the read connection
+     */
+    @Override
+    public void close() {
+        writer.close();
+        synchronized (readLock) {
+            try {
+                if (reader != null) reader.close();
+            } catch (SQLException e) {
+                System.out.println(e.getMessage());
+            }
+            reader = null;
+        }
+    }
+
+    // Runs a read on the shared read connection, opening it on first use, and records its timing
+    // (in Metrics and as a JFR Sql event). A failure is counted as db.<name>.errors, marked on the event
+    // and thrown as an IOException, so callers never mistake it for an empty result.
+    private <T> T read(String name, String kind, Read<T> read) throws IOException {
+        synchronized (readLock) {
+            long start = Metrics.metrics.start();
+            JfrEvents.Sql event = new JfrEvents.Sql();
+            event.begin();
+            readEvent = event;
+            try {
+                if (reader == null || reader.connection().isClosed()) {
+                    reader = new StatementCache(DriverManager.getConnection(DB));
+                }
+                return read.run(reader);
+            } catch (SQLException e) {
+                Metrics.metrics.count("db." + name + ".errors", 1);
+                event.failed = true;
+                throw new IOException(e.getMessage(), e);
+            } finally {
+                Metrics.metrics.stop("db." + name + ".time", start);
+                event.operation = name;
+                event.kind = kind;
+                event.commit();
+                readEvent = null;
+            }
+        }
+    }
+
+    // Queues a write and records how long it took from submission until its commit (or failure).
+    // The JFR Sql event covers just the statement itself, on the writer thread.
+    private <T> CompletableFuture<T> write(String name, String kind, DatabaseWriter.Write<T> write) {
+        long start = Metrics.metrics.start();
+        DatabaseWriter.Write<T> traced = statements -> {
+            JfrEvents.Sql event = new JfrEvents.Sql();
+            event.begin();
+            writeEvent = event;
+            try {
+                return write.run(statements);
+            } catch (SQLException e) {
+                event.failed = true;
+                throw e;
+            } finally {
+                event.operation = name;
+                event.kind = kind;
+                event.commit();
+                writeEvent = null;
+            }
+        };
+        return writer.submit(traced).whenComplete((result, failure) -> {
+            Metrics.metrics.stop("db." + name + ".time", start);
+            if (failure != null) Metrics.metrics.count("db." + name + ".errors", 1);
+        });
+    }
+
+    // Records how many rows the running read returned (call inside a read)
+    private void rowsRead(String name, long rows) {
+        Metrics.metrics.histogram("db." + name + ".rows").record(rows);
+        if (readEvent != null) readEvent.rows = rows;
+    }
+
+    // Records how many rows the running write changed (call inside a write, on the writer thread)
+    private void rowsWritten(long rows) {
+        Metrics.metrics.count("db.rowsWritten", rows);
+        if (writeEvent != null) writeEvent.rows = rows;
+    }
+
+    // Waits for a queued write and reports its failure as an IOException
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause().getMessage(), e.getCause());
         }
     }
 
@@ -694,9 +2141,11 @@ public class Database {
             f60.date = sdf.parse("2025-06-10");
             financesToAdd.add(f60);
 
-            for (Finance f : financesToAdd) {
-                addFinance(f);
-            }
+            // Route through the ledger so any open views see the new records once they are stored
+            Ledger.ledger.addFinances(financesToAdd).exceptionally(e -> {
+                e.printStackTrace();
+                return null;
+            });
 
             // what is the total value?
             return financesToAdd.stream()
@@ -0,0 +1,238 @@
+package dev.atomtables.financetracker;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DatabaseWriter owns the only connection that writes to the database.
+ * Every mutation is queued here and run on a single thread, which commits whatever is pending
+ * in one transaction (group commit), so writers never fight over SQLite's lock and a burst
+ * of writes costs one fsync instead of one per row.
+ */
+public class DatabaseWriter {
+    /**
+     * A single queued write, run on the writer thread with the writer's cached statements
+     */
+    public interface Write<T> {
+        T run(StatementCache statements) throws SQLException;
+    }
+
+    // A queued write and the future its caller is waiting on; alone writes run outside the group transaction
+    private record Pending<T>(Write<T> write, CompletableFuture<T> result, boolean alone) {
+        void complete(Object value) {
+            @SuppressWarnings("unchecked") T t = (T) value;
+            result.complete(t);
+        }
+    }
+
+    // Upper bound on how many writes share one transaction
+    private static final int MAX_BATCH = 1000;
+    // How long the first write of a batch waits for others to join it
+    private static final long MAX_LINGER_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+
+    // Marker telling the writer thread to finish the queue and stop
+    private static final Pending<Void> STOP = new Pending<>(statements -> null, new CompletableFuture<>(), false);
+
+    private final String url;
+    private final Path wal;    // Write-ahead log file, watched to estimate bytes written
+    private long walSize = 0;  // Size of the WAL after the previous commit
+    private final LinkedBlockingQueue<Pending<?>> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private StatementCache statements; // Only touched by the writer thread
+
+    public DatabaseWriter(String url) {
+        this.url = url;
+        this.wal = Path.of(url.substring(url.lastIndexOf(':') + 1) + "-wal");
+        thread = new Thread(this::run, "database-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues a write. The returned future completes once the transaction containing it has committed,
+     * or exceptionally if this write (or the commit) failed.
+     */
+    public <T> CompletableFuture<T> submit(Write<T> write) {
+        Pending<T> pending = new Pending<>(write, new CompletableFuture<>(), false);
+        queue.add(pending);
+        return pending.result();
+    }
+
+    /**
+     * Queues a write that runs on its own in autocommit mode, after the writes queued before it have
+     * committed and before any queued after it start: for work that can't run inside a transaction,
+     * such as restoring the database from a backup. The future completes once it has run.
+     */
+    public <T> CompletableFuture<T> submitAlone(Write<T> write) {
+        Pending<T> pending = new Pending<>(write, new CompletableFuture<>(), true);
+        queue.add(pending);
+        return pending.result();
+    }
+
+    /**
+     * Commits everything already queued, then stops the writer thread
+     */
+    public void close() {
+        queue.add(STOP);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Writer thread: take the next write, gather whatever else arrives shortly after, commit them together
+    private void run() {
+        List<Pending<?>> batch = new ArrayList<>();
+        boolean stopping = false;
+        while (!stopping) {
+            Pending<?> alone = null; // Ends the batch; runs once it has committed
+            try {
+                Pending<?> first = queue.take();
+                if (first.alone()) alone = first;
+                else batch.add(first);
+                long deadline = System.nanoTime() + MAX_LINGER_NANOS;
+                while (alone == null && batch.size() < MAX_BATCH) {
+                    long wait = deadline - System.nanoTime();
+                    Pending<?> next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) break;
+                    if (next.alone()) alone = next;
+                    else batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                stopping = true;
+            }
+            stopping |= batch.remove(STOP);
+            try {
+                if (!batch.isEmpty()) commit(batch);
+                if (alone != null) runAlone(alone);
+            } catch (Throwable t) {
+                // Never let the thread die: every caller would wait forever on its future
+                Metrics.metrics.count("db.commit.errors", 1);
+                rollbackQuietly();
+                for (Pending<?> pending : batch) pending.result().completeExceptionally(t);
+                if (alone != null) alone.result().completeExceptionally(t);
+            }
+            batch.clear();
+        }
+        try {
+            if (statements != null) statements.close();
+        } catch (SQLException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    // Runs a batch of writes in a single transaction. Each write gets its own savepoint,
+    // so one failing write (SQL error or exception) is rolled back on its own without failing the rest of the batch.
+    private void commit(List<Pending<?>> batch) {
+        long start = Metrics.metrics.start();
+        Metrics.metrics.histogram("db.commit.batch").record(batch.size());
+        JfrEvents.Commit event = new JfrEvents.Commit();
+        event.begin();
+        event.writes = batch.size();
+        Object[] results = new Object[batch.size()];
+        Exception[] failures = new Exception[batch.size()];
+        try {
+            StatementCache statements = statements();
+            Connection conn = statements.connection();
+            for (int i = 0; i < batch.size(); i++) {
+                Savepoint savepoint = conn.setSavepoint();
+                try {
+                    results[i] = batch.get(i).write().run(statements);
+                    conn.releaseSavepoint(savepoint);
+                } catch (SQLException | RuntimeException e) {
+                    // A bug in one write (a null field, say) fails only that write, like a SQL error would
+                    conn.rollback(savepoint);
+                    failures[i] = e;
+                }
+            }
+            conn.commit();
+            Metrics.metrics.stop("db.commit.time", start);
+            event.commit();
+            countBytesWritten();
+        } catch (SQLException e) {
+            // The transaction as a whole failed: nothing in this batch was written
+            Metrics.metrics.count("db.commit.errors", 1);
+            event.failed = true;
+            event.commit();
+            rollbackQuietly();
+            for (Pending<?> pending : batch) pending.result().completeExceptionally(e);
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            if (failures[i] != null) batch.get(i).result().completeExceptionally(failures[i]);
+            else batch.get(i).complete(results[i]);
+        }
+    }
+
+    // Runs a write outside any transaction, then goes back to batching
+    private void runAlone(Pending<?> pending) {
+        long start = Metrics.metrics.start();
+        Object result;
+        try {
+            StatementCache statements = statements();
+            Connection conn = statements.connection();
+            conn.setAutoCommit(true);
+            try {
+                result = pending.write().run(statements);
+            } finally {
+                conn.setAutoCommit(false);
+            }
+        } catch (SQLException | RuntimeException e) {
+            Metrics.metrics.count("db.commit.errors", 1);
+            pending.result().completeExceptionally(e);
+            return;
+        }
+        Metrics.metrics.stop("db.commit.time", start);
+        countBytesWritten();
+        pending.complete(result);
+    }
+
+    // Adds how much the WAL grew during this commit to the bytes-written counter. This is an estimate:
+    // once a checkpoint lets SQLite reuse the WAL from the top, writes that fit in the old size aren't seen.
+    private void countBytesWritten() {
+        try {
+            long size = Files.size(wal);
+            Metrics.metrics.count("db.bytesWritten", size >= walSize ? size - walSize : size);
+            walSize = size;
+        } catch (IOException e) {
+            // No WAL file (e.g. journal mode is not WAL); nothing to measure
+        }
+    }
+
+    // Opens (or reopens after a failure) the writer's connection and its statement cache
+    private StatementCache statements() throws SQLException {
+        if (statements == null || statements.connection().isClosed()) {
+            Connection conn = DriverManager.getConnection(url);
+            try (var stmt = conn.createStatement()) {
+                stmt.execute("PRAGMA busy_timeout = 5000;");
+            }
+            conn.setAutoCommit(false);
+            statements = new StatementCache(conn);
+        }
+        return statements;
+    }
+
+    private void rollbackQuietly() {
+        try {
+            if (statements != null) statements.connection().rollback();
+        } catch (SQLException e) {
+            // The connection is unusable; drop it so the next batch reopens it
+            try {
+                statements.close();
+            } catch (SQLException ignored) {
+            }
+            statements = null;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package dev.atomtables.financetracker;
+
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.TextArea;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import javafx.scene.text.Font;
+import javafx.util.Duration;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Hidden overlay (toggled with Ctrl+Shift+D) that shows the live Metrics report
+ * and can dump it to a file to attach to a slowness report.
+ */
+public final class DiagnosticsOverlay extends VBox {
+    private final TextArea report = new TextArea();
+
+    // Refreshes the report once a second while the overlay is showing
+    private final Timeline refresh = new Timeline(new KeyFrame(Duration.seconds(1), e -> update()));
+
+    public DiagnosticsOverlay() {
+        setSpacing(10);
+        setPadding(new Insets(20));
+        setMaxSize(1100, 600);
+        setStyle("-fx-background-color: #001220ee; -fx-background-radius: 20px;");
+
+        Label title = new Label("Diagnostics");
+        title.setStyle("-fx-text-fill: white;");
+        title.setFont(new Font("System Bold", 28));
+
+        report.setEditable(false);
+        report.setFont(Font.font("Monospaced", 14));
+        report.setPrefHeight(460);
+
+        Button dump = new Button("Dump to file");
+        dump.setOnAction(e -> dump());
+        Button close = new Button("Close");
+        close.setOnAction(e -> hide());
+        HBox buttons = new HBox(10, dump, close);
+        buttons.setAlignment(Pos.CENTER_RIGHT);
+
+        getChildren().addAll(title, report, buttons);
+        refresh.setCycleCount(Timeline.INDEFINITE);
+    }
+
+    /**
+     * Shows the overlay on top of the current view
+     */
+    public void show() {
+        if (!App.parent.getChildren().contains(this)) App.parent.getChildren().add(this);
+        toFront();
+        update();
+        refresh.play();
+    }
+
+    /**
+     * Removes the overlay
+     */
+    public void hide() {
+        refresh.stop();
+        App.parent.getChildren().remove(this);
+    }
+
+    /**
+     * Shows or hides the overlay
+     */
+    public void toggle() {
+        if (App.parent.getChildren().contains(this)) hide();
+        else show();
+    }
+
+    private void update() {
+        report.setText(Metrics.metrics.report());
+    }
+
+    private void dump() {
+        Alert a;
+        try {
+            Path file = Metrics.metrics.dump();
+            a = new Alert(Alert.AlertType.INFORMATION);
+            a.setContentText("Diagnostics written to " + file.toAbsolutePath());
+        } catch (IOException e) {
+            a = new Alert(Alert.AlertType.ERROR);
+            a.setContentText("Could not write diagnostics: " + e.getMessage());
+        }
+        a.setTitle("Diagnostics");
+        a.setHeaderText("Dump");
+        a.show();
+    }
+}
@@ -0,0 +1,120 @@
+package dev.atomtables.financetracker;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * FinanceCodec is the compact binary form of finance records and the user, shared by archive segments,
+ * the ledger log and the change log. Changing it means bumping the VERSION of each of those.
+ */
+public class FinanceCodec {
+    private FinanceCodec() {}
+
+    public static void write(DataOutput out, Database.Finance f) throws IOException {
+        out.writeInt(f.id);
+        out.writeUTF(f.name);
+        out.writeBoolean(f.direction);
+        out.writeDouble(f.amount);
+        out.writeUTF(f.type.value);
+        out.writeLong(f.date.getTime());
+        out.writeInt(f.accountId);
+        out.writeInt(f.tags.size());
+        for (String tag : f.tags) out.writeUTF(tag);
+        out.writeInt(f.splits.size());
+        for (Database.Finance.Split split : f.splits) {
+            out.writeUTF(split.type().value);
+            out.writeDouble(split.amount());
+        }
+    }
+
+    public static Database.Finance read(DataInput in) throws IOException {
+        Database.Finance f = new Database.Finance();
+        f.id = in.readInt();
+        f.name = in.readUTF();
+        f.direction = in.readBoolean();
+        f.amount = in.readDouble();
+        f.type = Database.Finance.Type.valueOf(in.readUTF());
+        f.date = new Date(in.readLong());
+        f.accountId = in.readInt();
+        int tags = in.readInt();
+        if (tags > 0) {
+            List<String> list = new ArrayList<>(tags);
+            for (int i = 0; i < tags; i++) list.add(in.readUTF());
+            f.tags = List.copyOf(list);
+        }
+        int splits = in.readInt();
+        if (splits > 0) {
+            List<Database.Finance.Split> list = new ArrayList<>(splits);
+            for (int i = 0; i < splits; i++) {
+                list.add(new Database.Finance.Split(Database.Finance.Type.valueOf(in.readUTF()), in.readDouble()));
+            }
+            f.splits = List.copyOf(list);
+        }
+        return f;
+    }
+
+    public static void writeUser(DataOutput out, Database.User user) throws IOException {
+        out.writeUTF(user.firstName);
+        out.writeUTF(user.lastName);
+        out.writeUTF(user.email);
+        // Date of birth and occupation are optional
+        out.writeUTF(user.dateOfBirth == null ? "" : user.dateOfBirth);
+        out.writeUTF(user.occupation == null ? "" : user.occupation);
+        out.writeDouble(user.balance);
+    }
+
+    public static Database.User readUser(DataInput in) throws IOException {
+        return new Database.User(in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF(), in.readDouble());
+    }
+
+    /**
+     * A record as bytes (null for null)
+     */
+    public static byte[] encode(Database.Finance f) {
+        if (f == null) return null;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            write(new DataOutputStream(bytes), f);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Writing to memory can't fail
+        }
+    }
+
+    /**
+     * A record from bytes made by encode (null for null)
+     */
+    public static Database.Finance decode(byte[] bytes) throws IOException {
+        return bytes == null ? null : read(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    /**
+     * The user as bytes (null for null)
+     */
+    public static byte[] encodeUser(Database.User user) {
+        if (user == null) return null;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            writeUser(new DataOutputStream(bytes), user);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The user from bytes made by encodeUser (null for null)
+     */
+    public static Database.User decodeUser(byte[] bytes) throws IOException {
+        return bytes == null ? null : readUser(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+}
@@ -0,0 +1,133 @@
+package dev.atomtables.financetracker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * FinanceFilter is an immutable combination of facets over finance records: a date range, an amount
+ * range, a set of types, a direction, text in the name and an account. Any facet left null matches everything.
+ * The same filter runs in memory as a Predicate (for the live ledger view) or in SQL through where().
+ */
+public record FinanceFilter(Long from, Long to, Double minAmount, Double maxAmount,
+                            Set<Database.Finance.Type> types, Boolean direction, String text, Integer account)
+        implements Predicate<Database.Finance> {
+    // Matches every record
+    public static final FinanceFilter NONE = new FinanceFilter(null, null, null, null, null, null, null, null);
+
+    public FinanceFilter {
+        // Normalize "no restriction" to null so those facets cost nothing to test
+        if (types != null) types = types.isEmpty() || types.size() == Database.Finance.Type.values().length
+                ? null : Collections.unmodifiableSet(EnumSet.copyOf(types));
+        if (text != null) text = text.isBlank() ? null : text.strip().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Records with from <= date < to (epoch millis); either bound may be null
+     */
+    public FinanceFilter withDates(Long from, Long to) {
+        return new FinanceFilter(from, to, minAmount, maxAmount, types, direction, text, account);
+    }
+
+    /**
+     * Records with min <= amount <= max; either bound may be null
+     */
+    public FinanceFilter withAmounts(Double min, Double max) {
+        return new FinanceFilter(from, to, min, max, types, direction, text, account);
+    }
+
+    /**
+     * Records of any of these types; null or every type means no restriction
+     */
+    public FinanceFilter withTypes(Set<Database.Finance.Type> types) {
+        return new FinanceFilter(from, to, minAmount, maxAmount, types, direction, text, account);
+    }
+
+    /**
+     * Only income (true), only spending (false), or both (null)
+     */
+    public FinanceFilter withDirection(Boolean direction) {
+        return new FinanceFilter(from, to, minAmount, maxAmount, types, direction, text, account);
+    }
+
+    /**
+     * Records whose name contains this text, ignoring case; blank means no restriction
+     */
+    public FinanceFilter withText(String text) {
+        return new FinanceFilter(from, to, minAmount, maxAmount, types, direction, text, account);
+    }
+
+    /**
+     * Records of one account; null means every account
+     */
+    public FinanceFilter withAccount(Integer account) {
+        return new FinanceFilter(from, to, minAmount, maxAmount, types, direction, text, account);
+    }
+
+    /**
+     * True if no facet is set
+     */
+    public boolean isEmpty() {
+        return equals(NONE);
+    }
+
+    /**
+     * Tests one record. Facets are checked cheapest first, so the name is only searched
+     * for records that already passed every other facet.
+     */
+    @Override
+    public boolean test(Database.Finance f) {
+        if (account != null && f.accountId != account) return false;
+        if (types != null && !types.contains(f.type)) return false;
+        if (direction != null && !direction.equals(f.direction)) return false;
+        if (minAmount != null && f.amount < minAmount) return false;
+        if (maxAmount != null && f.amount > maxAmount) return false;
+        long date = f.date.getTime();
+        if (from != null && date < from) return false;
+        if (to != null && date >= to) return false;
+        return text == null || (f.name != null && f.name.toLowerCase(Locale.ROOT).contains(text));
+    }
+
+    /**
+     * Compiles the filter to a SQL condition over the finances table, appending its parameters
+     * in order. Returns "1" when nothing is set.
+     */
+    public String where(List<Object> params) {
+        List<String> clauses = new ArrayList<>();
+        // The account goes first so it lines up with the (account_id, date) index
+        if (account != null) { clauses.add("account_id = ?"); params.add(account); }
+        if (from != null) { clauses.add("date >= ?"); params.add(from); }
+        if (to != null) { clauses.add("date < ?"); params.add(to); }
+        if (minAmount != null) { clauses.add("amount >= ?"); params.add(minAmount); }
+        if (maxAmount != null) { clauses.add("amount <= ?"); params.add(maxAmount); }
+        if (types != null) {
+            clauses.add("type IN (" + String.join(",", Collections.nCopies(types.size(), "?")) + ")");
+            for (Database.Finance.Type type : types) params.add(type.value);
+        }
+        if (direction != null) { clauses.add("direction = ?"); params.add(direction); }
+        if (text != null) {
+            // instr() rather than LIKE, so % and _ in the search text are taken literally
+            clauses.add("instr(lower(name), ?) > 0");
+            params.add(text);
+        }
+        return clauses.isEmpty() ? "1" : String.join(" AND ", clauses);
+    }
+
+    /**
+     * Short human-readable summary, e.g. for the log view's status label
+     */
+    public String describe() {
+        if (isEmpty()) return "all logs";
+        List<String> parts = new ArrayList<>();
+        if (direction != null) parts.add(direction ? "income" : "spending");
+        if (types != null) parts.add(types.toString().toLowerCase(Locale.ROOT));
+        if (from != null || to != null) parts.add("in a date range");
+        if (minAmount != null || maxAmount != null) parts.add("in an amount range");
+        if (text != null) parts.add("matching \"" + text + "\"");
+        return String.join(", ", parts);
+    }
+}
@@ -0,0 +1,196 @@
+package dev.atomtables.financetracker;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/**
+ * Forecast projects the balance forward with a Monte Carlo simulation. Detected recurring series are
+ * laid out as a fixed schedule; everything else is modelled per type (plus one bucket for other income)
+ * as "does this type see money today, and how much", fitted to the last HISTORY_DAYS days.
+ * Paths run in parallel, each chunk with its own SplittableRandom split from one fixed seed, so the
+ * same assumptions always give the same bands and nudging an assumption moves them smoothly.
+ */
+public class Forecast {
+    // How far back the per-type behaviour is fitted
+    public static final int HISTORY_DAYS = 90;
+    // Days between recorded points on each path
+    public static final int STEP_DAYS = 7;
+    // Percentiles reported for every recorded point
+    public static final double[] PERCENTILES = {0.10, 0.25, 0.50, 0.75, 0.90};
+
+    private static final long SEED = 0x5eed_f00dL;
+    private static final int CHUNKS = 64; // Units of parallel work (each with its own random stream)
+
+    /**
+     * Fitted behaviour of one type of non-recurring money: the chance that a day has any, and the
+     * log-normal distribution of that day's total (signed by the sign field)
+     */
+    public record Source(String label, double dailyChance, double logMean, double logSd, int sign) {}
+
+    /**
+     * Everything the simulation needs: the starting balance, the recurring schedule as fixed income and
+     * spending per future day (index 0 = tomorrow), and the stochastic sources
+     */
+    public record Model(double startBalance, double[] recurringIncome, double[] recurringSpending, List<Source> sources) {}
+
+    /**
+     * What-if knobs: multipliers on every income and every spending amount
+     */
+    public record Assumptions(double incomeFactor, double spendingFactor) {
+        public static final Assumptions NONE = new Assumptions(1, 1);
+    }
+
+    /**
+     * Balance percentiles at days (from today) 0, STEP_DAYS, 2 * STEP_DAYS, ...:
+     * bands[p][i] is PERCENTILES[p] at point i
+     */
+    public record Result(int[] days, double[][] bands, int paths, long nanos) {
+        /**
+         * Value of the given percentile index at the recorded point nearest to a day
+         */
+        public double at(int percentile, int day) {
+            int i = Math.min(days.length - 1, Math.round(day / (float) STEP_DAYS));
+            return bands[percentile][i];
+        }
+    }
+
+    private Forecast() {}
+
+    /**
+     * What a model is fitted from: the user's balance, the detected recurring series, the ledger's records
+     * and which of them are recurring, as they were when it was taken
+     */
+    public record History(double balance, List<RecurringDetector.Series> series, List<Database.Finance> finances,
+                          Predicate<Database.Finance> recurring) {}
+
+    /**
+     * Takes what a model needs from the ledger and the recurring detector (copying references only), so the
+     * fitting can run on another thread. Use from the FX thread.
+     */
+    public static History history() throws IOException {
+        Database.User user = Ledger.ledger.getUser();
+        return new History(user == null ? 0 : user.balance, RecurringDetector.recurring.detected(),
+                List.copyOf(Ledger.ledger.getFinances()), RecurringDetector.recurring.recurringSnapshot());
+    }
+
+    /**
+     * Fits a model from a history (see history()): the recurring series as a fixed schedule, the rest per
+     * type. Safe from any thread.
+     */
+    public static Model model(History history, int horizonDays) {
+        long start = Metrics.metrics.start();
+        long today = LocalDate.now().toEpochDay();
+
+        // Recurring series become a fixed schedule: each amount on every day its cadence lands in the horizon
+        double[] income = new double[horizonDays];
+        double[] spending = new double[horizonDays];
+        for (RecurringDetector.Series series : history.series()) {
+            double amount = series.averageAmount();
+            for (long day = series.nextDay(); day <= today + horizonDays; day = series.cadence().next(day)) {
+                int i = (int) (day - today - 1);
+                if (i < 0) continue; // Overdue occurrences are assumed missed
+                if (amount >= 0) income[i] += amount;
+                else spending[i] += amount;
+            }
+        }
+
+        // Daily totals of non-recurring money over the history window, per type (spending) and for income
+        long from = today - HISTORY_DAYS;
+        Map<Database.Finance.Type, Map<Long, Double>> spentByType = new EnumMap<>(Database.Finance.Type.class);
+        Map<Long, Double> earned = new HashMap<>();
+        for (Database.Finance f : history.finances()) {
+            long day = DailyTotals.epochDay(f.date);
+            if (day <= from || day > today || history.recurring().test(f)) continue;
+            if (f.amount >= 0) earned.merge(day, f.amount, Double::sum);
+            else spentByType.computeIfAbsent(f.type, t -> new HashMap<>()).merge(day, -f.amount, Double::sum);
+        }
+        List<Source> sources = new ArrayList<>();
+        spentByType.forEach((type, days) -> sources.add(fit(type.value, days, -1)));
+        if (!earned.isEmpty()) sources.add(fit("OTHER INCOME", earned, 1));
+
+        Metrics.metrics.stop("forecast.model.time", start);
+        return new Model(history.balance(), income, spending, sources);
+    }
+
+    // Fits the daily chance and log-normal size of one source from its per-day totals
+    private static Source fit(String label, Map<Long, Double> days, int sign) {
+        double sum = 0, sumSq = 0;
+        for (double total : days.values()) {
+            double l = Math.log(Math.max(total, 0.01));
+            sum += l;
+            sumSq += l * l;
+        }
+        int n = days.size();
+        double mean = sum / n;
+        double sd = n > 1 ? Math.sqrt(Math.max(0, (sumSq - n * mean * mean) / (n - 1))) : 0;
+        return new Source(label, Math.min(1, n / (double) HISTORY_DAYS), mean, sd, sign);
+    }
+
+    /**
+     * Runs the given number of paths over the model's horizon, in parallel, and reduces them to percentile bands
+     */
+    public static Result simulate(Model model, Assumptions assumptions, int paths) {
+        long start = System.nanoTime();
+        int horizon = model.recurringIncome().length;
+        int points = horizon / STEP_DAYS + 1;
+        Source[] sources = model.sources().toArray(new Source[0]);
+
+        // Fixed schedule with the assumptions applied, as a running total so paths can just add it
+        double[] fixed = new double[horizon];
+        double running = 0;
+        for (int d = 0; d < horizon; d++) {
+            running += model.recurringIncome()[d] * assumptions.incomeFactor() + model.recurringSpending()[d] * assumptions.spendingFactor();
+            fixed[d] = running;
+        }
+        double[] factor = new double[sources.length];
+        for (int s = 0; s < sources.length; s++) {
+            factor[s] = sources[s].sign() > 0 ? assumptions.incomeFactor() : assumptions.spendingFactor();
+        }
+
+        // One random stream per chunk, split up front so results don't depend on thread scheduling
+        SplittableRandom root = new SplittableRandom(SEED);
+        SplittableRandom[] randoms = new SplittableRandom[CHUNKS];
+        for (int c = 0; c < CHUNKS; c++) randoms[c] = root.split();
+
+        double[][] balances = new double[points][paths]; // balances[point][path]
+        IntStream.range(0, CHUNKS).parallel().forEach(c -> {
+            SplittableRandom random = randoms[c];
+            for (int p = c * paths / CHUNKS; p < (c + 1) * paths / CHUNKS; p++) {
+                double stochastic = 0;
+                balances[0][p] = model.startBalance();
+                for (int d = 0; d < horizon; d++) {
+                    for (int s = 0; s < sources.length; s++) {
+                        Source source = sources[s];
+                        if (random.nextDouble() < source.dailyChance()) {
+                            stochastic += source.sign() * factor[s] * Math.exp(source.logMean() + source.logSd() * random.nextGaussian());
+                        }
+                    }
+                    if ((d + 1) % STEP_DAYS == 0) balances[(d + 1) / STEP_DAYS][p] = model.startBalance() + fixed[d] + stochastic;
+                }
+            }
+        });
+
+        int[] days = new int[points];
+        double[][] bands = new double[PERCENTILES.length][points];
+        for (int i = 0; i < points; i++) {
+            days[i] = i * STEP_DAYS;
+            double[] column = balances[i];
+            Arrays.sort(column);
+            for (int q = 0; q < PERCENTILES.length; q++) {
+                bands[q][i] = column[(int) Math.min(paths - 1, Math.round(PERCENTILES[q] * (paths - 1)))];
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        Metrics.metrics.histogram("forecast.simulate.time").record(nanos);
+        return new Result(days, bands, paths, nanos);
+    }
+}
@@ -0,0 +1,59 @@
+package dev.atomtables.financetracker;
+
+import javafx.application.Platform;
+import jdk.jfr.EventType;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FxStallWatchdog pings the JavaFX application thread and emits an FxStall event whenever a ping
+ * waits longer than the threshold, which means some task on the FX thread ran that long.
+ * It only pings while a recording has FxStall enabled, so it is idle otherwise.
+ */
+public class FxStallWatchdog {
+    // Stalls shorter than this are not reported
+    private static final long THRESHOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    // How often the FX thread is pinged
+    private static final long INTERVAL_MILLIS = 100;
+
+    private static final EventType STALL = EventType.getEventType(JfrEvents.FxStall.class);
+
+    private FxStallWatchdog() {}
+
+    /**
+     * Starts the watchdog on a daemon thread
+     */
+    public static void start() {
+        Thread thread = new Thread(FxStallWatchdog::run, "fx-stall-watchdog");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void run() {
+        while (true) {
+            try {
+                Thread.sleep(INTERVAL_MILLIS);
+                if (!STALL.isEnabled()) continue;
+
+                // The event starts now and ends when the FX thread gets round to the ping
+                JfrEvents.FxStall event = new JfrEvents.FxStall();
+                event.begin();
+                long posted = System.nanoTime();
+                CountDownLatch done = new CountDownLatch(1);
+                Platform.runLater(() -> {
+                    event.end();
+                    if (System.nanoTime() - posted >= THRESHOLD_NANOS) {
+                        event.threshold = THRESHOLD_NANOS;
+                        event.commit();
+                    }
+                    done.countDown();
+                });
+                // Only one ping in flight at a time
+                done.await();
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package dev.atomtables.financetracker;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * IdBitmap is a compressed set of non-negative record ids in the style of a Roaring bitmap.
+ * Ids are split by their high 16 bits into chunks; a chunk holding few ids stores them as a sorted
+ * char array, and a dense one switches to a 65536-bit word array. AND, OR and AND NOT work chunk by
+ * chunk, so combining index bitmaps costs time proportional to the chunks involved, not the table size.
+ * Not thread-safe; the combining operations return new bitmaps and never share chunks with their inputs.
+ */
+public class IdBitmap {
+    // A chunk with more ids than this is stored as words (4096 chars = 8 KiB, the size of the word array)
+    private static final int ARRAY_LIMIT = 4096;
+
+    private char[] keys = new char[0];     // High 16 bits of each chunk, ascending
+    private Chunk[] chunks = new Chunk[0]; // Chunk for each key
+    private int count = 0;                 // Number of chunks in use
+
+    /**
+     * Adds an id, returning true if it was not already present
+     */
+    public boolean add(int id) {
+        checkId(id);
+        char key = (char) (id >>> 16);
+        int i = find(key);
+        if (i < 0) {
+            i = -i - 1;
+            insertChunk(i, key, new Chunk());
+        }
+        return chunks[i].add((char) id);
+    }
+
+    /**
+     * Removes an id, returning true if it was present
+     */
+    public boolean remove(int id) {
+        if (id < 0) return false;
+        int i = find((char) (id >>> 16));
+        if (i < 0) return false;
+        boolean removed = chunks[i].remove((char) id);
+        if (chunks[i].cardinality() == 0) removeChunk(i);
+        return removed;
+    }
+
+    /**
+     * True if the id is in the set
+     */
+    public boolean contains(int id) {
+        if (id < 0) return false;
+        int i = find((char) (id >>> 16));
+        return i >= 0 && chunks[i].contains((char) id);
+    }
+
+    /**
+     * Number of ids in the set
+     */
+    public int cardinality() {
+        int total = 0;
+        for (int i = 0; i < count; i++) total += chunks[i].cardinality();
+        return total;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Calls the consumer with every id in ascending order
+     */
+    public void forEach(IntConsumer consumer) {
+        for (int i = 0; i < count; i++) chunks[i].forEach(keys[i] << 16, consumer);
+    }
+
+    /**
+     * Every id in ascending order
+     */
+    public int[] toArray() {
+        int[] out = new int[cardinality()];
+        int[] n = {0};
+        forEach(id -> out[n[0]++] = id);
+        return out;
+    }
+
+    /**
+     * Ids in both this and other
+     */
+    public IdBitmap and(IdBitmap other) {
+        IdBitmap out = new IdBitmap();
+        int i = 0, j = 0;
+        while (i < count && j < other.count) {
+            if (keys[i] < other.keys[j]) i++;
+            else if (keys[i] > other.keys[j]) j++;
+            else {
+                out.append(keys[i], Chunk.and(chunks[i], other.chunks[j]));
+                i++;
+                j++;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Ids in this, other, or both
+     */
+    public IdBitmap or(IdBitmap other) {
+        IdBitmap out = new IdBitmap();
+        int i = 0, j = 0;
+        while (i < count || j < other.count) {
+            if (j >= other.count || (i < count && keys[i] < other.keys[j])) {
+                out.append(keys[i], chunks[i].copy());
+                i++;
+            } else if (i >= count || keys[i] > other.keys[j]) {
+                out.append(other.keys[j], other.chunks[j].copy());
+                j++;
+            } else {
+                out.append(keys[i], Chunk.or(chunks[i], other.chunks[j]));
+                i++;
+                j++;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Ids in this but not in other
+     */
+    public IdBitmap andNot(IdBitmap other) {
+        IdBitmap out = new IdBitmap();
+        int j = 0;
+        for (int i = 0; i < count; i++) {
+            while (j < other.count && other.keys[j] < keys[i]) j++;
+            if (j < other.count && other.keys[j] == keys[i]) out.append(keys[i], Chunk.andNot(chunks[i], other.chunks[j]));
+            else out.append(keys[i], chunks[i].copy());
+        }
+        return out;
+    }
+
+    /**
+     * An independent copy of this set
+     */
+    public IdBitmap copy() {
+        IdBitmap out = new IdBitmap();
+        for (int i = 0; i < count; i++) out.append(keys[i], chunks[i].copy());
+        return out;
+    }
+
+    private static void checkId(int id) {
+        if (id < 0) throw new IllegalArgumentException("Ids must be non-negative: " + id);
+    }
+
+    // Binary search for a chunk key; negative (-(insertion point) - 1) when absent
+    private int find(char key) {
+        return Arrays.binarySearch(keys, 0, count, key);
+    }
+
+    // Adds a chunk after every existing one (keys must arrive in ascending order); empty chunks are dropped
+    private void append(char key, Chunk chunk) {
+        if (chunk == null || chunk.cardinality() == 0) return;
+        insertChunk(count, key, chunk);
+    }
+
+    private void insertChunk(int i, char key, Chunk chunk) {
+        if (count == keys.length) {
+            int size = Math.max(4, count * 2);
+            keys = Arrays.copyOf(keys, size);
+            chunks = Arrays.copyOf(chunks, size);
+        }
+        System.arraycopy(keys, i, keys, i + 1, count - i);
+        System.arraycopy(chunks, i, chunks, i + 1, count - i);
+        keys[i] = key;
+        chunks[i] = chunk;
+        count++;
+    }
+
+    private void removeChunk(int i) {
+        System.arraycopy(keys, i + 1, keys, i, count - i - 1);
+        System.arraycopy(chunks, i + 1, chunks, i, count - i - 1);
+        chunks[--count] = null;
+    }
+
+    /**
+     * The low 16 bits of the ids sharing one high half: a sorted array while sparse, words once dense
+     */
+    private static final class Chunk {
+        private char[] values = new char[4]; // Sorted, used while words == null
+        private long[] words;                // 1024 words = 65536 bits, once dense
+        private int cardinality = 0;
+
+        boolean contains(char v) {
+            if (words != null) return (words[v >>> 6] & (1L << v)) != 0;
+            return Arrays.binarySearch(values, 0, cardinality, v) >= 0;
+        }
+
+        boolean add(char v) {
+            if (words != null) {
+                long before = words[v >>> 6];
+                words[v >>> 6] |= 1L << v;
+                if (before == words[v >>> 6]) return false;
+                cardinality++;
+                return true;
+            }
+            int i = Arrays.binarySearch(values, 0, cardinality, v);
+            if (i >= 0) return false;
+            i = -i - 1;
+            if (cardinality == ARRAY_LIMIT) {
+                toWords();
+                return add(v);
+            }
+            if (cardinality == values.length) values = Arrays.copyOf(values, Math.min(ARRAY_LIMIT, cardinality * 2));
+            System.arraycopy(values, i, values, i + 1, cardinality - i);
+            values[i] = v;
+            cardinality++;
+            return true;
+        }
+
+        boolean remove(char v) {
+            if (words != null) {
+                long before = words[v >>> 6];
+                words[v >>> 6] &= ~(1L << v);
+                if (before == words[v >>> 6]) return false;
+                // Switch back to an array well below the limit, so a set hovering around it doesn't flip every call
+                if (--cardinality <= ARRAY_LIMIT / 2) toValues();
+                return true;
+            }
+            int i = Arrays.binarySearch(values, 0, cardinality, v);
+            if (i < 0) return false;
+            System.arraycopy(values, i + 1, values, i, cardinality - i - 1);
+            cardinality--;
+            return true;
+        }
+
+        int cardinality() {
+            return cardinality;
+        }
+
+        void forEach(int high, IntConsumer consumer) {
+            if (words == null) {
+                for (int i = 0; i < cardinality; i++) consumer.accept(high | values[i]);
+                return;
+            }
+            for (int w = 0; w < words.length; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    consumer.accept(high | (w << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        Chunk copy() {
+            Chunk c = new Chunk();
+            c.cardinality = cardinality;
+            if (words != null) c.words = words.clone();
+            else c.values = Arrays.copyOf(values, Math.max(4, cardinality));
+            return c;
+        }
+
+        static Chunk and(Chunk a, Chunk b) {
+            // Probe the smaller side when either is an array; the result can only be as big as it
+            if (a.words == null || b.words == null) {
+                Chunk small = a.words == null && (b.words != null || a.cardinality <= b.cardinality) ? a : b;
+                Chunk other = small == a ? b : a;
+                Chunk out = new Chunk();
+                out.values = new char[Math.max(4, small.cardinality)];
+                for (int i = 0; i < small.cardinality; i++) {
+                    if (other.contains(small.values[i])) out.values[out.cardinality++] = small.values[i];
+                }
+                return out;
+            }
+            long[] w = new long[1024];
+            for (int i = 0; i < w.length; i++) w[i] = a.words[i] & b.words[i];
+            return fromWords(w);
+        }
+
+        static Chunk or(Chunk a, Chunk b) {
+            if (a.words == null && b.words == null && a.cardinality + b.cardinality <= ARRAY_LIMIT) {
+                // Merge two sorted arrays
+                Chunk out = new Chunk();
+                out.values = new char[Math.max(4, a.cardinality + b.cardinality)];
+                int i = 0, j = 0;
+                while (i < a.cardinality || j < b.cardinality) {
+                    char v;
+                    if (j >= b.cardinality || (i < a.cardinality && a.values[i] < b.values[j])) v = a.values[i++];
+                    else if (i >= a.cardinality || b.values[j] < a.values[i]) v = b.values[j++];
+                    else { v = a.values[i++]; j++; }
+                    out.values[out.cardinality++] = v;
+                }
+                return out;
+            }
+            long[] w = a.toWordArray();
+            if (b.words != null) for (int i = 0; i < w.length; i++) w[i] |= b.words[i];
+            else for (int i = 0; i < b.cardinality; i++) w[b.values[i] >>> 6] |= 1L << b.values[i];
+            return fromWords(w);
+        }
+
+        static Chunk andNot(Chunk a, Chunk b) {
+            if (a.words == null) {
+                Chunk out = new Chunk();
+                out.values = new char[Math.max(4, a.cardinality)];
+                for (int i = 0; i < a.cardinality; i++) {
+                    if (!b.contains(a.values[i])) out.values[out.cardinality++] = a.values[i];
+                }
+                return out;
+            }
+            long[] w = a.words.clone();
+            if (b.words != null) for (int i = 0; i < w.length; i++) w[i] &= ~b.words[i];
+            else for (int i = 0; i < b.cardinality; i++) w[b.values[i] >>> 6] &= ~(1L << b.values[i]);
+            return fromWords(w);
+        }
+
+        // The chunk as a fresh word array, whatever its current form
+        private long[] toWordArray() {
+            if (words != null) return words.clone();
+            long[] w = new long[1024];
+            for (int i = 0; i < cardinality; i++) w[values[i] >>> 6] |= 1L << values[i];
+            return w;
+        }
+
+        private void toWords() {
+            words = toWordArray();
+            values = null;
+        }
+
+        private void toValues() {
+            char[] v = new char[Math.max(4, cardinality)];
+            int n = 0;
+            for (int w = 0; w < words.length; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    v[n++] = (char) ((w << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            values = v;
+            words = null;
+        }
+
+        // Wraps a word array, converting it to the array form if it is sparse enough
+        private static Chunk fromWords(long[] w) {
+            Chunk c = new Chunk();
+            for (long word : w) c.cardinality += Long.bitCount(word);
+            c.words = w;
+            c.values = null;
+            if (c.cardinality <= ARRAY_LIMIT) c.toValues();
+            return c;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package dev.atomtables.financetracker;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events emitted by the app. They cost next to nothing unless a recording
+ * is running; start one with the bundled profile:
+ * java -XX:StartFlightRecording:settings=financetracker.jfc,filename=financetracker.jfr ...
+ */
+public class JfrEvents {
+    private JfrEvents() {}
+
+    /**
+     * One SQL operation run by Database (a read, or a single queued write)
+     */
+    @Name("dev.atomtables.financetracker.Sql")
+    @Label("SQL Operation")
+    @Category({"FinanceTracker", "Database"})
+    @StackTrace(false)
+    public static class Sql extends Event {
+        @Label("Operation")
+        public String operation;
+
+        @Label("Kind")
+        @Description("SELECT, INSERT, UPDATE or DELETE")
+        public String kind;
+
+        @Label("Rows")
+        public long rows;
+
+        @Label("Failed")
+        public boolean failed;
+    }
+
+    /**
+     * One transaction committed by the writer thread
+     */
+    @Name("dev.atomtables.financetracker.Commit")
+    @Label("Group Commit")
+    @Category({"FinanceTracker", "Database"})
+    @StackTrace(false)
+    public static class Commit extends Event {
+        @Label("Writes")
+        public int writes;
+
+        @Label("Failed")
+        public boolean failed;
+    }
+
+    /**
+     * One navigation between views, from the request until the slide-in animation finishes
+     */
+    @Name("dev.atomtables.financetracker.Navigation")
+    @Label("Navigation")
+    @Category({"FinanceTracker", "UI"})
+    @StackTrace(false)
+    public static class Navigation extends Event {
+        @Label("Action")
+        @Description("add, back or set")
+        public String action;
+
+        @Label("Target FXML")
+        public String target;
+
+        @Label("Load Time")
+        @Description("Time spent parsing the FXML and initializing its controller")
+        @Timespan
+        public long loadTime;
+
+        @Label("Animation Time")
+        @Timespan
+        public long animationTime;
+    }
+
+    /**
+     * The JavaFX application thread was busy for longer than the watchdog threshold
+     */
+    @Name("dev.atomtables.financetracker.FxStall")
+    @Label("FX Thread Stall")
+    @Category({"FinanceTracker", "UI"})
+    @StackTrace(false)
+    public static class FxStall extends Event {
+        @Label("Threshold")
+        @Timespan
+        public long threshold;
+    }
+}
@@ -0,0 +1,121 @@
+package dev.atomtables.financetracker;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * KeywordMatcher finds every occurrence of a fixed set of keywords in a text with one left-to-right
+ * pass (an Aho-Corasick automaton), however many keywords there are. Matching ignores case.
+ * Immutable once built, so it can be shared between threads.
+ */
+public class KeywordMatcher {
+    // Per state: its outgoing edges as parallel sorted arrays of chars and target states
+    private final char[][] edgeChars;
+    private final int[][] edgeTargets;
+    private final int[] fail;    // Longest proper suffix of this state that is also a state
+    private final int[] output;  // Keyword ending exactly at this state, or -1
+    private final int[] nextOut; // Nearest state down the fail chain with an output, or -1
+
+    /**
+     * Compiles the keywords; a match reports the keyword's index in this list
+     */
+    public KeywordMatcher(List<String> keywords) {
+        // Build the trie, growing the per-state arrays as states are added
+        int capacity = 16;
+        char[][] chars = new char[capacity][];
+        int[][] targets = new int[capacity][];
+        int[] out = new int[capacity];
+        int states = 1;
+        chars[0] = new char[0];
+        targets[0] = new int[0];
+        out[0] = -1;
+        for (int k = 0; k < keywords.size(); k++) {
+            String keyword = keywords.get(k);
+            if (keyword.isEmpty()) continue;
+            int state = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                char c = Character.toLowerCase(keyword.charAt(i));
+                int e = Arrays.binarySearch(chars[state], c);
+                if (e >= 0) {
+                    state = targets[state][e];
+                    continue;
+                }
+                if (states == capacity) {
+                    capacity *= 2;
+                    chars = Arrays.copyOf(chars, capacity);
+                    targets = Arrays.copyOf(targets, capacity);
+                    out = Arrays.copyOf(out, capacity);
+                }
+                chars[states] = new char[0];
+                targets[states] = new int[0];
+                out[states] = -1;
+                // Insert the edge keeping the arrays sorted
+                e = -e - 1;
+                char[] cs = new char[chars[state].length + 1];
+                int[] ts = new int[cs.length];
+                System.arraycopy(chars[state], 0, cs, 0, e);
+                System.arraycopy(targets[state], 0, ts, 0, e);
+                cs[e] = c;
+                ts[e] = states;
+                System.arraycopy(chars[state], e, cs, e + 1, chars[state].length - e);
+                System.arraycopy(targets[state], e, ts, e + 1, targets[state].length - e);
+                chars[state] = cs;
+                targets[state] = ts;
+                state = states++;
+            }
+            // If a keyword is listed twice, the first one wins
+            if (out[state] < 0) out[state] = k;
+        }
+        edgeChars = Arrays.copyOf(chars, states);
+        edgeTargets = Arrays.copyOf(targets, states);
+        output = Arrays.copyOf(out, states);
+        fail = new int[states];
+        nextOut = new int[states];
+
+        // Breadth-first, so every state's fail target is finished before its children need it
+        nextOut[0] = -1;
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int child : edgeTargets[0]) {
+            fail[child] = 0;
+            nextOut[child] = -1;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int e = 0; e < edgeChars[state].length; e++) {
+                char c = edgeChars[state][e];
+                int child = edgeTargets[state][e];
+                int f = fail[state];
+                int next;
+                while ((next = step(f, c)) < 0 && f != 0) f = fail[f];
+                fail[child] = Math.max(next, 0);
+                nextOut[child] = output[fail[child]] >= 0 ? fail[child] : nextOut[fail[child]];
+                queue.add(child);
+            }
+        }
+    }
+
+    // Follows an edge, or returns -1 if there is none
+    private int step(int state, char c) {
+        int e = Arrays.binarySearch(edgeChars[state], c);
+        return e >= 0 ? edgeTargets[state][e] : -1;
+    }
+
+    /**
+     * Reports the index of every keyword occurring in the text (once per occurrence), in the order their matches end
+     */
+    public void match(CharSequence text, IntConsumer matches) {
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            int next;
+            while ((next = step(state, c)) < 0 && state != 0) state = fail[state];
+            state = Math.max(next, 0);
+            for (int s = output[state] >= 0 ? state : nextOut[state]; s >= 0; s = nextOut[s]) {
+                matches.accept(output[s]);
+            }
+        }
+    }
+}
@@ -0,0 +1,395 @@
+package dev.atomtables.financetracker;
+
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Ledger is the in-memory, write-through cache in front of the LedgerStore (normally Database, where it
+ * holds the open years' records: closed years are in the Archive and only reached through Database).
+ * All reads come from memory; writes go to the store first and are then applied here,
+ * which fires list change events that views subscribe to: single adds and removes, and one change
+ * per list for each bulk delete or edit, however many records it touched.
+ * Each account also has its own partition list, kept in step with the full one, so a view of one
+ * account never walks the others' records.
+ * Must be used from the JavaFX application thread, since views observe the list directly.
+ */
+public class Ledger {
+    // Singleton instance of the ledger
+    public static final Ledger ledger = new Ledger();
+
+    // Every finance record, kept in ascending id order so lookups by id can binary search
+    private final BatchList<Database.Finance> finances = new BatchList<>();
+    private final ObservableList<Database.Finance> readOnly = FXCollections.unmodifiableObservableList(finances);
+    private static final Comparator<Database.Finance> BY_ID = Comparator.comparingInt(f -> f.id);
+    // Per account: its records, also in id order, and a read-only view of them
+    private final Map<Integer, BatchList<Database.Finance>> partitions = new HashMap<>();
+    private final Map<Integer, ObservableList<Database.Finance>> readOnlyPartitions = new HashMap<>();
+
+    // Where records are read from and written through to
+    private final LedgerStore store = LedgerStore.store;
+
+    private Database.User user;
+    private boolean loaded = false;
+    // Bumped once each write-through has reached the store (and by reset), so a load read off the FX
+    // thread can tell whether it may have missed one
+    private volatile long version = 0;
+
+    /**
+     * What the ledger loads from the store: the user and the finances (for SQLite, the open years'),
+     * read by read() on any thread and handed to adopt() on the FX thread
+     */
+    public record Contents(Database.User user, List<Database.Finance> finances, long version) {}
+
+    private Ledger() {}
+
+    // Loads from the store the first time anything is read
+    private void ensureLoaded() throws IOException {
+        if (loaded) return;
+        install(read());
+    }
+
+    /**
+     * Reads what the ledger would load from the store. Safe to call off the FX thread, so a view can
+     * load the ledger in the background and hand the result to adopt().
+     */
+    public Contents read() throws IOException {
+        long seen = version;
+        return new Contents(store.getUser(), store.getLedgerFinances(), seen);
+    }
+
+    /**
+     * Loads the ledger from contents read in the background, unless it is loaded already. Contents read
+     * before a write since are dropped, and the ledger loads again from the store on next use.
+     */
+    public void adopt(Contents contents) throws IOException {
+        if (loaded || contents.version() != version) return;
+        install(contents);
+    }
+
+    private void install(Contents contents) throws IOException {
+        user = contents.user();
+        finances.setAll(contents.finances());
+        Map<Integer, List<Database.Finance>> byAccount = new HashMap<>();
+        for (Database.Finance f : finances) byAccount.computeIfAbsent(f.accountId, a -> new ArrayList<>()).add(f);
+        byAccount.forEach((account, fs) -> partition(account).setAll(fs));
+        Budgets.budgets.rebuild(finances);
+        loaded = true;
+    }
+
+    /**
+     * Returns the live, read-only list of every finance record.
+     * Subscribe with a (weak) ListChangeListener to receive adds and removes.
+     */
+    public ObservableList<Database.Finance> getFinances() throws IOException {
+        ensureLoaded();
+        return readOnly;
+    }
+
+    /**
+     * Returns the live, read-only list of one account's finance records, or of every record when account is null
+     */
+    public ObservableList<Database.Finance> getFinances(Integer account) throws IOException {
+        ensureLoaded();
+        if (account == null) return readOnly;
+        partition(account);
+        return readOnlyPartitions.get(account);
+    }
+
+    // An account's partition list, created empty the first time it is needed
+    private BatchList<Database.Finance> partition(int account) {
+        return partitions.computeIfAbsent(account, a -> {
+            BatchList<Database.Finance> list = new BatchList<>();
+            readOnlyPartitions.put(a, FXCollections.unmodifiableObservableList(list));
+            return list;
+        });
+    }
+
+    /**
+     * Returns the cached user, or null if no user has been set up
+     */
+    public Database.User getUser() throws IOException {
+        ensureLoaded();
+        return user;
+    }
+
+    /**
+     * Writes the user through to the database and caches it
+     */
+    public void setUser(Database.User user) throws IOException {
+        store.setUser(user);
+        version++;
+        if (loaded) this.user = user;
+    }
+
+    /**
+     * Writes a finance record through to the database in the background and, once it is stored, publishes
+     * it to subscribers on the FX thread. The categorization rules fill in its type if it has none, and add
+     * their tags. Budgets count it (and alert if it crosses a threshold) before it is published.
+     * The future fails if the write did.
+     */
+    public CompletableFuture<Void> addFinance(Database.Finance f) throws IOException {
+        CategoryRules.rules.apply(f);
+        return store.addFinanceAsync(f).thenAcceptAsync(id -> publish(List.of(f)), Platform::runLater);
+    }
+
+    /**
+     * Writes several finance records through in the background and publishes the ones stored as a single
+     * change. All inserts are queued at once so the writer commits them together. The future fails with
+     * the first failure, after the records that did make it are published.
+     */
+    public CompletableFuture<Void> addFinances(List<Database.Finance> fs) throws IOException {
+        for (Database.Finance f : fs) CategoryRules.rules.apply(f); // Fill in types and tags from the categorization rules
+        List<CompletableFuture<Integer>> writes = store.addFinancesAsync(fs);
+        return CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0])).handleAsync((done, failure) -> {
+            List<Database.Finance> added = new ArrayList<>();
+            for (int i = 0; i < fs.size(); i++) if (!writes.get(i).isCompletedExceptionally()) added.add(fs.get(i));
+            publish(added);
+            if (failure != null) throw failure instanceof CompletionException e ? e : new CompletionException(failure);
+            return null;
+        }, Platform::runLater);
+    }
+
+    // Applies newly stored records here, as one change per list. The version moves either way, so a load
+    // read before they were stored isn't adopted; one adopted since then already has them, so they are
+    // only added if missing.
+    private void publish(List<Database.Finance> stored) {
+        version++;
+        if (!loaded) return;
+        List<Database.Finance> added = new ArrayList<>();
+        for (Database.Finance f : stored) {
+            if (f.id == null || indexOf(f.id) >= 0) continue;
+            Budgets.budgets.add(f);
+            added.add(f);
+        }
+        finances.addAll(added);
+        Map<Integer, List<Database.Finance>> byAccount = new HashMap<>();
+        for (Database.Finance f : added) byAccount.computeIfAbsent(f.accountId, a -> new ArrayList<>()).add(f);
+        byAccount.forEach((account, records) -> partition(account).addAll(records));
+    }
+
+    /**
+     * Deletes a finance record from the database and publishes its removal
+     */
+    public void deleteFinance(int id) throws IOException {
+        store.deleteFinance(id);
+        version++;
+        if (!loaded) return;
+        int i = indexOf(id);
+        if (i < 0) return;
+        Database.Finance f = finances.get(i);
+        Budgets.budgets.remove(f);
+        finances.remove(i);
+        ObservableList<Database.Finance> partition = partition(f.accountId);
+        int j = Collections.binarySearch(partition, f, BY_ID);
+        if (j >= 0) partition.remove(j);
+    }
+
+    /**
+     * Puts a deleted record back under its old id (undoing the delete) and publishes it in id order
+     */
+    public void restoreFinance(Database.Finance f) throws IOException {
+        store.restoreFinance(f);
+        version++;
+        if (!loaded || indexOf(f.id) >= 0) return;
+        Budgets.budgets.add(f);
+        finances.add(-indexOf(f.id) - 1, f);
+        ObservableList<Database.Finance> partition = partition(f.accountId);
+        partition.add(-Collections.binarySearch(partition, f, BY_ID) - 1, f);
+    }
+
+    /**
+     * Overwrites a record with an edited copy of it (any field may change, the account too), writing
+     * through and publishing it as a replacement
+     */
+    public void replaceFinance(Database.Finance updated) throws IOException {
+        store.replaceFinance(updated);
+        version++;
+        if (loaded) publishReplacements(List.of(updated));
+    }
+
+    /**
+     * Deletes many records in one batched write and publishes their removal as one change per list
+     */
+    public void deleteFinances(Collection<Integer> ids) throws IOException {
+        List<Database.Finance> deleted = store.deleteFinances(ids);
+        version++;
+        if (!loaded || deleted.isEmpty()) return;
+        Set<Integer> gone = new HashSet<>();
+        Map<Integer, Set<Integer>> byAccount = new HashMap<>();
+        for (Database.Finance f : deleted) {
+            gone.add(f.id);
+            byAccount.computeIfAbsent(f.accountId, a -> new HashSet<>()).add(f.id);
+        }
+        for (Database.Finance f : finances) if (gone.contains(f.id)) Budgets.budgets.remove(f);
+        finances.removeIf(f -> gone.contains(f.id));
+        // A record's account may have been edited outside the ledger, so match partitions by id too
+        byAccount.forEach((account, accountIds) -> partition(account).removeIf(f -> accountIds.contains(f.id)));
+    }
+
+    /**
+     * Applies one edit (new name, type, account or extra tags) to many records in one batched write,
+     * then publishes the edited records as one change per list
+     */
+    public void editFinances(Collection<Integer> ids, Database.BulkEdit edit) throws IOException {
+        List<Database.Finance> edited = store.editFinances(ids, edit);
+        version++;
+        if (loaded) publishReplacements(edited);
+    }
+
+    /**
+     * Puts many deleted records back under their old ids (undoing a bulk delete) in one write,
+     * publishing them in id order as one change per list
+     */
+    public void restoreFinances(List<Database.Finance> fs) throws IOException {
+        store.restoreFinances(fs);
+        version++;
+        if (!loaded) return;
+        Map<Integer, List<Database.Finance>> byAccount = new HashMap<>();
+        finances.batch(() -> {
+            for (Database.Finance f : fs) {
+                int i = indexOf(f.id);
+                if (i >= 0) continue;
+                Budgets.budgets.add(f);
+                finances.add(-i - 1, f);
+                byAccount.computeIfAbsent(f.accountId, a -> new ArrayList<>()).add(f);
+            }
+        });
+        byAccount.forEach((account, records) -> {
+            BatchList<Database.Finance> partition = partition(account);
+            partition.batch(() -> {
+                for (Database.Finance f : records) partition.add(-Collections.binarySearch(partition, f, BY_ID) - 1, f);
+            });
+        });
+    }
+
+    /**
+     * Overwrites many records with edited copies in one write, publishing them as one change per list
+     */
+    public void replaceFinances(List<Database.Finance> updated) throws IOException {
+        store.replaceFinances(updated);
+        version++;
+        if (loaded) publishReplacements(updated);
+    }
+
+    /**
+     * Replaces the tags of a record, writing through and publishing the change as a replacement
+     * (the old record removed, an updated copy added) so subscribers see both the old and new tags
+     */
+    public void setTags(int id, List<String> tags) throws IOException {
+        store.setTags(id, tags);
+        version++;
+        if (!loaded) return;
+        int i = indexOf(id);
+        if (i < 0) return;
+        Database.Finance updated = finances.get(i).copy();
+        updated.tags = List.copyOf(tags);
+        replace(i, updated);
+    }
+
+    /**
+     * Writes new types and tags for many records (updated copies of ledger records) in batches,
+     * then publishes each as a replacement
+     */
+    public void updateCategories(List<Database.Finance> updated) throws IOException {
+        if (updated.isEmpty()) return;
+        store.updateCategories(updated);
+        version++;
+        if (loaded) publishReplacements(updated);
+    }
+
+    // Publishes updated copies of ledger records as one change to the full list and one to each
+    // partition touched; a record whose account changed moves from one partition to the other.
+    // Budgets move each record's spending to wherever its new type puts it.
+    private void publishReplacements(List<Database.Finance> updated) {
+        Map<Integer, List<Database.Finance>> replaced = new HashMap<>(); // By account
+        Map<Integer, Set<Integer>> movedOut = new HashMap<>(); // Account to the ids leaving it
+        Map<Integer, List<Database.Finance>> movedIn = new HashMap<>();
+        finances.batch(() -> {
+            for (Database.Finance f : updated) {
+                int i = indexOf(f.id);
+                if (i < 0) continue;
+                Database.Finance old = finances.get(i);
+                Budgets.budgets.remove(old);
+                Budgets.budgets.add(f);
+                finances.set(i, f);
+                if (old.accountId == f.accountId) {
+                    replaced.computeIfAbsent(f.accountId, a -> new ArrayList<>()).add(f);
+                } else {
+                    movedOut.computeIfAbsent(old.accountId, a -> new HashSet<>()).add(f.id);
+                    movedIn.computeIfAbsent(f.accountId, a -> new ArrayList<>()).add(f);
+                }
+            }
+        });
+        Set<Integer> accounts = new HashSet<>(replaced.keySet());
+        accounts.addAll(movedOut.keySet());
+        accounts.addAll(movedIn.keySet());
+        for (int account : accounts) {
+            BatchList<Database.Finance> partition = partition(account);
+            partition.batch(() -> {
+                Set<Integer> out = movedOut.get(account);
+                if (out != null) partition.removeIf(f -> out.contains(f.id));
+                for (Database.Finance f : replaced.getOrDefault(account, List.of())) {
+                    int j = Collections.binarySearch(partition, f, BY_ID);
+                    if (j >= 0) partition.set(j, f);
+                }
+                for (Database.Finance f : movedIn.getOrDefault(account, List.of())) {
+                    int j = Collections.binarySearch(partition, f, BY_ID);
+                    if (j < 0) partition.add(-j - 1, f);
+                }
+            });
+        }
+    }
+
+    // Publishes an updated copy of the record at index i, in the full list and its account's partition
+    private void replace(int i, Database.Finance updated) {
+        finances.set(i, updated);
+        ObservableList<Database.Finance> partition = partition(updated.accountId);
+        int j = Collections.binarySearch(partition, updated, BY_ID);
+        if (j >= 0) partition.set(j, updated);
+    }
+
+    /**
+     * Forgets the user and publishes the removal of every record (one change per list), for a data
+     * reset after the store has been emptied or a restore after it was replaced; whatever the store
+     * then holds is loaded on next use. Budgets are cleared with it; the indexes that follow the
+     * ledger should be reset before this, so they don't take the records out one by one.
+     */
+    public void reset() {
+        version++;
+        loaded = false;
+        user = null;
+        Budgets.budgets.reset();
+        finances.clear();
+        partitions.values().forEach(List::clear);
+    }
+
+    /**
+     * Finds a cached finance record by id, or null
+     */
+    public Database.Finance getFinance(int id) throws IOException {
+        ensureLoaded();
+        int i = indexOf(id);
+        return i >= 0 ? finances.get(i) : null;
+    }
+
+    // Binary search by id (new ids only ever grow and restored records go back in their place, so the list stays sorted)
+    private int indexOf(int id) {
+        Database.Finance key = new Database.Finance();
+        key.id = id;
+        return Collections.binarySearch(finances, key, BY_ID);
+    }
+}
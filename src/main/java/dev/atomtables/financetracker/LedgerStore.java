@@ -0,0 +1,140 @@
+package dev.atomtables.financetracker;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * LedgerStore is where the user and the finance records are kept: the operations the Ledger and
+ * QueryCache need, so the storage behind them can be swapped or benchmarked. Implementations:
+ * Database (SQLite, the default), MemoryLedgerStore (nothing kept after exit) and LogLedgerStore
+ * (a memory-mapped, append-only file). Choose one with -Dfinancetracker.store=sqlite|memory|log.
+ * Every implementation must be safe to call from any thread.
+ */
+public interface LedgerStore {
+    // The store the app runs on
+    LedgerStore store = switch (System.getProperty("financetracker.store", "sqlite")) {
+        case "memory" -> new MemoryLedgerStore();
+        case "log" -> new LogLedgerStore(Path.of("ledger.log"));
+        default -> Database.database;
+    };
+
+    /**
+     * True when the records are kept in the database. The change log, accounts, categorization rules and
+     * budgets are kept in the database next to the records, so with another store they are off: they
+     * read as empty and changing them fails (see requireDatabase). Anomaly and recurring statistics are
+     * only kept in memory then, and nothing is archived.
+     */
+    static boolean onDatabase() {
+        return store == Database.database;
+    }
+
+    /**
+     * Fails with a clear message when a feature kept in the database is used while the records are elsewhere
+     */
+    static void requireDatabase(String feature) throws IOException {
+        if (!onDatabase()) throw new IOException(feature + " needs the SQLite store (-Dfinancetracker.store=sqlite); this run uses "
+                + System.getProperty("financetracker.store"));
+    }
+
+    /**
+     * Retrieves the user, or null if none has been set up
+     */
+    Database.User getUser() throws IOException;
+
+    /**
+     * Saves the user
+     */
+    void setUser(Database.User user) throws IOException;
+
+    /**
+     * Retrieves the finance records matching a filter, in id order. The records are the caller's to keep.
+     */
+    List<Database.Finance> getFinances(FinanceFilter filter) throws IOException;
+
+    /**
+     * Retrieves the records the in-memory ledger should hold.
+     * Not a default method: an interface with one is initialized along with Database, before the
+     * database singleton exists, which would leave store null.
+     */
+    List<Database.Finance> getLedgerFinances() throws IOException;
+
+    /**
+     * Adds a finance record and sets its generated id, returning once it is stored
+     */
+    void addFinance(Database.Finance f) throws IOException;
+
+    /**
+     * Adds a finance record, possibly in the background; the future yields the generated id
+     * (which is also set on the record)
+     */
+    CompletableFuture<Integer> addFinanceAsync(Database.Finance f);
+
+    /**
+     * Adds many finance records, possibly in the background, as one bulk operation (undone together);
+     * each future yields its record's generated id
+     */
+    List<CompletableFuture<Integer>> addFinancesAsync(List<Database.Finance> fs);
+
+    /**
+     * Deletes a finance record by id
+     */
+    void deleteFinance(int id) throws IOException;
+
+    /**
+     * Puts a deleted record back under its old id
+     */
+    void restoreFinance(Database.Finance f) throws IOException;
+
+    /**
+     * Overwrites every field of an existing record with those of f
+     */
+    void replaceFinance(Database.Finance f) throws IOException;
+
+    /**
+     * Deletes many finance records together; returns those that existed, as they were, in id order
+     */
+    List<Database.Finance> deleteFinances(Collection<Integer> ids) throws IOException;
+
+    /**
+     * Applies one edit to many finance records together; returns the edited records, in id order
+     */
+    List<Database.Finance> editFinances(Collection<Integer> ids, Database.BulkEdit edit) throws IOException;
+
+    /**
+     * Puts many deleted records back under their old ids together
+     */
+    void restoreFinances(List<Database.Finance> fs) throws IOException;
+
+    /**
+     * Overwrites many existing records together
+     */
+    void replaceFinances(List<Database.Finance> fs) throws IOException;
+
+    /**
+     * Replaces the tags of a finance record
+     */
+    void setTags(int id, List<String> tags) throws IOException;
+
+    /**
+     * Writes new types for many records and adds their tags
+     */
+    void updateCategories(List<Database.Finance> changed) throws IOException;
+
+    /**
+     * Sums the records matching a query: credits (positive amounts), debits (the rest) and count
+     */
+    QueryCache.Totals sumTotals(QueryCache.Query query) throws IOException;
+
+    /**
+     * Deletes the user and every record, leaving the store as a new one would be
+     */
+    void reset() throws IOException;
+
+    /**
+     * Releases whatever the store holds open
+     */
+    void close();
+}
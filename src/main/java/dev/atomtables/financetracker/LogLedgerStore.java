@@ -0,0 +1,245 @@
+package dev.atomtables.financetracker;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LogLedgerStore keeps the ledger in a memory-mapped, append-only file of fixed-width slots. Every change
+ * appends an entry (a record's new version, a deletion, or the user) and is forced to disk before it is
+ * applied in memory; opening the store replays the file into memory. An entry longer than a slot takes
+ * several consecutive ones, so entries always start on a slot boundary. Once most of the file is entries
+ * that later ones superseded, it is compacted: the live state is written to a new file that replaces it.
+ */
+public class LogLedgerStore extends MemoryLedgerStore {
+    private static final int MAGIC = 0x4C454447; // "LEDG"
+    // Bumped whenever the file layout changes
+    private static final int VERSION = 1;
+    // Bytes per slot; slot 0 is the header (magic, version, next id)
+    private static final int SLOT = 128;
+    // Each entry starts with its kind (a byte, written last) and its payload length (an int)
+    private static final int ENTRY_HEADER = 5;
+    private static final byte END = 0, PUT = 1, DELETE = 2, USER = 3;
+    private static final int INITIAL_CAPACITY = 1 << 20;
+    // Compact once superseded slots are at least this many and over half the file
+    private static final int COMPACT_MIN_SLOTS = 4096;
+
+    private final Path file;
+    private FileChannel channel;
+    private MappedByteBuffer map;
+    private int end;     // Offset where the next entry goes
+    private int garbage; // Slots holding superseded entries
+    private final Map<Integer, Integer> slotsById = new HashMap<>(); // Slots of each record's latest entry
+    private int userSlots = 0;
+
+    public LogLedgerStore(Path file) {
+        super("log");
+        this.file = file;
+    }
+
+    @Override
+    protected void ensureOpen() throws IOException {
+        if (channel != null) return;
+        long start = Metrics.metrics.start();
+        map(file);
+        if (map.getInt(0) == 0) {
+            map.putInt(0, MAGIC);
+            map.putInt(4, VERSION);
+            map.putInt(8, 1);
+            map.force();
+        } else if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+            close();
+            throw new IOException(file + " is not a ledger log this version can read");
+        }
+        nextId = map.getInt(8);
+        // Replay every entry; a half-written one has no kind yet, so the log ends there
+        int pos = SLOT;
+        while (pos + ENTRY_HEADER <= map.capacity() && map.get(pos) != END) {
+            byte kind = map.get(pos);
+            byte[] payload = new byte[map.getInt(pos + 1)];
+            map.get(pos + ENTRY_HEADER, payload);
+            int slots = slots(payload.length);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            switch (kind) {
+                case PUT -> {
+                    Database.Finance f = FinanceCodec.read(in);
+                    garbage += slotsById.getOrDefault(f.id, 0);
+                    slotsById.put(f.id, slots);
+                    finances.put(f.id, f);
+                    nextId = Math.max(nextId, f.id + 1);
+                }
+                case DELETE -> {
+                    int id = in.readInt();
+                    Integer previous = slotsById.remove(id);
+                    garbage += (previous == null ? 0 : previous) + slots;
+                    finances.remove(id);
+                }
+                case USER -> {
+                    user = FinanceCodec.readUser(in);
+                    garbage += userSlots;
+                    userSlots = slots;
+                }
+                default -> throw new IOException(file + " has an unknown entry at offset " + pos);
+            }
+            pos += slots * SLOT;
+        }
+        end = pos;
+        Metrics.metrics.stop("store.log.open.time", start);
+        Metrics.metrics.count("store.log.replayed", finances.size());
+    }
+
+    @Override
+    protected void stored(Database.Finance f) throws IOException {
+        int slots = append(PUT, FinanceCodec.encode(f));
+        garbage += slotsById.getOrDefault(f.id, 0);
+        slotsById.put(f.id, slots);
+        // The next id in the header is only a hint (replay takes the highest id seen), so it goes after
+        if (f.id >= map.getInt(8)) {
+            map.putInt(8, f.id + 1);
+            map.force(8, 4);
+        }
+    }
+
+    @Override
+    protected void deleted(int id) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DataOutputStream(bytes).writeInt(id);
+        int slots = append(DELETE, bytes.toByteArray());
+        Integer previous = slotsById.remove(id);
+        garbage += (previous == null ? 0 : previous) + slots;
+    }
+
+    @Override
+    protected void storedUser(Database.User user) throws IOException {
+        int slots = append(USER, FinanceCodec.encodeUser(user));
+        garbage += userSlots;
+        userSlots = slots;
+    }
+
+    // Swaps in an empty log, whole, so a crash leaves either the old log or the empty one
+    @Override
+    protected void cleared() throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.deleteIfExists(tmp);
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer empty = out.map(FileChannel.MapMode.READ_WRITE, 0, INITIAL_CAPACITY);
+            empty.putInt(0, MAGIC);
+            empty.putInt(4, VERSION);
+            empty.putInt(8, 1);
+            empty.force();
+        }
+        close();
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        map(file);
+        end = SLOT;
+        garbage = 0;
+        slotsById.clear();
+        userSlots = 0;
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            if (channel != null) channel.close();
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+        channel = null;
+        map = null;
+    }
+
+    // Appends one entry, forced to disk, and returns how many slots it took. The memory state is only changed after
+    // this returns, so this is the one place compaction can safely run.
+    private int append(byte kind, byte[] payload) throws IOException {
+        int usedSlots = end / SLOT - 1;
+        if (garbage >= COMPACT_MIN_SLOTS && garbage * 2 > usedSlots) compact();
+        int slots = slots(payload.length);
+        if (end + slots * SLOT > map.capacity()) {
+            // Mapping past the end of the file grows it
+            map = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(map.capacity() * 2L, end + slots * SLOT));
+        }
+        // Dirty pages of a mapping reach the disk in no particular order, so the payload is forced
+        // before the kind is written and then the kind on its own: a crash never leaves a kind in
+        // front of a payload that didn't make it
+        map.putInt(end + 1, payload.length);
+        map.put(end + ENTRY_HEADER, payload);
+        map.force(end + 1, ENTRY_HEADER - 1 + payload.length);
+        map.put(end, kind);
+        map.force(end, 1);
+        end += slots * SLOT;
+        return slots;
+    }
+
+    // Writes an entry at pos into a file that is forced as a whole before it is used (compaction);
+    // returns where the next one goes
+    private static int put(MappedByteBuffer map, int pos, byte kind, byte[] payload) {
+        map.putInt(pos + 1, payload.length);
+        map.put(pos + ENTRY_HEADER, payload);
+        map.put(pos, kind);
+        return pos + slots(payload.length) * SLOT;
+    }
+
+    private static int slots(int payloadLength) {
+        return (ENTRY_HEADER + payloadLength + SLOT - 1) / SLOT;
+    }
+
+    // Writes the user and the latest version of every record to a new file and swaps it in
+    private void compact() throws IOException {
+        long start = Metrics.metrics.start();
+        List<byte[]> entries = new ArrayList<>();
+        List<Byte> kinds = new ArrayList<>();
+        Map<Integer, Integer> slotsAfter = new HashMap<>();
+        if (user != null) {
+            entries.add(FinanceCodec.encodeUser(user));
+            kinds.add(USER);
+        }
+        for (Database.Finance f : finances.values()) {
+            byte[] entry = FinanceCodec.encode(f);
+            entries.add(entry);
+            kinds.add(PUT);
+            slotsAfter.put(f.id, slots(entry.length));
+        }
+        long size = SLOT;
+        for (byte[] entry : entries) size += (long) slots(entry.length) * SLOT;
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.deleteIfExists(tmp);
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer compacted = out.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(INITIAL_CAPACITY, size * 2));
+            compacted.putInt(0, MAGIC);
+            compacted.putInt(4, VERSION);
+            compacted.putInt(8, nextId);
+            int pos = SLOT;
+            for (int i = 0; i < entries.size(); i++) pos = put(compacted, pos, kinds.get(i), entries.get(i));
+            compacted.force();
+        }
+        close();
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        map(file);
+        end = (int) size;
+        garbage = 0;
+        slotsById.clear();
+        slotsById.putAll(slotsAfter);
+        userSlots = user != null ? slots(entries.get(0).length) : 0;
+        Metrics.metrics.count("store.log.compactions", 1);
+        Metrics.metrics.stop("store.log.compact.time", start);
+    }
+
+    // Opens the file and maps all of it (at least INITIAL_CAPACITY)
+    private void map(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(INITIAL_CAPACITY, channel.size()));
+    }
+}
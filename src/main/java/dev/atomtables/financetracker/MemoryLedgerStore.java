@@ -0,0 +1,294 @@
+package dev.atomtables.financetracker;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * MemoryLedgerStore keeps the user and every finance record in a map by id, with nothing written
+ * anywhere, so it is gone when the app exits: the fastest store, for benchmarks and throwaway sessions.
+ * Ids are handed out like SQLite's AUTOINCREMENT (never reused). Records are copied in and out, so
+ * callers never share an instance with the store. Subclasses can persist each change through the
+ * hooks, which run before the change is applied in memory.
+ */
+public class MemoryLedgerStore implements LedgerStore {
+    // Every record by id, so iteration is in id order
+    protected final TreeMap<Integer, Database.Finance> finances = new TreeMap<>();
+    protected Database.User user;
+    protected int nextId = 1;
+
+    // Metrics prefix, e.g. "store.memory."
+    private final String metrics;
+
+    public MemoryLedgerStore() {
+        this("memory");
+    }
+
+    protected MemoryLedgerStore(String name) {
+        metrics = "store." + name + ".";
+    }
+
+    // Hooks for stores that keep the data somewhere (each is called with the lock held)
+    protected void ensureOpen() throws IOException {}
+    protected void stored(Database.Finance f) throws IOException {}
+    protected void deleted(int id) throws IOException {}
+    protected void storedUser(Database.User user) throws IOException {}
+    protected void cleared() throws IOException {}
+
+    @Override
+    public synchronized Database.User getUser() throws IOException {
+        ensureOpen();
+        return user;
+    }
+
+    @Override
+    public synchronized void setUser(Database.User user) throws IOException {
+        ensureOpen();
+        storedUser(user);
+        this.user = user;
+    }
+
+    @Override
+    public synchronized List<Database.Finance> getFinances(FinanceFilter filter) throws IOException {
+        long start = Metrics.metrics.start();
+        ensureOpen();
+        List<Database.Finance> out = new ArrayList<>();
+        for (Database.Finance f : finances.values()) if (filter.test(f)) out.add(f.copy());
+        Metrics.metrics.stop(metrics + "getFinances.time", start);
+        return out;
+    }
+
+    @Override
+    public List<Database.Finance> getLedgerFinances() throws IOException {
+        return getFinances(FinanceFilter.NONE);
+    }
+
+    @Override
+    public void addFinance(Database.Finance f) throws IOException {
+        long start = Metrics.metrics.start();
+        synchronized (this) {
+            ensureOpen();
+            int id = nextId;
+            Database.Finance copy = frozen(f);
+            copy.id = id;
+            stored(copy);
+            nextId = id + 1;
+            finances.put(id, copy);
+            f.id = id;
+        }
+        QueryCache.cache.invalidate(f.accountId, f.date.getTime());
+        Metrics.metrics.stop(metrics + "addFinance.time", start);
+    }
+
+    @Override
+    public CompletableFuture<Integer> addFinanceAsync(Database.Finance f) {
+        // Nothing to wait for, so the record is added before returning
+        try {
+            addFinance(f);
+            return CompletableFuture.completedFuture(f.id);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public List<CompletableFuture<Integer>> addFinancesAsync(List<Database.Finance> fs) {
+        List<CompletableFuture<Integer>> writes = new ArrayList<>(fs.size());
+        for (Database.Finance f : fs) writes.add(addFinanceAsync(f));
+        return writes;
+    }
+
+    @Override
+    public void deleteFinance(int id) throws IOException {
+        long start = Metrics.metrics.start();
+        Database.Finance removed;
+        synchronized (this) {
+            ensureOpen();
+            if (!finances.containsKey(id)) return;
+            deleted(id);
+            removed = finances.remove(id);
+        }
+        QueryCache.cache.invalidate(removed.accountId, removed.date.getTime());
+        Metrics.metrics.stop(metrics + "deleteFinance.time", start);
+    }
+
+    @Override
+    public void restoreFinance(Database.Finance f) throws IOException {
+        synchronized (this) {
+            ensureOpen();
+            Database.Finance copy = frozen(f);
+            stored(copy);
+            finances.put(f.id, copy);
+            nextId = Math.max(nextId, f.id + 1);
+        }
+        QueryCache.cache.invalidate(f.accountId, f.date.getTime());
+    }
+
+    @Override
+    public void replaceFinance(Database.Finance f) throws IOException {
+        Database.Finance old;
+        synchronized (this) {
+            ensureOpen();
+            old = finances.get(f.id);
+            if (old == null) return;
+            Database.Finance copy = frozen(f);
+            stored(copy);
+            finances.put(f.id, copy);
+        }
+        QueryCache.cache.invalidate(old.accountId, old.date.getTime());
+        QueryCache.cache.invalidate(f.accountId, f.date.getTime());
+    }
+
+    @Override
+    public List<Database.Finance> deleteFinances(Collection<Integer> ids) throws IOException {
+        long start = Metrics.metrics.start();
+        List<Database.Finance> removed = new ArrayList<>();
+        synchronized (this) {
+            ensureOpen();
+            for (int id : new TreeSet<>(ids)) {
+                if (!finances.containsKey(id)) continue;
+                deleted(id);
+                removed.add(finances.remove(id).copy());
+            }
+        }
+        QueryCache.cache.invalidate(removed);
+        Metrics.metrics.stop(metrics + "deleteFinances.time", start);
+        return removed;
+    }
+
+    @Override
+    public List<Database.Finance> editFinances(Collection<Integer> ids, Database.BulkEdit edit) throws IOException {
+        long start = Metrics.metrics.start();
+        List<Database.Finance> touched = new ArrayList<>();
+        List<Database.Finance> edited = new ArrayList<>();
+        synchronized (this) {
+            ensureOpen();
+            for (int id : new TreeSet<>(ids)) {
+                Database.Finance old = finances.get(id);
+                if (old == null) continue;
+                Database.Finance updated = frozen(edit.applyTo(old));
+                stored(updated);
+                finances.put(id, updated);
+                touched.add(old);
+                touched.add(updated);
+                edited.add(updated.copy());
+            }
+        }
+        QueryCache.cache.invalidate(touched);
+        Metrics.metrics.stop(metrics + "editFinances.time", start);
+        return edited;
+    }
+
+    @Override
+    public void restoreFinances(List<Database.Finance> fs) throws IOException {
+        synchronized (this) {
+            ensureOpen();
+            for (Database.Finance f : fs) {
+                Database.Finance copy = frozen(f);
+                stored(copy);
+                finances.put(f.id, copy);
+                nextId = Math.max(nextId, f.id + 1);
+            }
+        }
+        QueryCache.cache.invalidate(fs);
+    }
+
+    @Override
+    public void replaceFinances(List<Database.Finance> fs) throws IOException {
+        List<Database.Finance> touched = new ArrayList<>(fs);
+        synchronized (this) {
+            ensureOpen();
+            for (Database.Finance f : fs) {
+                Database.Finance old = finances.get(f.id);
+                if (old == null) continue;
+                Database.Finance copy = frozen(f);
+                stored(copy);
+                finances.put(f.id, copy);
+                touched.add(old);
+            }
+        }
+        QueryCache.cache.invalidate(touched);
+    }
+
+    @Override
+    public synchronized void setTags(int id, List<String> tags) throws IOException {
+        ensureOpen();
+        Database.Finance f = finances.get(id);
+        if (f == null) return;
+        Database.Finance updated = f.copy();
+        updated.tags = List.copyOf(new LinkedHashSet<>(tags));
+        stored(updated);
+        finances.put(id, updated);
+    }
+
+    @Override
+    public void updateCategories(List<Database.Finance> changed) throws IOException {
+        long start = Metrics.metrics.start();
+        synchronized (this) {
+            ensureOpen();
+            for (Database.Finance f : changed) {
+                Database.Finance old = finances.get(f.id);
+                if (old == null) continue;
+                Database.Finance updated = old.copy();
+                updated.type = f.type;
+                // Tags are only ever added here, as in the SQLite store
+                Set<String> tags = new LinkedHashSet<>(old.tags);
+                tags.addAll(f.tags);
+                updated.tags = List.copyOf(tags);
+                stored(updated);
+                finances.put(f.id, updated);
+            }
+        }
+        changed.forEach(f -> QueryCache.cache.invalidate(f.accountId, f.date.getTime()));
+        Metrics.metrics.stop(metrics + "updateCategories.time", start);
+    }
+
+    @Override
+    public synchronized QueryCache.Totals sumTotals(QueryCache.Query query) throws IOException {
+        long start = Metrics.metrics.start();
+        ensureOpen();
+        double credits = 0, debits = 0;
+        long count = 0;
+        for (Database.Finance f : finances.values()) {
+            long date = f.date.getTime();
+            if (date < query.from() || date >= query.to()) continue;
+            if (query.account() != null && f.accountId != query.account()) continue;
+            if (query.types() != null && !query.types().contains(f.type)) continue;
+            if (query.direction() != null && !query.direction().equals(f.direction)) continue;
+            if (f.amount > 0) credits += f.amount;
+            else debits += f.amount;
+            count++;
+        }
+        Metrics.metrics.stop(metrics + "sumTotals.time", start);
+        return new QueryCache.Totals(credits, debits, count);
+    }
+
+    @Override
+    public void reset() throws IOException {
+        synchronized (this) {
+            ensureOpen();
+            cleared();
+            finances.clear();
+            user = null;
+            nextId = 1;
+        }
+        QueryCache.cache.clear();
+    }
+
+    @Override
+    public void close() {}
+
+    // A copy of a record whose tag and split lists can't be changed from outside
+    private static Database.Finance frozen(Database.Finance f) {
+        Database.Finance copy = f.copy();
+        copy.tags = List.copyOf(new LinkedHashSet<>(f.tags));
+        copy.splits = List.copyOf(f.splits);
+        return copy;
+    }
+}
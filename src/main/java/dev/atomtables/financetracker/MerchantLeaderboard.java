@@ -0,0 +1,188 @@
+package dev.atomtables.financetracker;
+
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * MerchantLeaderboard counts spending per merchant, all time and for the current month, with exact counters
+ * in arrays indexed by an interned merchant id. Each counter is also kept in an ordered set, so a record
+ * moves its merchant to its new place in O(log merchants) and the top K are read straight off the front,
+ * without grouping the finances table. Use from the FX thread.
+ */
+public class MerchantLeaderboard {
+    // Singleton instance, built lazily from the ledger on first use
+    public static final MerchantLeaderboard leaderboard = new MerchantLeaderboard();
+
+    /**
+     * What the merchants are ranked by
+     */
+    public enum Metric { SPEND, COUNT }
+
+    /**
+     * Which records are counted: this calendar month's or every one the ledger holds (with SQLite, the
+     * open years; archived years aren't counted)
+     */
+    public enum Scope { MONTH, ALL_TIME }
+
+    /**
+     * One leaderboard row: the merchant's latest name, money spent (positive) and number of records
+     */
+    public record Entry(String name, double spent, int count) {}
+
+    // Interned merchants: normalized name -> id, and per id the name last seen
+    private final Map<String, Integer> ids = new HashMap<>();
+    private String[] names = new String[64];
+
+    // Counters per scope, indexed by merchant id
+    private final Counters allTime = new Counters();
+    private final Counters month = new Counters();
+    private LocalDate monthStart = LocalDate.now().withDayOfMonth(1);
+    private long monthStartMillis = startMillis(monthStart);
+    private boolean built = false;
+
+    private MerchantLeaderboard() {}
+
+    // Spend and count per merchant, each with an ordered set of merchant ids (largest first, ties by id)
+    private class Counters {
+        double[] spent = new double[64];
+        int[] count = new int[64];
+        final TreeSet<Integer> bySpend = new TreeSet<>(
+                Comparator.comparingDouble((Integer id) -> -spent[id]).thenComparingInt(id -> id));
+        final TreeSet<Integer> byCount = new TreeSet<>(
+                Comparator.comparingInt((Integer id) -> -count[id]).thenComparingInt(id -> id));
+
+        void apply(int id, double amount, int sign) {
+            if (id >= spent.length) {
+                spent = Arrays.copyOf(spent, names.length);
+                count = Arrays.copyOf(count, names.length);
+            }
+            if (!built) {
+                // While first counting, the sets are filled once at the end instead
+                spent[id] += sign * amount;
+                count[id] += sign;
+                return;
+            }
+            // Take the id out while its key is still the old one, then put it back under the new one
+            bySpend.remove(id);
+            byCount.remove(id);
+            spent[id] += sign * amount;
+            count[id] += sign;
+            if (count[id] > 0) {
+                bySpend.add(id);
+                byCount.add(id);
+            }
+        }
+
+        // Orders every merchant that has records
+        void index() {
+            for (int id = 0; id < ids.size(); id++) {
+                if (count[id] > 0) {
+                    bySpend.add(id);
+                    byCount.add(id);
+                }
+            }
+        }
+
+        void clear() {
+            bySpend.clear();
+            byCount.clear();
+            Arrays.fill(spent, 0);
+            Arrays.fill(count, 0);
+        }
+    }
+
+    /**
+     * Counts every record in the ledger once, then follows its change events
+     */
+    public void ensureBuilt() throws IOException {
+        if (built) return;
+        long start = Metrics.metrics.start();
+        ObservableList<Database.Finance> finances = Ledger.ledger.getFinances();
+        for (Database.Finance f : finances) apply(f, 1);
+        built = true;
+        allTime.index();
+        month.index();
+        finances.addListener(follower);
+        Metrics.metrics.stop("leaderboard.build.time", start);
+    }
+
+    // Applies the ledger's change events; held in a field so reset() can unsubscribe it
+    private final ListChangeListener<Database.Finance> follower = change -> {
+        while (change.next()) {
+            for (Database.Finance f : change.getRemoved()) apply(f, -1);
+            for (Database.Finance f : change.getAddedSubList()) apply(f, 1);
+        }
+    };
+
+    /**
+     * Forgets every merchant and stops following the ledger (for a data reset); the next use counts again
+     */
+    public void reset() throws IOException {
+        if (built) Ledger.ledger.getFinances().removeListener(follower);
+        built = false;
+        ids.clear();
+        Arrays.fill(names, null);
+        allTime.clear();
+        month.clear();
+    }
+
+    // Adds (sign = 1) or removes (sign = -1) a spending record from its merchant's counters
+    private void apply(Database.Finance f, int sign) {
+        if (f.amount >= 0) return;
+        String merchant = RecurringDetector.normalizeMerchant(f.name);
+        if (merchant.isEmpty()) return;
+        Integer id = ids.get(merchant);
+        if (id == null) {
+            id = ids.size();
+            ids.put(merchant, id);
+            if (id >= names.length) names = Arrays.copyOf(names, names.length * 2);
+        }
+        if (sign > 0) names[id] = f.name;
+        allTime.apply(id, -f.amount, sign);
+        if (f.date.getTime() >= monthStartMillis) month.apply(id, -f.amount, sign);
+    }
+
+    private static long startMillis(LocalDate day) {
+        return day.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * The top k merchants for a scope and metric, best first
+     */
+    public List<Entry> top(Scope scope, Metric metric, int k) throws IOException {
+        ensureBuilt();
+        rollMonth();
+        Counters counters = scope == Scope.MONTH ? month : allTime;
+        List<Entry> out = new ArrayList<>(k);
+        for (int id : metric == Metric.SPEND ? counters.bySpend : counters.byCount) {
+            if (out.size() == k) break;
+            out.add(new Entry(names[id], counters.spent[id], counters.count[id]));
+        }
+        return out;
+    }
+
+    // When a new month has begun since the month counters were filled, recount them from the ledger once
+    private void rollMonth() throws IOException {
+        LocalDate current = LocalDate.now().withDayOfMonth(1);
+        if (current.equals(monthStart)) return;
+        monthStart = current;
+        monthStartMillis = startMillis(current);
+        month.clear();
+        for (Database.Finance f : Ledger.ledger.getFinances()) {
+            if (f.amount >= 0 || f.date.getTime() < monthStartMillis) continue;
+            Integer id = ids.get(RecurringDetector.normalizeMerchant(f.name));
+            if (id != null) month.apply(id, -f.amount, 1);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package dev.atomtables.financetracker;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics records timings and counters for database operations and view loads.
+ * Recording is a couple of atomic increments, so it is always on; the numbers can be viewed in
+ * the diagnostics overlay (Ctrl+Shift+D) or dumped to a file for slowness reports.
+ */
+public class Metrics {
+    // Singleton instance of the metrics registry
+    public static final Metrics metrics = new Metrics();
+
+    private final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    private Metrics() {}
+
+    /**
+     * Histogram with logarithmic buckets (8 per power of two, so within ~12% of the real value)
+     * that can be recorded into from any thread without locking
+     */
+    public static class Histogram {
+        private static final int SUB_BUCKETS = 8;
+        private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+
+        /**
+         * Records one value (negative values count as 0)
+         */
+        public void record(long value) {
+            buckets.incrementAndGet(bucket(Math.max(0, value)));
+            count.increment();
+            sum.add(value);
+        }
+
+        public long count() { return count.sum(); }
+        public long sum() { return sum.sum(); }
+
+        /**
+         * Approximate value at the given percentile (0-100)
+         */
+        public long percentile(double p) {
+            long total = count();
+            if (total == 0) return 0;
+            long rank = (long) Math.ceil(total * p / 100.0);
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen >= Math.max(1, rank)) return upperBound(i);
+            }
+            return upperBound(buckets.length() - 1);
+        }
+
+        // Bucket index: the power of two the value falls in, plus its next 3 bits
+        private static int bucket(long v) {
+            if (v < SUB_BUCKETS) return (int) v;
+            int exp = 63 - Long.numberOfLeadingZeros(v);
+            int sub = (int) (v >>> (exp - 3)) & (SUB_BUCKETS - 1);
+            return (exp - 2) * SUB_BUCKETS + sub;
+        }
+
+        // Largest value that lands in a bucket
+        private static long upperBound(int i) {
+            if (i < SUB_BUCKETS) return i;
+            int exp = i / SUB_BUCKETS + 2;
+            long sub = i % SUB_BUCKETS;
+            return ((SUB_BUCKETS + sub + 1) << (exp - 3)) - 1;
+        }
+    }
+
+    /**
+     * Returns the histogram with this name, creating it on first use
+     */
+    public Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, n -> new Histogram());
+    }
+
+    /**
+     * Start time for a later call to stop()
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the time since start (in nanoseconds) under this name and returns it
+     */
+    public long stop(String name, long start) {
+        long elapsed = System.nanoTime() - start;
+        histogram(name).record(elapsed);
+        return elapsed;
+    }
+
+    /**
+     * Adds n to the counter with this name
+     */
+    public void count(String name, long n) {
+        counters.computeIfAbsent(name, k -> new LongAdder()).add(n);
+    }
+
+    /**
+     * Current value of a counter
+     */
+    public long counter(String name) {
+        LongAdder c = counters.get(name);
+        return c == null ? 0 : c.sum();
+    }
+
+    /**
+     * Human-readable table of every histogram and counter. Histograms whose name ends in ".time"
+     * hold nanoseconds and are shown in milliseconds.
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-44s %8s %10s %10s %10s %10s%n", "timer / histogram", "count", "p50", "p90", "p99", "max"));
+        for (Map.Entry<String, Histogram> e : new TreeMap<>(histograms).entrySet()) {
+            Histogram h = e.getValue();
+            boolean time = e.getKey().endsWith(".time");
+            sb.append(String.format("%-44s %8d %10s %10s %10s %10s%n", e.getKey(), h.count(),
+                    format(h.percentile(50), time), format(h.percentile(90), time),
+                    format(h.percentile(99), time), format(h.percentile(100), time)));
+        }
+        sb.append(String.format("%n%-44s %8s%n", "counter", "value"));
+        for (Map.Entry<String, LongAdder> e : new TreeMap<>(counters).entrySet()) {
+            sb.append(String.format("%-44s %8d%n", e.getKey(), e.getValue().sum()));
+        }
+        return sb.toString();
+    }
+
+    private static String format(long value, boolean nanos) {
+        return nanos ? String.format("%.2fms", value / 1e6) : Long.toString(value);
+    }
+
+    /**
+     * Writes the current report to a timestamped file in the working directory and returns its path
+     */
+    public Path dump() throws IOException {
+        String stamp = LocalDateTime.now().toString().replace(':', '-');
+        Path file = Path.of("diagnostics-" + stamp + ".txt");
+        Files.writeString(file, "FinanceTracker diagnostics, " + LocalDateTime.now() + System.lineSeparator()
+                + System.lineSeparator() + report());
+        return file;
+    }
+}
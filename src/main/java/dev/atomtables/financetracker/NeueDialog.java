@@ -4,6 +4,10 @@ import javafx.geometry.Insets;
 import javafx.scene.control.*;
 import javafx.scene.layout.GridPane;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
 
 public class NeueDialog {
@@ -36,6 +40,34 @@ public class NeueDialog {
         typeCombo.getItems().addAll(Database.Finance.Type.values()); // Add all enum values
         typeCombo.setPromptText("Type");
 
+        // Suggest a type from the categorization rules as the name is typed, until the user picks one
+        boolean[] picked = {false};
+        typeCombo.setOnAction(e -> picked[0] = typeCombo.isFocused() || picked[0]);
+        nameField.textProperty().addListener((obs, old, name) -> {
+            if (picked[0]) return;
+            try {
+                CategoryRules.Category category = CategoryRules.rules.categorize(name);
+                typeCombo.setValue(category == null ? null : category.type());
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+            }
+        });
+
+        TextField tagsField = new TextField();
+        tagsField.setPromptText("work, reimbursed");
+
+        TextField splitsField = new TextField();
+        splitsField.setPromptText("FOODDRINK 20, SHOPPING 30");
+
+        // The account being shown is the default home for the new record
+        ComboBox<Database.Account> accountCombo = new ComboBox<>();
+        try {
+            accountCombo.getItems().setAll(Accounts.accounts.list());
+            accountCombo.setValue(Accounts.accounts.get(Accounts.accounts.accountForNewRecords()));
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+
         // Add labels and inputs to the grid
         grid.add(new Label("Name:"), 0, 0);
         grid.add(nameField, 1, 0);
@@ -43,6 +75,12 @@ public class NeueDialog {
         grid.add(amountField, 1, 1);
         grid.add(new Label("Type:"), 0, 2);
         grid.add(typeCombo, 1, 2);
+        grid.add(new Label("Tags:"), 0, 3);
+        grid.add(tagsField, 1, 3);
+        grid.add(new Label("Split across:"), 0, 4);
+        grid.add(splitsField, 1, 4);
+        grid.add(new Label("Account:"), 0, 5);
+        grid.add(accountCombo, 1, 5);
 
         // Attach the grid to the dialog content
         dialog.getDialogPane().setContent(grid);
@@ -58,6 +96,14 @@ public class NeueDialog {
                     finance.type = typeCombo.getValue();
                     finance.direction = finance.amount >= 0; // Direction: true if incoming
                     finance.date = new java.util.Date(); // Set current date
+                    finance.tags = parseTags(tagsField.getText());
+                    finance.splits = parseSplits(splitsField.getText(), finance.amount);
+                    finance.accountId = accountCombo.getValue() == null ? Database.DEFAULT_ACCOUNT : accountCombo.getValue().id();
+                    // A split record without a chosen type is filed under its first portion
+                    if (finance.type == null && !finance.splits.isEmpty()) finance.type = finance.splits.getFirst().type();
+                    // Otherwise the categorization rules pick it (and add their tags)
+                    CategoryRules.rules.apply(finance);
+                    if (finance.type == null) return null;
                     return finance;
                 } catch (Exception e) {
                     // Input was invalid (e.g., amount was not a number)
@@ -72,12 +118,45 @@ public class NeueDialog {
         return result;
     }
 
-    // Utility method to show dialog and add the finance record to the database if confirmed
-    public static void addNeueFinanceToDatabase(Database db) {
+    /**
+     * Parses comma-separated tags, normalized and without duplicates
+     */
+    public static List<String> parseTags(String text) {
+        List<String> tags = new ArrayList<>();
+        for (String part : text.split(",")) {
+            String tag = TagIndex.normalizeTag(part);
+            if (tag != null && !tags.contains(tag)) tags.add(tag);
+        }
+        return tags;
+    }
+
+    // Parses "TYPE amount, TYPE amount" into splits carrying the record's sign; the portions must add up
+    // to the whole amount. Throws (making the dialog input invalid) otherwise.
+    private static List<Database.Finance.Split> parseSplits(String text, double amount) {
+        List<Database.Finance.Split> splits = new ArrayList<>();
+        if (text.isBlank()) return splits;
+        double total = 0;
+        for (String part : text.split(",")) {
+            String[] words = part.trim().split("\\s+");
+            Database.Finance.Type type = Database.Finance.Type.valueOf(words[0].toUpperCase(Locale.ROOT));
+            double portion = Math.copySign(Math.abs(Double.parseDouble(words[1])), amount);
+            splits.add(new Database.Finance.Split(type, portion));
+            total += portion;
+        }
+        if (Math.abs(total - amount) > 0.005) throw new IllegalArgumentException("Splits don't add up to the amount");
+        return splits;
+    }
+
+    // Utility method to show dialog and add the finance record to the ledger (and database) if confirmed
+    public static void addNeueFinanceToDatabase(Ledger ledger) {
         Optional<Database.Finance> result = showDialog();
         result.ifPresent(finance -> {
             try {
-                db.addFinance(finance); // Add the finance record to the database
+                // Written through to the database in the background; open views are notified once it is stored
+                ledger.addFinance(finance).exceptionally(e -> {
+                    System.out.println("Error adding finance: " + e.getCause().getMessage());
+                    return null;
+                });
             } catch (Exception e) {
                 System.out.println("Error adding finance: " + e.getMessage());
             }
@@ -0,0 +1,177 @@
+package dev.atomtables.financetracker;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * QueryCache is a bounded LRU cache of query results (currently date-range totals), keyed by a
+ * normalized description of the query. Results are cached per account: a query over every account is
+ * answered by merging the per-account partials, so a write to one account only invalidates that
+ * account's entries whose date range covers the month it touched, and the others stay cached.
+ */
+public class QueryCache {
+    // Singleton instance of the cache
+    public static final QueryCache cache = new QueryCache(256);
+
+    /**
+     * Normalized description of a query: records with from <= date < to (epoch millis),
+     * restricted to the given types (null = all), direction (null = both) and account (null = all).
+     * Use Query.of to build one so equal queries always produce equal keys.
+     */
+    public record Query(long from, long to, Set<Database.Finance.Type> types, Boolean direction, Integer account) {
+        // Every record ever
+        public static final Query ALL = of(Long.MIN_VALUE, Long.MAX_VALUE, null, null);
+
+        public static Query of(long from, long to, Set<Database.Finance.Type> types, Boolean direction) {
+            return of(from, to, types, direction, null);
+        }
+
+        public static Query of(long from, long to, Set<Database.Finance.Type> types, Boolean direction, Integer account) {
+            // "All types" is stored as null whether it was passed as null or as the full set
+            Set<Database.Finance.Type> normalized = types == null || types.size() == Database.Finance.Type.values().length
+                    ? null : Set.copyOf(EnumSet.copyOf(types));
+            return new Query(from, Math.max(from, to), normalized, direction, account);
+        }
+
+        public Query withAccount(Integer account) {
+            return new Query(from, to, types, direction, account);
+        }
+    }
+
+    /**
+     * Aggregated result: sum of positive amounts, sum of the rest, and the number of records
+     */
+    public record Totals(double credits, double debits, long count) {
+        Totals plus(Totals other) {
+            return new Totals(credits + other.credits, debits + other.debits, count + other.count);
+        }
+    }
+
+    // A cached result, the account it covers and the range of month buckets it depends on
+    private record Entry(Object value, int account, int firstMonth, int lastMonth) {}
+
+    /**
+     * Runs a query the cache doesn't hold
+     */
+    interface Loader {
+        Totals load(Query query) throws IOException;
+    }
+
+    private final LinkedHashMap<Query, Entry> entries;
+    private final Loader loader;
+    private long generation = 0; // Bumped on every invalidation, so stale loads are not stored
+
+    private QueryCache(int capacity) {
+        this(capacity, query -> LedgerStore.store.sumTotals(query));
+    }
+
+    // A cache loading from something other than the store, for tests
+    QueryCache(int capacity, Loader loader) {
+        this.loader = loader;
+        entries = new LinkedHashMap<>(capacity * 4 / 3 + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Query, Entry> eldest) {
+                if (size() <= capacity) return false;
+                Metrics.metrics.count("cache.query.evictions", 1);
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Totals for a query, from memory when possible. Without an account, the per-account totals are summed.
+     */
+    public Totals totals(Query query) throws IOException {
+        if (query.account() == null) {
+            Totals sum = new Totals(0, 0, 0);
+            for (Database.Account account : Accounts.accounts.list()) sum = sum.plus(totals(query.withAccount(account.id())));
+            return sum;
+        }
+        long loadedAt;
+        synchronized (this) {
+            Entry entry = entries.get(query);
+            if (entry != null) {
+                Metrics.metrics.count("cache.query.hits", 1);
+                return (Totals) entry.value();
+            }
+            Metrics.metrics.count("cache.query.misses", 1);
+            loadedAt = generation;
+        }
+        // Run the query without holding the lock, then only keep it if no write landed meanwhile
+        Totals totals = loader.load(query);
+        synchronized (this) {
+            if (generation == loadedAt) {
+                entries.put(query, new Entry(totals, query.account(), month(query.from()), month(query.to() - 1)));
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * Drops every entry of an account whose date range covers the month of a record written at this time
+     */
+    public synchronized void invalidate(int account, long epochMillis) {
+        generation++;
+        int month = month(epochMillis);
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.account() == account && entry.firstMonth() <= month && month <= entry.lastMonth()) {
+                it.remove();
+                Metrics.metrics.count("cache.query.invalidations", 1);
+            }
+        }
+    }
+
+    /**
+     * Drops the entries covering any of these records' account and month, in one pass over the cache
+     * however many records there are (for bulk writes)
+     */
+    public synchronized void invalidate(Collection<Database.Finance> records) {
+        if (records.isEmpty()) return;
+        generation++;
+        Map<Integer, Set<Integer>> months = new HashMap<>(); // Account to the months written in it
+        for (Database.Finance f : records) {
+            months.computeIfAbsent(f.accountId, a -> new HashSet<>()).add(month(f.date.getTime()));
+        }
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            Set<Integer> written = months.get(entry.account());
+            if (written == null) continue;
+            for (int month : written) {
+                if (entry.firstMonth() <= month && month <= entry.lastMonth()) {
+                    it.remove();
+                    Metrics.metrics.count("cache.query.invalidations", 1);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops everything
+     */
+    public synchronized void clear() {
+        generation++;
+        entries.clear();
+    }
+
+    // Month bucket (year * 12 + month) in local time; open-ended bounds map to the extremes
+    private static int month(long epochMillis) {
+        if (epochMillis <= Long.MIN_VALUE + 1) return Integer.MIN_VALUE;
+        if (epochMillis >= Long.MAX_VALUE - 1) return Integer.MAX_VALUE;
+        ZonedDateTime t = Instant.ofEpochMilli(epochMillis).atZone(ZoneId.systemDefault());
+        return t.getYear() * 12 + t.getMonthValue() - 1;
+    }
+}
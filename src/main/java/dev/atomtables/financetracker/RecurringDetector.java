@@ -0,0 +1,285 @@
+package dev.atomtables.financetracker;
+
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * RecurringDetector groups records into buckets by normalized merchant name, direction and amount band
+ * (a hash lookup per record) and looks for a weekly, biweekly or monthly cadence in each bucket's
+ * recent dates. Buckets are stored in the database with the id of the last record they saw, so on start
+ * only records added since then are processed (with nothing stored, the archived years are read too);
+ * after that it follows the ledger one change at a time.
+ * With a ledger store other than SQLite the buckets are kept in memory only and rebuilt on each start.
+ * Use from the FX thread.
+ */
+public class RecurringDetector {
+    // Singleton instance, loaded lazily on first use
+    public static final RecurringDetector recurring = new RecurringDetector();
+
+    // Amounts within a factor of BAND_RATIO of each other share a band (or sit in neighbouring ones)
+    private static final double BAND_RATIO = 1.25;
+    // How many recent occurrence days each bucket keeps to find its cadence from
+    private static final int RECENT_DAYS = 12;
+    // Runs of anything but letters, which merchant names are split on
+    private static final Pattern NON_LETTERS = Pattern.compile("[^\\p{L}]+");
+
+    /**
+     * A repeating period, with how far (in days) an interval may stray from it and still count
+     */
+    public enum Cadence {
+        WEEKLY(7, 1),
+        BIWEEKLY(14, 2),
+        MONTHLY(30, 3);
+
+        public final int days;
+        public final int tolerance;
+        Cadence(int days, int tolerance) {
+            this.days = days;
+            this.tolerance = tolerance;
+        }
+
+        // The day after the given one on which this cadence expects the next occurrence
+        long next(long day) {
+            return this == MONTHLY ? LocalDate.ofEpochDay(day).plusMonths(1).toEpochDay() : day + days;
+        }
+    }
+
+    /**
+     * Identifies a bucket: normalized merchant, income or spending, and amount band
+     */
+    public record Key(String merchant, boolean direction, int band) {}
+
+    /**
+     * State of one bucket: the latest original name, how many records it holds, their total amount,
+     * the most recent occurrence days (ascending epoch days), the highest record id it has seen,
+     * and the detected cadence (null if none) with the day the next occurrence is expected
+     */
+    public record Series(Key key, String name, int count, double amountSum, long[] days, int lastId,
+                         Cadence cadence, long nextDay) {
+        public double averageAmount() {
+            return count == 0 ? 0 : amountSum / count;
+        }
+    }
+
+    private final Map<Key, Series> buckets = new HashMap<>();
+    private boolean built = false;
+    // While catching up, changed buckets are collected here and saved once at the end
+    private Set<Key> unsaved = null;
+
+    private RecurringDetector() {}
+
+    /**
+     * Normalizes a merchant name so "UBER *TRIP 1234" and "Uber Trip" land in the same bucket
+     */
+    public static String normalizeMerchant(String name) {
+        if (name == null) return "";
+        return NON_LETTERS.matcher(name.toLowerCase(Locale.ROOT)).replaceAll(" ").strip();
+    }
+
+    // Band index of an amount on a log scale
+    private static int band(double amount) {
+        return (int) Math.floor(Math.log1p(Math.abs(amount)) / Math.log(BAND_RATIO));
+    }
+
+    /**
+     * Loads the stored buckets, catches up on records added since, then follows the ledger
+     */
+    public void ensureBuilt() throws IOException {
+        if (built) return;
+        long start = Metrics.metrics.start();
+        int watermark = 0;
+        if (LedgerStore.onDatabase()) {
+            for (Series series : Database.database.getRecurringSeries()) {
+                buckets.put(series.key(), series);
+                watermark = Math.max(watermark, series.lastId());
+            }
+        }
+        // Ledger records are in id order, so only the tail past the watermark is new
+        ObservableList<Database.Finance> finances = Ledger.ledger.getFinances();
+        int caughtUp = 0;
+        for (int i = finances.size() - 1; i >= 0 && finances.get(i).id > watermark; i--) caughtUp++;
+        unsaved = new HashSet<>();
+        List<Database.Finance> fresh = finances.subList(finances.size() - caughtUp, finances.size());
+        // Built from nothing (no stored state): the archived years are history too
+        if (watermark == 0) fresh = Archive.withClosedYears(fresh);
+        for (Database.Finance f : fresh) add(f);
+        if (LedgerStore.onDatabase()) for (Key key : unsaved) Database.database.saveRecurringSeriesAsync(buckets.get(key));
+        unsaved = null;
+        Metrics.metrics.count("recurring.caughtUp", fresh.size());
+
+        finances.addListener(follower);
+        built = true;
+        Metrics.metrics.stop("recurring.build.time", start);
+    }
+
+    // Applies the ledger's change events; held in a field so reset() can unsubscribe it
+    private final ListChangeListener<Database.Finance> follower = change -> {
+        while (change.next()) {
+            for (Database.Finance f : change.getRemoved()) remove(f);
+            for (Database.Finance f : change.getAddedSubList()) add(f);
+        }
+    };
+
+    /**
+     * Forgets every bucket and stops following the ledger (for a data reset, which empties the stored
+     * buckets too); the next use loads them again
+     */
+    public void reset() throws IOException {
+        if (built) Ledger.ledger.getFinances().removeListener(follower);
+        built = false;
+        buckets.clear();
+    }
+
+    /**
+     * Every bucket with a detected cadence whose next occurrence is expected in [fromDay, toDay], soonest first
+     */
+    public List<Series> upcoming(long fromDay, long toDay) throws IOException {
+        ensureBuilt();
+        List<Series> out = new ArrayList<>();
+        for (Series series : buckets.values()) {
+            if (series.cadence() != null && series.nextDay() >= fromDay && series.nextDay() <= toDay) out.add(series);
+        }
+        out.sort(Comparator.comparingLong(Series::nextDay));
+        return out;
+    }
+
+    /**
+     * Every bucket with a detected cadence
+     */
+    public List<Series> detected() throws IOException {
+        ensureBuilt();
+        List<Series> out = new ArrayList<>();
+        for (Series series : buckets.values()) if (series.cadence() != null) out.add(series);
+        return out;
+    }
+
+    /**
+     * True if the record belongs to a bucket with a detected cadence
+     */
+    public boolean isRecurring(Database.Finance f) {
+        return isRecurring(buckets, f);
+    }
+
+    /**
+     * isRecurring over a copy of the current buckets, safe to call from any thread (e.g. to fit a forecast
+     * in the background); it doesn't see changes made after it was taken
+     */
+    public Predicate<Database.Finance> recurringSnapshot() throws IOException {
+        ensureBuilt();
+        Map<Key, Series> copy = new HashMap<>(buckets);
+        return f -> isRecurring(copy, f);
+    }
+
+    private static boolean isRecurring(Map<Key, Series> buckets, Database.Finance f) {
+        Series series = buckets.get(bucketFor(buckets, f));
+        return series != null && series.cadence() != null;
+    }
+
+    // The bucket a record belongs in: an existing one in its own or a neighbouring band whose average
+    // is close enough, so amounts near a band edge don't split a series; otherwise its own band's
+    private static Key bucketFor(Map<Key, Series> buckets, Database.Finance f) {
+        String merchant = normalizeMerchant(f.name);
+        boolean direction = f.amount >= 0;
+        int band = band(f.amount);
+        for (int b : new int[]{band, band - 1, band + 1}) {
+            Series near = buckets.get(new Key(merchant, direction, b));
+            if (near == null) continue;
+            double ratio = Math.abs(f.amount) / Math.max(0.01, Math.abs(near.averageAmount()));
+            if (ratio <= BAND_RATIO && ratio >= 1 / BAND_RATIO) return near.key();
+        }
+        return new Key(merchant, direction, band);
+    }
+
+    // Adds a record to its bucket and re-detects that bucket's cadence
+    private void add(Database.Finance f) {
+        Key key = bucketFor(buckets, f);
+        Series old = buckets.get(key);
+        long day = DailyTotals.epochDay(f.date);
+        long[] days = old == null ? new long[0] : old.days();
+        days = insertDay(days, day);
+        if (days.length > RECENT_DAYS) days = Arrays.copyOfRange(days, days.length - RECENT_DAYS, days.length);
+        put(new Series(key, f.name, (old == null ? 0 : old.count()) + 1, (old == null ? 0 : old.amountSum()) + f.amount,
+                days, Math.max(old == null ? 0 : old.lastId(), f.id), null, 0));
+    }
+
+    // Takes a deleted record back out of its bucket (its day only drops out if it is still a recent one)
+    private void remove(Database.Finance f) {
+        Series old = buckets.get(bucketFor(buckets, f));
+        if (old == null) return;
+        if (old.count() <= 1) {
+            buckets.remove(old.key());
+            if (LedgerStore.onDatabase()) Database.database.deleteRecurringSeriesAsync(old.key());
+            return;
+        }
+        long[] days = removeDay(old.days(), DailyTotals.epochDay(f.date));
+        put(new Series(old.key(), old.name(), old.count() - 1, old.amountSum() - f.amount, days, old.lastId(), null, 0));
+    }
+
+    // Detects the cadence for a bucket's new state, stores it, and queues saving it
+    private void put(Series series) {
+        Cadence cadence = detect(series.days());
+        long last = series.days().length == 0 ? 0 : series.days()[series.days().length - 1];
+        Series detected = new Series(series.key(), series.name(), series.count(), series.amountSum(), series.days(),
+                series.lastId(), cadence, cadence == null ? 0 : cadence.next(last));
+        buckets.put(detected.key(), detected);
+        if (unsaved != null) unsaved.add(detected.key());
+        else if (LedgerStore.onDatabase()) Database.database.saveRecurringSeriesAsync(detected);
+    }
+
+    /**
+     * The cadence that at least two thirds (and at least two) of the intervals between the given days fit,
+     * preferring the one most of them fit; null if none does
+     */
+    static Cadence detect(long[] days) {
+        int intervals = days.length - 1;
+        if (intervals < 2) return null;
+        Cadence best = null;
+        int bestFits = 0;
+        for (Cadence cadence : Cadence.values()) {
+            int fits = 0;
+            for (int i = 1; i < days.length; i++) {
+                if (Math.abs(days[i] - days[i - 1] - cadence.days) <= cadence.tolerance) fits++;
+            }
+            if (fits > bestFits) {
+                best = cadence;
+                bestFits = fits;
+            }
+        }
+        return bestFits >= 2 && bestFits * 3 >= intervals * 2 ? best : null;
+    }
+
+    // Adds a day keeping the array sorted; a day that is already there (two records on one day) is kept once
+    private static long[] insertDay(long[] days, long day) {
+        int i = Arrays.binarySearch(days, day);
+        if (i >= 0) return days;
+        i = -i - 1;
+        long[] out = new long[days.length + 1];
+        System.arraycopy(days, 0, out, 0, i);
+        out[i] = day;
+        System.arraycopy(days, i, out, i + 1, days.length - i);
+        return out;
+    }
+
+    private static long[] removeDay(long[] days, long day) {
+        int i = Arrays.binarySearch(days, day);
+        if (i < 0) return days;
+        long[] out = new long[days.length - 1];
+        System.arraycopy(days, 0, out, 0, i);
+        System.arraycopy(days, i + 1, out, i, days.length - i - 1);
+        return out;
+    }
+}
@@ -0,0 +1,105 @@
+package dev.atomtables.financetracker;
+
+import javafx.geometry.Insets;
+import javafx.scene.control.*;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+
+import java.io.IOException;
+
+public class RulesDialog {
+
+    // Displays the categorization rules and lets the user add and remove them.
+    // Every change re-categorizes the existing records straight away.
+    public static void showDialog() {
+        Dialog<Void> dialog = new Dialog<>();
+        dialog.setTitle("Categorization Rules");
+        dialog.setHeaderText("Records whose name contains a keyword get its type and tags");
+        dialog.getDialogPane().getButtonTypes().add(ButtonType.CLOSE);
+
+        // List of the current rules
+        ListView<CategoryRules.Rule> list = new ListView<>();
+        list.setPrefSize(460, 240);
+        list.setCellFactory(view -> new ListCell<>() {
+            @Override
+            protected void updateItem(CategoryRules.Rule rule, boolean empty) {
+                super.updateItem(rule, empty);
+                if (empty || rule == null) {
+                    setText(null);
+                } else {
+                    setText("\"" + rule.keyword() + "\" → " + (rule.type() == null ? "(keep type)" : rule.type().value)
+                            + (rule.tags().isEmpty() ? "" : "  tags: " + String.join(", ", rule.tags())));
+                }
+            }
+        });
+
+        // Input fields for a new rule
+        TextField keywordField = new TextField();
+        keywordField.setPromptText("Keyword, e.g. uber");
+        ComboBox<Database.Finance.Type> typeCombo = new ComboBox<>();
+        typeCombo.getItems().addAll(Database.Finance.Type.values());
+        typeCombo.setPromptText("Type (optional)");
+        TextField tagsField = new TextField();
+        tagsField.setPromptText("Tags (optional)");
+
+        GridPane grid = new GridPane();
+        grid.setHgap(10);
+        grid.setVgap(10);
+        grid.add(new Label("Keyword:"), 0, 0);
+        grid.add(keywordField, 1, 0);
+        grid.add(new Label("Type:"), 0, 1);
+        grid.add(typeCombo, 1, 1);
+        grid.add(new Label("Tags:"), 0, 2);
+        grid.add(tagsField, 1, 2);
+
+        Label status = new Label();
+        Button add = new Button("Add rule");
+        Button remove = new Button("Remove selected rule");
+
+        add.setOnAction(e -> {
+            if (keywordField.getText().isBlank() || (typeCombo.getValue() == null && tagsField.getText().isBlank())) {
+                status.setText("Enter a keyword and a type or tags.");
+                return;
+            }
+            try {
+                int changed = CategoryRules.rules.addRule(keywordField.getText(), typeCombo.getValue(), NeueDialog.parseTags(tagsField.getText()));
+                keywordField.clear();
+                typeCombo.setValue(null);
+                tagsField.clear();
+                refresh(list);
+                status.setText("Re-categorized " + changed + " records.");
+            } catch (IOException ex) {
+                status.setText("Error adding rule: " + ex.getMessage());
+            }
+        });
+
+        remove.setOnAction(e -> {
+            CategoryRules.Rule selected = list.getSelectionModel().getSelectedItem();
+            if (selected == null) return;
+            try {
+                int changed = CategoryRules.rules.deleteRule(selected.id());
+                refresh(list);
+                status.setText("Re-categorized " + changed + " records.");
+            } catch (IOException ex) {
+                status.setText("Error removing rule: " + ex.getMessage());
+            }
+        });
+
+        VBox content = new VBox(10, list, grid, new HBox(10, add, remove), status);
+        content.setPadding(new Insets(10));
+        dialog.getDialogPane().setContent(content);
+
+        refresh(list);
+        dialog.showAndWait();
+    }
+
+    // Reloads the rule list
+    private static void refresh(ListView<CategoryRules.Rule> list) {
+        try {
+            list.getItems().setAll(CategoryRules.rules.getRules());
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package dev.atomtables.financetracker;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+
+/**
+ * StatementCache wraps one connection and keeps every statement prepared on it, keyed by its SQL,
+ * so running the same query again skips SQLite's parse/plan step entirely.
+ * Cached statements are owned by the cache: callers must close result sets but never the statement.
+ * Not thread-safe; each cache belongs to whoever owns its connection.
+ */
+public class StatementCache implements AutoCloseable {
+    private final Connection conn;
+    private final HashMap<String, PreparedStatement> statements = new HashMap<>();
+
+    public StatementCache(Connection conn) {
+        this.conn = conn;
+    }
+
+    /**
+     * Returns the prepared statement for this SQL, preparing it on first use
+     */
+    public PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement stmt = statements.get(sql);
+        if (stmt == null || stmt.isClosed()) {
+            stmt = conn.prepareStatement(sql);
+            statements.put(sql, stmt);
+        }
+        stmt.clearParameters();
+        return stmt;
+    }
+
+    /**
+     * The connection the statements are prepared on
+     */
+    public Connection connection() {
+        return conn;
+    }
+
+    /**
+     * Closes every cached statement and the connection
+     */
+    @Override
+    public void close() throws SQLException {
+        for (PreparedStatement stmt : statements.values()) {
+            stmt.close();
+        }
+        statements.clear();
+        conn.close();
+    }
+}
@@ -0,0 +1,205 @@
+package dev.atomtables.financetracker;
+
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * TagIndex keeps an in-memory IdBitmap of record ids for every type and every tag, so boolean
+ * queries like "FOODDRINK AND tag:work AND NOT tag:reimbursed" resolve as bitmap AND/OR/ANDNOT
+ * instead of joins. A split record is indexed under each type it is split across.
+ * Built lazily from the ledger and kept current by its change events; use from the FX thread.
+ */
+public class TagIndex {
+    // Singleton instance, built lazily from the ledger on first use
+    public static final TagIndex index = new TagIndex();
+
+    private IdBitmap all = new IdBitmap();
+    private final EnumMap<Database.Finance.Type, IdBitmap> byType = new EnumMap<>(Database.Finance.Type.class);
+    private final Map<String, IdBitmap> byTag = new HashMap<>();
+    private long version = 0; // Bumped on every change, so callers can tell when to re-run a query
+    private boolean built = false;
+
+    private TagIndex() {
+        for (Database.Finance.Type type : Database.Finance.Type.values()) byType.put(type, new IdBitmap());
+    }
+
+    /**
+     * A fixed index over some records that doesn't follow the ledger, e.g. the archived ones a view shows
+     */
+    public static TagIndex of(Collection<Database.Finance> finances) {
+        TagIndex index = new TagIndex();
+        for (Database.Finance f : finances) index.add(f);
+        index.built = true;
+        return index;
+    }
+
+    /**
+     * Normalizes a tag as entered by the user: trimmed, lower case, inner spaces as dashes.
+     * Returns null for a blank tag.
+     */
+    public static String normalizeTag(String tag) {
+        if (tag == null || tag.isBlank()) return null;
+        return tag.strip().toLowerCase(Locale.ROOT).replaceAll("[\\s()]+", "-");
+    }
+
+    /**
+     * Builds the bitmaps once from the ledger, then follows its change events
+     */
+    public void ensureBuilt() throws IOException {
+        if (built) return;
+        ObservableList<Database.Finance> finances = Ledger.ledger.getFinances();
+        for (Database.Finance f : finances) add(f);
+        finances.addListener(follower);
+        built = true;
+    }
+
+    // Applies the ledger's change events; held in a field so reset() can unsubscribe it
+    private final ListChangeListener<Database.Finance> follower = change -> {
+        while (change.next()) {
+            for (Database.Finance f : change.getRemoved()) remove(f);
+            for (Database.Finance f : change.getAddedSubList()) add(f);
+        }
+    };
+
+    /**
+     * Drops every bitmap and stops following the ledger (for a data reset); the next use builds it again
+     */
+    public void reset() throws IOException {
+        if (built) Ledger.ledger.getFinances().removeListener(follower);
+        built = false;
+        version++;
+        all = new IdBitmap();
+        byType.replaceAll((type, ids) -> new IdBitmap());
+        byTag.clear();
+    }
+
+    private void add(Database.Finance f) {
+        version++;
+        all.add(f.id);
+        byType.get(f.type).add(f.id);
+        for (Database.Finance.Split split : f.splits) byType.get(split.type()).add(f.id);
+        for (String tag : f.tags) byTag.computeIfAbsent(tag, t -> new IdBitmap()).add(f.id);
+    }
+
+    private void remove(Database.Finance f) {
+        version++;
+        all.remove(f.id);
+        byType.get(f.type).remove(f.id);
+        for (Database.Finance.Split split : f.splits) byType.get(split.type()).remove(f.id);
+        for (String tag : f.tags) {
+            IdBitmap ids = byTag.get(tag);
+            if (ids == null) continue;
+            ids.remove(f.id);
+            if (ids.isEmpty()) byTag.remove(tag);
+        }
+    }
+
+    /**
+     * Changes every time a record is added or removed
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * Every tag currently in use, sorted
+     */
+    public Set<String> tags() {
+        return new TreeSet<>(byTag.keySet());
+    }
+
+    /**
+     * Ids of the records matching a query. Terms are type names (FOODDRINK) or tags (tag:work),
+     * combined with AND, OR and NOT (AND binds tighter than OR) and grouped with parentheses.
+     * An unknown tag matches nothing; anything else unrecognized throws IllegalArgumentException.
+     */
+    public IdBitmap query(String expression) throws IOException {
+        ensureBuilt();
+        long start = Metrics.metrics.start();
+        try {
+            Parser parser = new Parser(expression);
+            IdBitmap result = parser.or();
+            if (parser.pos < parser.tokens.size()) {
+                throw new IllegalArgumentException("Unexpected \"" + parser.tokens.get(parser.pos) + "\"");
+            }
+            // Terms share the index's own bitmaps (the operations never modify their inputs),
+            // so only a query that is a single bare term needs copying before it is handed out
+            boolean shared = result == all || byType.containsValue(result) || byTag.containsValue(result);
+            return shared ? result.copy() : result;
+        } finally {
+            Metrics.metrics.stop("tags.query.time", start);
+        }
+    }
+
+    // Recursive-descent parser that evaluates as it goes: or := and (OR and)*, and := not (AND not)*,
+    // not := NOT not | term. "x AND NOT y" runs as a single ANDNOT rather than materializing NOT y.
+    private class Parser {
+        final List<String> tokens = new ArrayList<>();
+        int pos = 0;
+
+        Parser(String expression) {
+            for (String token : expression.replace("(", " ( ").replace(")", " ) ").trim().split("\\s+")) {
+                if (!token.isEmpty()) tokens.add(token);
+            }
+            if (tokens.isEmpty()) throw new IllegalArgumentException("Empty query");
+        }
+
+        IdBitmap or() {
+            IdBitmap result = and();
+            while (accept("OR")) result = result.or(and());
+            return result;
+        }
+
+        IdBitmap and() {
+            IdBitmap result = not();
+            while (accept("AND")) {
+                if (accept("NOT")) result = result.andNot(not());
+                else result = result.and(not());
+            }
+            return result;
+        }
+
+        IdBitmap not() {
+            if (accept("NOT")) return all.andNot(not());
+            return term();
+        }
+
+        IdBitmap term() {
+            if (pos >= tokens.size()) throw new IllegalArgumentException("Query ends early");
+            String token = tokens.get(pos++);
+            if (token.equals("(")) {
+                IdBitmap result = or();
+                if (!accept(")")) throw new IllegalArgumentException("Missing )");
+                return result;
+            }
+            if (token.regionMatches(true, 0, "tag:", 0, 4)) {
+                IdBitmap ids = byTag.get(normalizeTag(token.substring(4)));
+                return ids == null ? new IdBitmap() : ids;
+            }
+            try {
+                return byType.get(Database.Finance.Type.valueOf(token.toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown type \"" + token + "\"");
+            }
+        }
+
+        boolean accept(String keyword) {
+            if (pos < tokens.size() && tokens.get(pos).equalsIgnoreCase(keyword)) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -1,8 +1,29 @@
 // FinancesView.java
 package dev.atomtables.financetracker.views;
 
+import dev.atomtables.financetracker.Accounts;
+import dev.atomtables.financetracker.AnomalyDetector;
 import dev.atomtables.financetracker.App;
+import dev.atomtables.financetracker.Archive;
+import dev.atomtables.financetracker.BulkEditDialog;
+import dev.atomtables.financetracker.ConcatList;
 import dev.atomtables.financetracker.Database;
+import dev.atomtables.financetracker.FinanceFilter;
+import dev.atomtables.financetracker.IdBitmap;
+import dev.atomtables.financetracker.Ledger;
+import dev.atomtables.financetracker.LedgerStore;
+import dev.atomtables.financetracker.Metrics;
+import dev.atomtables.financetracker.NeueDialog;
+import dev.atomtables.financetracker.RulesDialog;
+import dev.atomtables.financetracker.TagIndex;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
+import javafx.collections.transformation.SortedList;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
@@ -15,6 +36,7 @@ import javafx.scene.layout.BackgroundFill;
 import javafx.scene.layout.CornerRadii;
 import javafx.scene.paint.Color;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
 import java.io.IOException;
 import java.net.URL;
@@ -22,7 +44,10 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.text.NumberFormat;
 import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.*;
+import java.util.function.Predicate;
 
 import static dev.atomtables.financetracker.NeueDialog.addNeueFinanceToDatabase;
 
@@ -34,11 +59,55 @@ public class FinanceLogView implements Initializable {
     @FXML private TableColumn<Database.Finance, String> typeColumn;
     @FXML private TableColumn<Database.Finance, Date> dateColumn;
     @FXML private TableColumn<Database.Finance, Double> amountColumn;
+    @FXML private TableColumn<Database.Finance, List<String>> tagsColumn;
+    @FXML private TableColumn<Database.Finance, String> unusualColumn;
 
     @FXML private Label currently; // Label for showing the current filter/sort
 
+    // Filter controls; every change is combined into one FinanceFilter
+    @FXML private TextField filterText;
+    @FXML private MenuButton filterTypes;
+    @FXML private ChoiceBox<String> filterDirection;
+    @FXML private DatePicker filterFrom;
+    @FXML private DatePicker filterTo;
+    @FXML private TextField filterMin;
+    @FXML private TextField filterMax;
+    @FXML private TextField filterTags; // Boolean type/tag query, resolved through TagIndex bitmaps
+    @FXML private ComboBox<Database.Account> filterAccount; // Switches the table to one account's partition
+    private final EnumMap<Database.Finance.Type, CheckMenuItem> typeItems = new EnumMap<>(Database.Finance.Type.class);
+    private static final String ANY_DIRECTION = "Any", INCOME = "Income", SPENDING = "Spending";
+
+    // Typing in the text boxes only re-filters once the user pauses
+    private final PauseTransition typing = new PauseTransition(Duration.millis(150));
+
+    private FinanceFilter filter = FinanceFilter.NONE;
+
+    // Current tag query and its matching ids, re-resolved whenever the index changes
+    private String tagQuery;
+    private IdBitmap tagMatches;
+    private long tagMatchesVersion = -1;
+    private String sortDescription = "Sorted by date (descending)";
+
+    // Orderings used by the sort buttons (ties broken by id so order is stable)
+    private static final Comparator<Database.Finance> BY_DATE = new DateSort().thenComparing(Database.Finance::getId);
+    private static final Comparator<Database.Finance> BY_AMOUNT = new AmountSort().thenComparing(Database.Finance::getId);
+
+    // Live view of the ledger: filtered, then sorted. Both apply single-row changes as the ledger
+    // changes (the sorted list finds the position by binary search on the active comparator),
+    // so adding or deleting one record only touches one table row.
+    private FilteredList<Database.Finance> filtered;
+    private SortedList<Database.Finance> sorted;
+
+    // Closed years' records the date filter reaches, shown after the ledger's. They are read through
+    // Database (archived segments plus any not moved yet) and are read-only: the ledger doesn't hold them.
+    private final ObservableList<Database.Finance> archived = FXCollections.observableArrayList();
+    private final Set<Integer> archivedIds = new HashSet<>();
+    private TagIndex archivedTags = TagIndex.of(List.of()); // Tag queries match archived records through this
+    private FinanceFilter archivedRange; // Dates and account the archived records were read for; null = none
+
     @Override
     public void initialize(URL url, ResourceBundle bundle) {
+        long start = Metrics.metrics.start();
         try {
             // Configure table column bindings to Finance object properties
             nameColumn.setCellValueFactory(new PropertyValueFactory<>("name"));
@@ -78,72 +147,365 @@ public class FinanceLogView implements Initializable {
                 }
             });
 
-            // Load finance records, sort by date, then display in reverse (newest first)
-            List<Database.Finance> l = Database.database.getFinances();
-            l.sort(new DateSort());
-            financeTable.getItems().setAll(l.reversed());
+            // Show tags as a comma-separated list
+            tagsColumn.setCellValueFactory(new PropertyValueFactory<>("tags"));
+            tagsColumn.setCellFactory(column -> new TableCell<Database.Finance, List<String>>() {
+                @Override
+                protected void updateItem(List<String> item, boolean empty) {
+                    super.updateItem(item, empty);
+                    setText(empty || item == null ? null : String.join(", ", item));
+                }
+            });
+
+            // Explain why a record was flagged as unusual spending
+            unusualColumn.setCellValueFactory(cell -> {
+                AnomalyDetector.Flag flag = AnomalyDetector.anomalies.flagFor(cell.getValue().id);
+                return new SimpleStringProperty(flag == null ? "" : flag.reason());
+            });
+
+            // Several rows can be selected for the bulk actions
+            financeTable.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+
+            // Subscribe the tag index and anomaly detector before the filtered list,
+            // so they have seen a change before the table shows it
+            TagIndex.index.ensureBuilt();
+            AnomalyDetector.anomalies.ensureBuilt();
+
+            // Back the table with a live sorted/filtered view of the shown account's records
+            showAccount(Accounts.accounts.currentId());
+            // Clicking a column header re-sorts the live view instead of the (read-only) items
+            financeTable.setSortPolicy(table -> {
+                if (table.getComparator() != null) {
+                    sorted.setComparator(table.getComparator());
+                    currently.setText("Sorted by column");
+                }
+                return true;
+            });
+
+            // Build the filter controls; each one re-filters the live view when it changes
+            for (Database.Finance.Type type : Database.Finance.Type.values()) {
+                CheckMenuItem item = new CheckMenuItem(type.value);
+                item.setOnAction(e -> updateFilter());
+                typeItems.put(type, item);
+                filterTypes.getItems().add(item);
+            }
+            filterDirection.getItems().setAll(ANY_DIRECTION, INCOME, SPENDING);
+            filterDirection.setValue(ANY_DIRECTION);
+            filterDirection.setOnAction(e -> updateFilter());
+            filterFrom.setOnAction(e -> updateFilter());
+            filterTo.setOnAction(e -> updateFilter());
+            typing.setOnFinished(e -> updateFilter());
+            filterAccount.getItems().setAll(Accounts.accounts.choices());
+            Database.Account current = Accounts.accounts.currentProperty().get();
+            filterAccount.setValue(current == null ? Accounts.ALL : current);
+            filterAccount.setOnAction(e -> {
+                Accounts.accounts.select(filterAccount.getValue());
+                try {
+                    showAccount(Accounts.accounts.currentId());
+                } catch (IOException ex) {
+                    System.out.println(ex.getMessage());
+                }
+            });
+            for (TextField field : List.of(filterText, filterMin, filterMax, filterTags)) {
+                field.textProperty().addListener((obs, old, text) -> typing.playFromStart());
+            }
+
+            // Show finance records sorted by date, newest first
+            sortByDateDescending();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        Metrics.metrics.stop("view.FinanceLogView.initialize.time", start);
+    }
+
+    /**
+     * Points the table at one account's partition of the ledger (null = every record), keeping the
+     * current filter and sort. Other accounts' records are never looked at.
+     */
+    private void showAccount(Integer account) throws IOException {
+        Comparator<? super Database.Finance> sort = sorted == null ? null : sorted.getComparator();
+        Predicate<? super Database.Finance> predicate = filtered == null ? null : filtered.getPredicate();
+        filtered = new FilteredList<>(new ConcatList<>(Ledger.ledger.getFinances(account), archived), predicate);
+        sorted = new SortedList<>(filtered, sort);
+        financeTable.setItems(sorted);
+        // Keep the match count in the status label current as records come and go
+        filtered.addListener((ListChangeListener<Database.Finance>) change -> showStatus());
+        if (sort != null) showStatus();
+        loadArchived();
+    }
+
+    /**
+     * Reads the closed years' records in the date filter's range in the background, when it reaches
+     * back past the open years. Without a date filter only the ledger's open years are shown.
+     */
+    private void loadArchived() {
+        long firstOpen = Archive.firstOpenMillis();
+        // Only the SQLite store archives; with the others the ledger already holds every year
+        boolean reaches = LedgerStore.onDatabase() && (filter.from() != null || filter.to() != null)
+                && (filter.from() == null || filter.from() < firstOpen);
+        FinanceFilter range = !reaches ? null : FinanceFilter.NONE
+                .withDates(filter.from(), filter.to() == null ? firstOpen : Math.min(filter.to(), firstOpen))
+                .withAccount(Accounts.accounts.currentId());
+        if (Objects.equals(range, archivedRange)) return;
+        archivedRange = range;
+        if (range == null) {
+            archivedIds.clear();
+            archivedTags = TagIndex.of(List.of());
+            tagMatchesVersion = -1;
+            archived.clear();
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                List<Database.Finance> rows = Database.database.getFinances(range);
+                Platform.runLater(() -> showArchived(range, rows));
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+            }
+        }, "archive-read");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Shows archived records read for a range, unless the filter has moved on since. Records the ledger
+    // holds (dated back this session) are left out, so none shows twice.
+    private void showArchived(FinanceFilter range, List<Database.Finance> rows) {
+        if (!range.equals(archivedRange)) return;
+        List<Database.Finance> shown = new ArrayList<>(rows.size());
+        try {
+            for (Database.Finance f : rows) if (Ledger.ledger.getFinance(f.id) == null) shown.add(f);
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+        archivedIds.clear();
+        for (Database.Finance f : shown) archivedIds.add(f.id);
+        archivedTags = TagIndex.of(shown);
+        tagMatchesVersion = -1; // Before the rows arrive, so the tag query sees them
+        archived.setAll(shown);
+        showStatus();
+    }
+
+    /**
+     * Changes the sort of the live view; rows are re-ordered in memory without fetching anything again.
+     */
+    private void show(Comparator<Database.Finance> sort, String description) {
+        financeTable.getSortOrder().clear();
+        sorted.setComparator(sort);
+        sortDescription = description;
+        showStatus();
+    }
+
+    /**
+     * Rebuilds the filter from the controls and re-filters the live view if it changed.
+     * Rows stay in memory; only the predicate is swapped.
+     */
+    private void updateFilter() {
+        typing.stop();
+        EnumSet<Database.Finance.Type> types = EnumSet.noneOf(Database.Finance.Type.class);
+        typeItems.forEach((type, item) -> { if (item.isSelected()) types.add(type); });
+        filterTypes.setText(types.isEmpty() ? "All types" : types.size() == 1 ? types.iterator().next().value : types.size() + " types");
+
+        String direction = filterDirection.getValue();
+        FinanceFilter next = FinanceFilter.NONE
+                .withText(filterText.getText())
+                .withTypes(types)
+                .withDirection(INCOME.equals(direction) ? Boolean.TRUE : SPENDING.equals(direction) ? Boolean.FALSE : null)
+                .withDates(startOfDay(filterFrom.getValue()), startOfDay(filterTo.getValue() == null ? null : filterTo.getValue().plusDays(1)))
+                .withAmounts(parseAmount(filterMin), parseAmount(filterMax));
+        String nextTagQuery = filterTags.getText().isBlank() ? null : filterTags.getText().strip();
+        if (next.equals(filter) && Objects.equals(nextTagQuery, tagQuery)) return;
+
+        long start = Metrics.metrics.start();
+        filter = next;
+        tagQuery = nextTagQuery;
+        tagMatchesVersion = -1;
+        if (tagQuery != null) {
+            filtered.setPredicate(finance -> filter.test(finance) && tagMatches().contains(finance.id));
+        } else {
+            filtered.setPredicate(filter.isEmpty() ? null : filter);
+        }
+        Metrics.metrics.stop("view.FinanceLogView.filter.time", start);
+        showStatus();
+        loadArchived();
+    }
+
+    // Ids matching the tag query in the ledger and in the archived records shown, resolved again only
+    // when the index has changed since last time. An invalid query matches nothing (the status label says why).
+    private IdBitmap tagMatches() {
+        if (tagMatchesVersion != TagIndex.index.version()) {
+            try {
+                tagMatches = TagIndex.index.query(tagQuery).or(archivedTags.query(tagQuery));
+            } catch (IllegalArgumentException | IOException e) {
+                tagMatches = new IdBitmap();
+            }
+            tagMatchesVersion = TagIndex.index.version();
+        }
+        return tagMatches;
+    }
+
+    // Shows the current sort, plus the filter and match count when one is set
+    private void showStatus() {
+        String status = sortDescription;
+        if (!filter.isEmpty()) status += "; showing " + filter.describe();
+        if (tagQuery != null) {
+            try {
+                TagIndex.index.query(tagQuery);
+                status += (filter.isEmpty() ? "; showing " : ", ") + tagQuery;
+            } catch (IllegalArgumentException | IOException e) {
+                status += "; invalid tag query: " + e.getMessage();
+            }
+        }
+        if (!filter.isEmpty() || tagQuery != null) status += " (" + filtered.size() + ")";
+        if (!archived.isEmpty()) status += ", with archived years (read-only)";
+        if (Accounts.accounts.currentId() != null) status += " in " + Accounts.accounts.currentProperty().get().name();
+        currently.setText(status);
+    }
+
+    // Opens the categorization rules; changes re-categorize the ledger, which updates the table live
+    @FXML void editRules() {
+        RulesDialog.showDialog();
+    }
+
+    // Replaces the tags of the selected record
+    @FXML void editTags() {
+        Database.Finance selected = financeTable.getSelectionModel().getSelectedItem();
+        if (selected == null || archivedIds.contains(selected.id)) return;
+        TextInputDialog dialog = new TextInputDialog(String.join(", ", selected.tags));
+        dialog.setTitle("Edit Tags");
+        dialog.setHeaderText("Tags for " + selected.name);
+        dialog.setContentText("Comma-separated tags:");
+        dialog.showAndWait().ifPresent(text -> {
+            try {
+                Ledger.ledger.setTags(selected.id, NeueDialog.parseTags(text));
+            } catch (IOException e) {
+                System.out.println("Error updating tags: " + e.getMessage());
+            }
+        });
+    }
+
+    // Ids of the selected records, leaving out archived ones (read-only)
+    private List<Integer> selectedIds() {
+        List<Integer> ids = new ArrayList<>();
+        for (Database.Finance f : financeTable.getSelectionModel().getSelectedItems()) {
+            if (!archivedIds.contains(f.id)) ids.add(f.id);
+        }
+        return ids;
+    }
+
+    // Deletes every selected record after confirmation, in one batched write
+    @FXML void removeSelected() {
+        List<Integer> ids = selectedIds();
+        if (ids.isEmpty()) return;
+        Alert a = new Alert(Alert.AlertType.CONFIRMATION);
+        a.setTitle("Remove Finance Logs");
+        a.setHeaderText("Remove " + ids.size() + (ids.size() == 1 ? " record?" : " records?"));
+        a.setContentText("This can be undone with Ctrl+Z.");
+        a.getButtonTypes().setAll(ButtonType.YES, ButtonType.NO);
+        a.showAndWait().filter(ButtonType.YES::equals).ifPresent(yes -> {
+            try {
+                Ledger.ledger.deleteFinances(ids);
+            } catch (IOException e) {
+                System.out.println("Error removing records: " + e.getMessage());
+            }
+        });
+    }
+
+    // Gives every selected record the same type, in one batched write
+    @FXML void recategorizeSelected() {
+        List<Integer> ids = selectedIds();
+        if (ids.isEmpty()) return;
+        ChoiceDialog<Database.Finance.Type> dialog = new ChoiceDialog<>(
+                financeTable.getSelectionModel().getSelectedItem().type, Database.Finance.Type.values());
+        dialog.setTitle("Re-categorize");
+        dialog.setHeaderText("New type for " + ids.size() + (ids.size() == 1 ? " record" : " records"));
+        dialog.setContentText("Type:");
+        dialog.showAndWait().ifPresent(type -> {
+            try {
+                Ledger.ledger.editFinances(ids, new Database.BulkEdit(null, type, null, List.of()));
+            } catch (IOException e) {
+                System.out.println("Error re-categorizing records: " + e.getMessage());
+            }
+        });
+    }
+
+    // Applies one edit (name, type, account, added tags) to every selected record, in one batched write
+    @FXML void editSelected() {
+        List<Integer> ids = selectedIds();
+        if (ids.isEmpty()) return;
+        BulkEditDialog.showDialog(ids.size()).ifPresent(edit -> {
+            try {
+                Ledger.ledger.editFinances(ids, edit);
+            } catch (IOException e) {
+                System.out.println("Error editing records: " + e.getMessage());
+            }
+        });
+    }
+
+    // Epoch millis at the start of a picked day, or null if none is picked
+    private static Long startOfDay(LocalDate date) {
+        return date == null ? null : date.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    // Parses an amount box, treating blank or unparseable text as no bound
+    private static Double parseAmount(TextField field) {
+        try {
+            return field.getText().isBlank() ? null : Double.valueOf(field.getText().strip());
+        } catch (NumberFormatException e) {
+            return null;
+        }
     }
 
     // Sorts and displays finance records by ascending date
     @FXML void sortByDateAscending() throws IOException {
-        List<Database.Finance> l = Database.database.getFinances();
-        l.sort(new DateSort());
-        financeTable.getItems().setAll(l);
-        currently.setText("Sorted by date (ascending)");
+        show(BY_DATE, "Sorted by date (ascending)");
     }
 
     // Sorts and displays finance records by descending date
     @FXML void sortByDateDescending() throws IOException {
-        List<Database.Finance> l = Database.database.getFinances();
-        l.sort(new DateSort());
-        financeTable.getItems().setAll(l.reversed());
-        currently.setText("Sorted by date (descending)");
+        show(BY_DATE.reversed(), "Sorted by date (descending)");
     }
 
     // Sorts and displays finance records by ascending amount
     @FXML void sortByAmountAscending() throws IOException {
-        List<Database.Finance> l = Database.database.getFinances();
-        l.sort(new AmountSort());
-        financeTable.getItems().setAll(l);
-        currently.setText("Sorted by amount (ascending)");
+        show(BY_AMOUNT, "Sorted by amount (ascending)");
     }
 
     // Sorts and displays finance records by descending amount
     @FXML void sortByAmountDescending() throws IOException {
-        List<Database.Finance> l = Database.database.getFinances();
-        l.sort(new AmountSort());
-        financeTable.getItems().setAll(l.reversed());
-        currently.setText("Sorted by amount (descending)");
+        show(BY_AMOUNT.reversed(), "Sorted by amount (descending)");
     }
 
-    // Filters and displays only negative amounts (spending)
+    // Adds a spending-only facet to the current filter
     @FXML void filterBySpending() throws IOException {
-        List<Database.Finance> l = Database.database.getFinances();
-        l.removeIf(finance -> finance.amount >= 0);
-        financeTable.getItems().setAll(l.reversed());
-        currently.setText("Filtered by spending");
+        filterDirection.setValue(SPENDING);
+        updateFilter();
     }
 
-    // Filters and displays only positive amounts (income)
+    // Adds an income-only facet to the current filter
     @FXML void filterByIncome() throws IOException {
-        List<Database.Finance> l = Database.database.getFinances();
-        l.removeIf(finance -> finance.amount <= 0);
-        financeTable.getItems().setAll(l.reversed());
-        currently.setText("Filtered by income");
+        filterDirection.setValue(INCOME);
+        updateFilter();
     }
 
-    // Filters and displays only finance records within the past month
+    // Restricts the current filter to the past month
     @FXML void filterByLastMonth() throws IOException {
-        List<Database.Finance> l = Database.database.getFinances();
-        Calendar cal = Calendar.getInstance();
-        cal.add(Calendar.MONTH, -1); // Get date one month ago
-        Date oneMonthAgo = cal.getTime();
-        l.removeIf(finance -> finance.date.before(oneMonthAgo));
-        financeTable.getItems().setAll(l.reversed());
-        currently.setText("Filtered by logs within the last month");
+        filterFrom.setValue(LocalDate.now().minusMonths(1));
+        filterTo.setValue(null);
+        filterTags.clear();
+        updateFilter();
+    }
+
+    // Resets every filter control and shows all records again
+    @FXML void clearFilters() {
+        filterText.clear();
+        filterMin.clear();
+        filterMax.clear();
+        filterTags.clear();
+        typeItems.values().forEach(item -> item.setSelected(false));
+        filterDirection.setValue(ANY_DIRECTION);
+        filterFrom.setValue(null);
+        filterTo.setValue(null);
+        updateFilter();
     }
 
     // Navigation methods to different tabs in the application
@@ -161,7 +523,7 @@ public class FinanceLogView implements Initializable {
 
     // Opens the dialog to add a new finance record
     @FXML void addFinance() {
-        addNeueFinanceToDatabase(Database.database);
+        addNeueFinanceToDatabase(Ledger.ledger);
     }
 }
 
@@ -1,18 +1,42 @@
 package dev.atomtables.financetracker.views;
 
 import dev.atomtables.financetracker.App;
+import dev.atomtables.financetracker.Archive;
 import dev.atomtables.financetracker.Database;
+import dev.atomtables.financetracker.Forecast;
+import dev.atomtables.financetracker.Ledger;
+import dev.atomtables.financetracker.LedgerStore;
+import dev.atomtables.financetracker.MerchantLeaderboard;
+import dev.atomtables.financetracker.Metrics;
+import dev.atomtables.financetracker.QueryCache;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.collections.ListChangeListener;
+import javafx.collections.WeakListChangeListener;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.Slider;
+import javafx.scene.layout.VBox;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.util.Duration;
 
 import java.io.IOException;
 import java.net.URL;
+import java.text.NumberFormat;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 import java.util.ResourceBundle;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static java.lang.Math.abs;
 
@@ -20,27 +44,97 @@ public class FinanceTrendsView implements Initializable {
     @FXML
     private Label escape;
 
+    // Forecast chart and its what-if controls
+    @FXML private Canvas forecastChart;
+    @FXML private Slider incomeSlider;
+    @FXML private Slider spendingSlider;
+    @FXML private Label incomeLabel;
+    @FXML private Label spendingLabel;
+    @FXML private Label horizonSummary;
+    @FXML private Label forecastTiming;
 
+    private static final int FORECAST_DAYS = 365;
+    private static final int FORECAST_PATHS = 4000;
+    private static final int[] SUMMARY_MONTHS = {3, 6, 12};
+
+    // Simulations run here, off the FX thread; only the newest request's result is drawn
+    private static final ExecutorService forecaster = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "forecast");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicLong forecastRequest = new AtomicLong();
+    private final AtomicLong fitRequest = new AtomicLong();
+    private Forecast.Model model; // Null until the first fit is done
+    // Ledger changes come in bursts (an import, a bulk edit), so the model is refit once they settle
+    private final PauseTransition refit = new PauseTransition(Duration.millis(300));
+
+    // Top merchants, read from the incrementally maintained leaderboard
+    @FXML private ChoiceBox<String> leaderScope;
+    @FXML private ChoiceBox<String> leaderMetric;
+    @FXML private VBox leaders;
+    private static final int LEADERS_SHOWN = 8;
+    private static final String THIS_MONTH = "This month", BY_SPEND = "By spend", BY_COUNT = "By visits";
+
+    // All-time totals, adjusted in place as the ledger changes
+    private double credits = 0, debits = 0;
+
+    // Applies ledger adds/removes to the totals without rescanning.
+    // Held in a field because the ledger only keeps a weak reference to it.
+    private final ListChangeListener<Database.Finance> ledgerListener = change -> {
+        while (change.next()) {
+            for (var finance : change.getRemoved()) tally(finance.amount, -1);
+            for (var finance : change.getAddedSubList()) tally(finance.amount, 1);
+        }
+        showAdvice();
+        showLeaders();
+        // The history changed, so refit the forecast model once the changes stop
+        refit.playFromStart();
+    };
 
     @Override
     public void initialize(URL url, ResourceBundle resourceBundle) {
-        Database db = Database.database;
-        List<Database.Finance> finances = null;
+        long start = Metrics.metrics.start();
         try {
-            finances = db.getFinances();
+            // All-time totals, served from the query cache when nothing changed since the last visit
+            QueryCache.Totals totals = QueryCache.cache.totals(QueryCache.Query.ALL);
+            credits = totals.credits();
+            debits = totals.debits();
+            showAdvice();
+
+            // Fit the forecast model in the background; moving a slider only re-runs the simulation
+            incomeSlider.valueProperty().addListener((obs, old, value) -> runForecast());
+            spendingSlider.valueProperty().addListener((obs, old, value) -> runForecast());
+            refit.setOnFinished(e -> fitForecast());
+            fitForecast();
+
+            // The leaderboard subscribes to the ledger before this view, so it is current when the view redraws
+            // With SQLite the ledger only holds the open years (older ones are archived), so say how far back it goes
+            leaderScope.getItems().setAll(THIS_MONTH, LedgerStore.onDatabase() ? "Since " + Archive.firstOpenYear() : "All time");
+            leaderScope.setValue(THIS_MONTH);
+            leaderMetric.getItems().setAll(BY_SPEND, BY_COUNT);
+            leaderMetric.setValue(BY_SPEND);
+            leaderScope.setOnAction(e -> showLeaders());
+            leaderMetric.setOnAction(e -> showLeaders());
+            MerchantLeaderboard.leaderboard.ensureBuilt();
+            showLeaders();
+
+            // Follow new and deleted records from here on
+            Ledger.ledger.getFinances().addListener(new WeakListChangeListener<>(ledgerListener));
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        Metrics.metrics.stop("view.FinanceTrendsView.initialize.time", start);
+    }
 
-        double thisMonthCredits = 0, thisMonthDebits = 0;
-        double lastMonthCredits = 0, lastMonthDebits = 0;
-
-        for (var finance : finances) {
-            if (finance.amount > 0) thisMonthCredits += finance.amount;
-            else thisMonthDebits += finance.amount;
-        }
+    // Adds (sign = 1) or removes (sign = -1) one transaction from the totals
+    private void tally(double amount, int sign) {
+        if (amount > 0) credits += sign * amount;
+        else debits += sign * amount;
+    }
 
-        if (abs(thisMonthCredits) > abs(thisMonthDebits)) {
+    private void showAdvice() {
+        if (abs(credits) > abs(debits)) {
             escape.setText("Good! You are making more than you spend. It is recommended that you take " +
                     "50% of your extra income and place it into investment opportunities, and use the " +
                     "other 50% for a normal Savings account in the need of an emergency.");
@@ -51,6 +145,146 @@ public class FinanceTrendsView implements Initializable {
         }
     }
 
+    /**
+     * Lists the top merchants for the chosen scope and metric
+     */
+    private void showLeaders() {
+        try {
+            List<MerchantLeaderboard.Entry> top = MerchantLeaderboard.leaderboard.top(
+                    THIS_MONTH.equals(leaderScope.getValue()) ? MerchantLeaderboard.Scope.MONTH : MerchantLeaderboard.Scope.ALL_TIME,
+                    BY_SPEND.equals(leaderMetric.getValue()) ? MerchantLeaderboard.Metric.SPEND : MerchantLeaderboard.Metric.COUNT,
+                    LEADERS_SHOWN);
+            leaders.getChildren().clear();
+            if (top.isEmpty()) leaders.getChildren().add(leaderLabel("No spending yet"));
+            NumberFormat money = NumberFormat.getCurrencyInstance(Locale.US);
+            for (int i = 0; i < top.size(); i++) {
+                MerchantLeaderboard.Entry entry = top.get(i);
+                leaders.getChildren().add(leaderLabel((i + 1) + ". " + entry.name() + "  " + money.format(entry.spent())
+                        + " (" + entry.count() + (entry.count() == 1 ? " visit)" : " visits)")));
+            }
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    private static Label leaderLabel(String text) {
+        Label label = new Label(text);
+        label.setTextFill(Color.WHITE);
+        label.setFont(new Font(14));
+        return label;
+    }
+
+    /**
+     * Fits the forecast model on the forecaster thread from the history as it is now, then simulates it.
+     * Only the newest fit is kept.
+     */
+    private void fitForecast() {
+        Forecast.History history;
+        try {
+            history = Forecast.history();
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+        long request = fitRequest.incrementAndGet();
+        forecaster.execute(() -> {
+            if (request != fitRequest.get()) return; // A newer fit is already queued
+            Forecast.Model fitted = Forecast.model(history, FORECAST_DAYS);
+            Platform.runLater(() -> {
+                if (request != fitRequest.get()) return;
+                model = fitted;
+                runForecast();
+            });
+        });
+    }
+
+    /**
+     * Simulates the forecast with the current slider values in the background and draws it when done.
+     * Requests made while one is running replace each other, so dragging a slider stays responsive.
+     */
+    private void runForecast() {
+        incomeLabel.setText("Income: " + Math.round(incomeSlider.getValue()) + "%");
+        spendingLabel.setText("Spending: " + Math.round(spendingSlider.getValue()) + "%");
+        if (model == null) return; // The first fit will run it
+        Forecast.Model current = model;
+        Forecast.Assumptions assumptions = new Forecast.Assumptions(incomeSlider.getValue() / 100, spendingSlider.getValue() / 100);
+        long request = forecastRequest.incrementAndGet();
+        forecaster.execute(() -> {
+            if (request != forecastRequest.get()) return; // A newer request is already queued
+            Forecast.Result result = Forecast.simulate(current, assumptions, FORECAST_PATHS);
+            Platform.runLater(() -> {
+                if (request == forecastRequest.get()) drawForecast(result);
+            });
+        });
+    }
+
+    // Draws the 10-90 and 25-75 percentile bands and the median, and summarizes 3/6/12 months out
+    private void drawForecast(Forecast.Result result) {
+        GraphicsContext g = forecastChart.getGraphicsContext2D();
+        double w = forecastChart.getWidth(), h = forecastChart.getHeight();
+        double[][] bands = result.bands();
+        int points = result.days().length;
+
+        double min = 0, max = 0;
+        for (int i = 0; i < points; i++) {
+            min = Math.min(min, bands[0][i]);
+            max = Math.max(max, bands[bands.length - 1][i]);
+        }
+        if (max == min) max = min + 1;
+        double pad = 30, top = 10, bottom = h - 30;
+        double finalMin = min, finalMax = max;
+        java.util.function.DoubleUnaryOperator y = v -> bottom - (v - finalMin) / (finalMax - finalMin) * (bottom - top);
+        java.util.function.IntToDoubleFunction x = i -> pad + i * (w - 2 * pad) / (points - 1);
+
+        g.setFill(Color.web("#002440"));
+        g.fillRect(0, 0, w, h);
+        fillBand(g, bands[0], bands[4], x, y, Color.web("#18b88a55"));
+        fillBand(g, bands[1], bands[3], x, y, Color.web("#18b88aaa"));
+        g.setStroke(Color.WHITE);
+        g.setLineWidth(2);
+        g.beginPath();
+        for (int i = 0; i < points; i++) {
+            if (i == 0) g.moveTo(x.applyAsDouble(i), y.applyAsDouble(bands[2][i]));
+            else g.lineTo(x.applyAsDouble(i), y.applyAsDouble(bands[2][i]));
+        }
+        g.stroke();
+
+        // Zero line and month markers
+        g.setLineWidth(1);
+        g.setStroke(Color.web("#ff5050"));
+        g.strokeLine(pad, y.applyAsDouble(0), w - pad, y.applyAsDouble(0));
+        g.setFill(Color.WHITE);
+        StringBuilder summary = new StringBuilder();
+        NumberFormat money = NumberFormat.getCurrencyInstance(Locale.US);
+        money.setMaximumFractionDigits(0);
+        for (int months : SUMMARY_MONTHS) {
+            int day = (int) (months * 365.25 / 12);
+            double px = pad + Math.min(1, day / (double) result.days()[points - 1]) * (w - 2 * pad);
+            g.setStroke(Color.web("#ffffff44"));
+            g.strokeLine(px, top, px, bottom);
+            g.fillText(months + " mo", px - 14, h - 10);
+            summary.append(months).append(" months: ").append(money.format(result.at(2, day)))
+                    .append(" (").append(money.format(result.at(0, day))).append(" to ")
+                    .append(money.format(result.at(4, day))).append(")\n");
+        }
+        horizonSummary.setText(summary.toString().trim());
+        forecastTiming.setText(result.paths() + " paths in " + result.nanos() / 1_000_000 + " ms; bands are 10-90% and 25-75%");
+    }
+
+    private static void fillBand(GraphicsContext g, double[] low, double[] high,
+                                 java.util.function.IntToDoubleFunction x, java.util.function.DoubleUnaryOperator y, Color color) {
+        int n = low.length;
+        double[] xs = new double[n * 2], ys = new double[n * 2];
+        for (int i = 0; i < n; i++) {
+            xs[i] = x.applyAsDouble(i);
+            ys[i] = y.applyAsDouble(high[i]);
+            xs[n * 2 - 1 - i] = x.applyAsDouble(i);
+            ys[n * 2 - 1 - i] = y.applyAsDouble(low[i]);
+        }
+        g.setFill(color);
+        g.fillPolygon(xs, ys, n * 2);
+    }
+
     @FXML void goHome() throws IOException {
         App.addRoot("tabs/MainView");
     }
@@ -1,17 +1,36 @@
 package dev.atomtables.financetracker.views;
 
+import dev.atomtables.financetracker.AccountsDialog;
+import dev.atomtables.financetracker.Accounts;
+import dev.atomtables.financetracker.AnomalyDetector;
 import dev.atomtables.financetracker.App;
+import dev.atomtables.financetracker.BackupsDialog;
+import dev.atomtables.financetracker.Budgets;
+import dev.atomtables.financetracker.BudgetsDialog;
+import dev.atomtables.financetracker.DailyTotals;
+import dev.atomtables.financetracker.DashboardSnapshot;
+import dev.atomtables.financetracker.DataReset;
 import dev.atomtables.financetracker.Database;
+import dev.atomtables.financetracker.Ledger;
+import dev.atomtables.financetracker.Metrics;
+import dev.atomtables.financetracker.QueryCache;
+import dev.atomtables.financetracker.RecurringDetector;
 import javafx.application.Platform;
+import javafx.collections.ListChangeListener;
+import javafx.collections.WeakListChangeListener;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonType;
+import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
-import javafx.stage.Stage;
+import javafx.scene.layout.VBox;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
 
 import java.awt.*;
-import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URL;
@@ -19,12 +38,12 @@ import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.time.LocalDate;
 import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.ResourceBundle;
 
-import static dev.atomtables.financetracker.App.primaryStage;
 import static dev.atomtables.financetracker.NeueDialog.addNeueFinanceToDatabase;
 
 public class MainView implements Initializable {
@@ -33,45 +52,113 @@ public class MainView implements Initializable {
     @FXML private Label whoareyou;
     @FXML private Label mainmoney;
 
+    // Which account the monthly figures cover; switching reads that account's cached totals only
+    @FXML private ComboBox<Database.Account> accountPicker;
+    private Integer account; // null = every account
+
     // UI labels for monthly financial summary
     @FXML private Label monthCreditIn;
     @FXML private Label monthDebitOut;
     @FXML private Label monthPercentIn;
     @FXML private Label monthPercentOut;
 
+    // Calendar heatmap of daily spending
+    @FXML private Canvas heatmap;
+    private static final Color HEATMAP_EMPTY = Color.web("#002440");
+    private static final Color HEATMAP_FULL = Color.web("#ff5050");
+    // Smallest cell drawn, in pixels; history older than the weeks that fit at this size is left off
+    private static final double HEATMAP_MIN_CELL = 3;
+
+    // Expected recurring transactions in the next UPCOMING_DAYS days
+    @FXML private VBox upcoming;
+    private static final int UPCOMING_DAYS = 30;
+    private static final int UPCOMING_SHOWN = 5;
+
+    // Most recent budget alert and unusual-spending flag
+    @FXML private Label budgetAlert;
+    @FXML private Label anomalyAlert;
+
+    // Running monthly totals, adjusted in place as the ledger changes
+    private long thisMonthStart, lastMonthStart; // epoch millis
+    private double thisMonthCredits, thisMonthDebits;
+    private double lastMonthCredits, lastMonthDebits;
+
+    // The user shown in the greeting; null while only the startup snapshot is showing
+    private Database.User user;
+
+    // The snapshot App read at launch, painted by the first dashboard shown (later ones find the ledger loaded)
+    private static DashboardSnapshot launchSnapshot;
+
+    // Applies ledger adds/removes to the monthly totals and heatmap without rescanning.
+    // Held in a field because the ledger only keeps a weak reference to it.
+    private final ListChangeListener<Database.Finance> ledgerListener = change -> {
+        while (change.next()) {
+            for (var finance : change.getRemoved()) if (shown(finance)) tally(finance.date.getTime(), finance.amount, -1);
+            for (var finance : change.getAddedSubList()) if (shown(finance)) tally(finance.date.getTime(), finance.amount, 1);
+        }
+        showMonthlyStats();
+        try {
+            drawHeatmap();
+            showUpcoming();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    };
+
+    // Shows budget alerts as they are published. Weakly referenced, like ledgerListener.
+    private final ListChangeListener<Budgets.Alert> alertListener = change -> showBudgetAlert();
+    private final ListChangeListener<AnomalyDetector.Flag> flagListener = change -> showAnomaly();
+
     /**
      * Calculates monthly credit and debit summaries and their percentage changes from last month.
      */
     public void calc() throws IOException {
-        Database db = Database.database;
-        List<Database.Finance> finances = db.getFinances();
+        monthBoundaries();
+
+        // Totals for this month and last month, served from the query cache when nothing in them changed.
+        // For every account, the cache adds up the per-account totals.
+        QueryCache.Totals thisMonth = QueryCache.cache.totals(QueryCache.Query.of(thisMonthStart, Long.MAX_VALUE, null, null, account));
+        QueryCache.Totals lastMonth = QueryCache.cache.totals(QueryCache.Query.of(lastMonthStart, thisMonthStart, null, null, account));
+        thisMonthCredits = thisMonth.credits(); thisMonthDebits = thisMonth.debits();
+        lastMonthCredits = lastMonth.credits(); lastMonthDebits = lastMonth.debits();
+
+        showMonthlyStats();
+    }
 
-        // Calculate date boundaries
-        LocalDate now = LocalDate.now();
-        LocalDate startOfThisMonth = now.withDayOfMonth(1);
+    // Calculates the start of this month and last month
+    private void monthBoundaries() {
+        LocalDate startOfThisMonth = LocalDate.now().withDayOfMonth(1);
         LocalDate startOfLastMonth = startOfThisMonth.minusMonths(1);
 
-        Date thisMonthStartDate = Date.from(startOfThisMonth.atStartOfDay(ZoneId.systemDefault()).toInstant());
-        Date lastMonthStartDate = Date.from(startOfLastMonth.atStartOfDay(ZoneId.systemDefault()).toInstant());
+        thisMonthStart = startOfThisMonth.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        lastMonthStart = startOfLastMonth.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
 
-        double thisMonthCredits = 0, thisMonthDebits = 0;
-        double lastMonthCredits = 0, lastMonthDebits = 0;
+    // True if a record belongs to the account being shown
+    private boolean shown(Database.Finance finance) {
+        return account == null || finance.accountId == account;
+    }
 
-        // Categorize each transaction by date and type
-        for (var finance : finances) {
-            Date date = finance.date;
-            boolean inThisMonth = !date.before(thisMonthStartDate);
-            boolean inLastMonth = date.before(thisMonthStartDate) && !date.before(lastMonthStartDate);
+    /**
+     * Adds (sign = 1) or removes (sign = -1) one transaction from the monthly totals.
+     */
+    private void tally(long date, double amount, int sign) {
+        boolean inThisMonth = date >= thisMonthStart;
+        boolean inLastMonth = date < thisMonthStart && date >= lastMonthStart;
 
-            if (inThisMonth) {
-                if (finance.amount > 0) thisMonthCredits += finance.amount;
-                else thisMonthDebits += finance.amount;
-            } else if (inLastMonth) {
-                if (finance.amount > 0) lastMonthCredits += finance.amount;
-                else lastMonthDebits += finance.amount;
-            }
+        if (inThisMonth) {
+            if (amount > 0) thisMonthCredits += sign * amount;
+            else thisMonthDebits += sign * amount;
+        } else if (inLastMonth) {
+            if (amount > 0) lastMonthCredits += sign * amount;
+            else lastMonthDebits += sign * amount;
         }
+    }
 
+    /**
+     * Shows the current monthly totals and percent changes.
+     */
+    private void showMonthlyStats() {
         // Update UI with formatted data
         monthCreditIn.setText(NumberFormat.getCurrencyInstance().format(thisMonthCredits));
         monthDebitOut.setText(NumberFormat.getCurrencyInstance().format(thisMonthDebits));
@@ -79,6 +166,120 @@ public class MainView implements Initializable {
         double debitChange = percentChange(lastMonthDebits, thisMonthDebits);
         monthPercentIn.setText(new DecimalFormat("#0.00").format(creditChange) + "%");
         monthPercentOut.setText(new DecimalFormat("#0.00").format(debitChange) + "%");
+
+        // Remember what was shown so the next launch can paint it straight away (it starts on every account),
+        // saved in the background once changes settle.
+        // A dashboard left behind by a data reset no longer shows the ledger's user, and saves nothing.
+        if (user != null && account == null && user == currentUser()) {
+            new DashboardSnapshot(user.firstName, user.balance, thisMonthStart,
+                    thisMonthCredits, thisMonthDebits, lastMonthCredits, lastMonthDebits).saveLater();
+        }
+    }
+
+    // The ledger's user, or null if there is none
+    private static Database.User currentUser() {
+        try {
+            return Ledger.ledger.getUser();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Shows the greeting and balance for a user
+     */
+    private void showUser(String firstName, double balance) {
+        // Greet the user
+        whoareyou.setText("Welcome back, " + firstName + "!");
+        // Show current balance
+        mainmoney.setText(NumberFormat.getCurrencyInstance(Locale.US).format(balance));
+    }
+
+    /**
+     * Draws every day from the first record until today onto the heatmap canvas, one column per week
+     * (only the most recent weeks when there are more than fit). Uses a single canvas instead of a node
+     * per day so years of history draw instantly.
+     */
+    public void drawHeatmap() throws IOException {
+        DailyTotals totals = DailyTotals.daily;
+        totals.ensureBuilt();
+
+        GraphicsContext g = heatmap.getGraphicsContext2D();
+        g.clearRect(0, 0, heatmap.getWidth(), heatmap.getHeight());
+
+        long today = LocalDate.now().toEpochDay();
+        long first = Math.min(totals.firstRecordedDay(), today);
+        // Align the first column to a Monday so rows line up with weekdays
+        first -= LocalDate.ofEpochDay(first).getDayOfWeek().getValue() - 1;
+        // Start no earlier than the weeks that fit allow, so the current week is always the last column
+        int fit = (int) Math.max(1, Math.floor(heatmap.getWidth() / HEATMAP_MIN_CELL));
+        long thisWeek = today - (LocalDate.ofEpochDay(today).getDayOfWeek().getValue() - 1);
+        first = Math.max(first, thisWeek - 7L * (fit - 1));
+
+        double[] spent = totals.spentBetween(first, today);
+        double max = 0;
+        for (double s : spent) max = Math.max(max, s);
+
+        int weeks = (spent.length + 6) / 7;
+        double cell = Math.floor(Math.min(heatmap.getWidth() / weeks, heatmap.getHeight() / 7));
+        double gap = cell >= 4 ? 1 : 0;
+
+        for (int d = 0; d < spent.length; d++) {
+            // Log scale so a single huge purchase doesn't wash out every other day
+            double t = max == 0 ? 0 : Math.log1p(spent[d]) / Math.log1p(max);
+            g.setFill(HEATMAP_EMPTY.interpolate(HEATMAP_FULL, t));
+            g.fillRect((d / 7) * cell, (d % 7) * cell, cell - gap, cell - gap);
+        }
+    }
+
+    /**
+     * Lists the recurring transactions expected soonest, from the detector's stored series
+     */
+    public void showUpcoming() throws IOException {
+        long today = LocalDate.now().toEpochDay();
+        List<RecurringDetector.Series> next = RecurringDetector.recurring.upcoming(today, today + UPCOMING_DAYS);
+        upcoming.getChildren().clear();
+        if (next.isEmpty()) {
+            upcoming.getChildren().add(upcomingLabel("Nothing expected in the next " + UPCOMING_DAYS + " days"));
+            return;
+        }
+        DateTimeFormatter day = DateTimeFormatter.ofPattern("MMM d");
+        for (RecurringDetector.Series series : next.subList(0, Math.min(UPCOMING_SHOWN, next.size()))) {
+            upcoming.getChildren().add(upcomingLabel(LocalDate.ofEpochDay(series.nextDay()).format(day) + "  "
+                    + series.name() + "  " + NumberFormat.getCurrencyInstance(Locale.US).format(series.averageAmount())
+                    + " (" + series.cadence().name().toLowerCase() + ")"));
+        }
+    }
+
+    /**
+     * Shows the newest budget alert, if there has been one
+     */
+    private void showBudgetAlert() {
+        List<Budgets.Alert> alerts = Budgets.budgets.getAlerts();
+        if (alerts.isEmpty()) {
+            budgetAlert.setText("");
+            return;
+        }
+        Budgets.Alert alert = alerts.getFirst();
+        NumberFormat money = NumberFormat.getCurrencyInstance(Locale.US);
+        budgetAlert.setText(alert.type().value + (alert.over() ? " budget used up: " : " budget " + Math.round(alert.threshold() * 100) + "% used: ")
+                + money.format(alert.spent()) + " of " + money.format(alert.limit()));
+        budgetAlert.setTextFill(alert.over() ? HEATMAP_FULL : Color.web("#ffd166"));
+    }
+
+    /**
+     * Shows the newest unusual-spending flag raised since the app started, if any
+     */
+    private void showAnomaly() {
+        List<AnomalyDetector.Flag> flags = AnomalyDetector.anomalies.getRecent();
+        anomalyAlert.setText(flags.isEmpty() ? "" : "Unusual: " + flags.getFirst().reason());
+    }
+
+    private static Label upcomingLabel(String text) {
+        Label label = new Label(text);
+        label.setTextFill(Color.WHITE);
+        label.setFont(new Font(16));
+        return label;
     }
 
     /**
@@ -94,16 +295,106 @@ public class MainView implements Initializable {
      */
     @Override
     public void initialize(URL url, ResourceBundle resourceBundle) {
-        try {
-            // Greet the user
-            whoareyou.setText("Welcome back, " + Database.database.getUser().firstName + "!");
-            // Show current balance
-            mainmoney.setText(NumberFormat.getCurrencyInstance(Locale.US).format(Database.database.getUser().balance));
-            // Calculate and show monthly statistics
-            calc();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        long start = Metrics.metrics.start();
+        monthBoundaries();
+        DashboardSnapshot snapshot = launchSnapshot;
+        launchSnapshot = null;
+        if (snapshot != null && snapshot.monthStart() == thisMonthStart) {
+            // Paint the last known state without touching the database, then reconcile in the background
+            showUser(snapshot.firstName(), snapshot.balance());
+            thisMonthCredits = snapshot.thisMonthCredits(); thisMonthDebits = snapshot.thisMonthDebits();
+            lastMonthCredits = snapshot.lastMonthCredits(); lastMonthDebits = snapshot.lastMonthDebits();
+            showMonthlyStats();
+            Metrics.metrics.count("view.MainView.snapshot.hits", 1);
+            refreshInBackground();
+        } else {
+            // No usable snapshot (first launch, or a new month began): load synchronously
+            try {
+                load(Ledger.ledger.getUser());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
         }
+        Metrics.metrics.stop("view.MainView.initialize.time", start);
+    }
+
+    /**
+     * Shows the real user, totals and heatmap, and starts following the ledger
+     */
+    private void load(Database.User user) throws IOException {
+        this.user = user;
+        showUser(user.firstName, user.balance);
+        showAccounts();
+        // Calculate and show monthly statistics
+        calc();
+        // Draw the daily spending heatmap
+        drawHeatmap();
+        // List expected recurring transactions (the detector subscribes to the ledger before this view does)
+        showUpcoming();
+        // Score new spending from here on (and catch up on records added since the last run)
+        AnomalyDetector.anomalies.ensureBuilt();
+        // Follow new and deleted records, and budget alerts, from here on
+        Ledger.ledger.getFinances().addListener(new WeakListChangeListener<>(ledgerListener));
+        showBudgetAlert();
+        Budgets.budgets.getAlerts().addListener(new WeakListChangeListener<>(alertListener));
+        showAnomaly();
+        AnomalyDetector.anomalies.getRecent().addListener(new WeakListChangeListener<>(flagListener));
+    }
+
+    /**
+     * Fills the account picker and follows the user's choice
+     */
+    private void showAccounts() throws IOException {
+        accountPicker.setOnAction(null);
+        accountPicker.getItems().setAll(Accounts.accounts.choices());
+        Database.Account current = Accounts.accounts.currentProperty().get();
+        accountPicker.setValue(current == null ? Accounts.ALL : current);
+        account = Accounts.accounts.currentId();
+        accountPicker.setOnAction(e -> {
+            Accounts.accounts.select(accountPicker.getValue());
+            account = Accounts.accounts.currentId();
+            try {
+                calc();
+            } catch (IOException ex) {
+                System.out.println(ex.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Hands the dashboard snapshot App read at launch to the first MainView, so it paints from that
+     * instead of reading the file again
+     */
+    public static void paintFirstFrom(DashboardSnapshot snapshot) {
+        launchSnapshot = snapshot;
+    }
+
+    // Reads the ledger's records and runs the dashboard queries off the FX thread (so they land in the
+    // query cache), then hands the loaded ledger to the FX thread and swaps the snapshot for the real values
+    private void refreshInBackground() {
+        Thread thread = new Thread(() -> {
+            Ledger.Contents contents;
+            try {
+                contents = Ledger.ledger.read();
+                QueryCache.cache.totals(QueryCache.Query.of(thisMonthStart, Long.MAX_VALUE, null, null));
+                QueryCache.cache.totals(QueryCache.Query.of(lastMonthStart, thisMonthStart, null, null));
+            } catch (IOException e) {
+                // The snapshot stays up; the ledger loads on the FX thread the next time it is used
+                System.out.println(e.getMessage());
+                return;
+            }
+            Platform.runLater(() -> {
+                try {
+                    Ledger.ledger.adopt(contents);
+                    Database.User user = Ledger.ledger.getUser();
+                    if (user != null) load(user);
+                } catch (IOException e) {
+                    System.out.println("Error loading the dashboard: " + e.getMessage());
+                }
+            });
+        }, "dashboard-refresh");
+        thread.setDaemon(true);
+        thread.start();
     }
 
     /**
@@ -136,65 +427,52 @@ public class MainView implements Initializable {
     }
 
     /**
-     * Deletes the local database file and restarts the app after confirmation.
+     * Deletes all data after confirmation and returns to the welcome screen, without restarting the app.
      */
-    @FXML void deleteData() throws IOException {
+    @FXML void deleteData() {
         Alert a = new Alert(Alert.AlertType.CONFIRMATION);
         a.setTitle("Updating Card Data");
         a.setHeaderText("Alert");
-        a.setContentText("Would you like to delete all data? On close, relaunch app.");
+        a.setContentText("Would you like to delete all data? This can't be undone.");
         a.getButtonTypes().setAll(ButtonType.YES, ButtonType.NO);
 
-        a.setOnCloseRequest(event -> {
-            ButtonType result = a.getResult();
-            if (result.equals(ButtonType.YES)) {
-                File myObj = new File("data.db");
-                myObj.delete();
-                System.out.println("Restarting app!");
-                primaryStage.close();
-
-                // Relaunch the application
-                Platform.runLater(() -> {
-                    try {
-                        new App().start(new Stage());
-                    } catch (IOException e) {
-                        throw new RuntimeException(e);
-                    }
-                });
-
-                System.exit(0);
+        a.showAndWait().filter(ButtonType.YES::equals).ifPresent(yes -> {
+            try {
+                DataReset.run();
+                App.setRoot("WelcomeView");
+            } catch (IOException e) {
+                System.out.println("Error deleting data: " + e.getMessage());
             }
         });
+    }
 
-        a.show();
+    /**
+     * Opens the monthly budgets dialog.
+     */
+    @FXML void editBudgets() {
+        BudgetsDialog.showDialog();
+    }
+
+    /**
+     * Opens the backups dialog, to back up now or restore an earlier backup.
+     */
+    @FXML void manageBackups() {
+        BackupsDialog.showDialog();
     }
 
     /**
      * Opens the dialog to add a new finance record.
      */
     @FXML void addFinance() {
-        addNeueFinanceToDatabase(Database.database);
+        addNeueFinanceToDatabase(Ledger.ledger);
     }
 
     /**
-     * Shows an informational alert about updating/unlinking a card.
+     * Opens the accounts dialog to add a card or rename one, then refreshes the account picker.
      */
-    @FXML void updateCard() {
-        Alert a = new Alert(Alert.AlertType.CONFIRMATION);
-        a.setTitle("Updating Card Data");
-        a.setHeaderText("Alert");
-        a.setContentText("Would you like to change card data or remove the card?");
-        a.getButtonTypes().setAll(ButtonType.YES, ButtonType.NO);
-
-        a.setOnCloseRequest(event -> {
-            Alert b = new Alert(Alert.AlertType.INFORMATION);
-            b.setTitle("Updating Card Data");
-            b.setHeaderText("Alert");
-            b.setContentText("Delete all data to change/unlink bank.");
-            b.show();
-        });
-
-        a.show();
+    @FXML void updateCard() throws IOException {
+        AccountsDialog.showDialog();
+        if (user != null) showAccounts();
     }
 
     // Navigation methods
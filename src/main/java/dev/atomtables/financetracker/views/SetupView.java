@@ -2,6 +2,7 @@ package dev.atomtables.financetracker.views;
 
 import dev.atomtables.financetracker.App;
 import dev.atomtables.financetracker.Database;
+import dev.atomtables.financetracker.Ledger;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.scene.control.Button;
@@ -101,7 +102,7 @@ public class SetupView {
                 Soccupation,
                 sum
         );
-        Database.database.setUser(user);
+        Ledger.ledger.setUser(user);
         App.setRoot("tabs/MainView");
     }
 
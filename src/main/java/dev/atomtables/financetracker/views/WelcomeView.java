@@ -1,6 +1,7 @@
 package dev.atomtables.financetracker.views;
 
 import dev.atomtables.financetracker.App;
+import dev.atomtables.financetracker.Metrics;
 import javafx.animation.TranslateTransition;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
@@ -21,6 +22,7 @@ public class WelcomeView implements Initializable {
 
     @Override
     public void initialize(URL url, ResourceBundle resourceBundle) {
+        long start = Metrics.metrics.start();
         // Make sure both waves are visible
         waveImageView1.setVisible(true);
         waveImageView2.setVisible(true);
@@ -31,6 +33,7 @@ public class WelcomeView implements Initializable {
         // Start infinite horizontal wave movement animations for both images
         startWaveAnimation(waveImageView1, waveImageView2, false);
         startWaveAnimation(waveImageView2, waveImageView1, true);
+        Metrics.metrics.stop("view.WelcomeView.initialize.time", start);
     }
 
     /**
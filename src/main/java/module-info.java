@@ -11,7 +11,9 @@ module dev.atomtables.financetracker {
     requires eu.hansolo.tilesfx;
     requires com.almasb.fxgl.all;
     requires java.sql;
+    requires org.xerial.sqlitejdbc;
     requires java.desktop;
+    requires jdk.jfr;
 
     opens dev.atomtables.financetracker to javafx.fxml;
     exports dev.atomtables.financetracker;
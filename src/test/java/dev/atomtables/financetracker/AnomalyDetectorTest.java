@@ -0,0 +1,115 @@
+package dev.atomtables.financetracker;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The running statistics records are scored against: adding and removing, and what counts as unusual
+ */
+class AnomalyDetectorTest {
+    private static final double EPSILON = 1e-9;
+
+    static AnomalyDetector.Stats empty() {
+        return new AnomalyDetector.Stats("m:test", 0, 0, 0, 0, 0, 0);
+    }
+
+    static AnomalyDetector.Stats of(List<Double> xs) {
+        AnomalyDetector.Stats s = empty();
+        for (int i = 0; i < xs.size(); i++) s = s.plus(xs.get(i), i + 1);
+        return s;
+    }
+
+    // What the detector scores: log(1 + |amount|)
+    static double value(double amount) {
+        return Math.log1p(Math.abs(amount));
+    }
+
+    static double mean(List<Double> xs) {
+        return xs.stream().mapToDouble(Double::doubleValue).average().orElse(0);
+    }
+
+    static double variance(List<Double> xs) {
+        double mean = mean(xs), sum = 0;
+        for (double x : xs) sum += (x - mean) * (x - mean);
+        return sum / (xs.size() - 1);
+    }
+
+    @Test
+    void plusMatchesTheTwoPassMeanAndVariance() {
+        List<Double> xs = new ArrayList<>();
+        Random random = new Random(5);
+        for (int i = 0; i < 200; i++) xs.add(value(5 + random.nextDouble() * 95));
+        AnomalyDetector.Stats s = of(xs);
+        assertEquals(200, s.count());
+        assertEquals(mean(xs), s.mean(), EPSILON);
+        assertEquals(Math.sqrt(variance(xs)), s.sd(), EPSILON);
+        assertEquals(200, s.lastId());
+    }
+
+    @Test
+    void plusThenMinusRestoresTheMeanAndVariance() {
+        Random random = new Random(6);
+        List<Double> xs = new ArrayList<>();
+        for (int i = 0; i < 30; i++) xs.add(value(10 + random.nextDouble() * 60));
+        AnomalyDetector.Stats before = of(xs);
+
+        for (double x : List.of(value(7361), value(0.5), xs.get(3))) {
+            AnomalyDetector.Stats after = before.plus(x, 99).minus(x);
+            assertEquals(before.count(), after.count());
+            assertEquals(before.mean(), after.mean(), EPSILON);
+            assertEquals(before.sd(), after.sd(), EPSILON);
+        }
+
+        // Taking out any one value leaves what adding the others alone gives
+        for (int k = 0; k < xs.size(); k += 7) {
+            List<Double> without = new ArrayList<>(xs);
+            double x = without.remove(k);
+            AnomalyDetector.Stats removed = before.minus(x);
+            assertEquals(mean(without), removed.mean(), EPSILON);
+            assertEquals(Math.sqrt(variance(without)), removed.sd(), EPSILON);
+        }
+    }
+
+    @Test
+    void minusEmptiesTheLastValueAndLeavesTheEwma() {
+        AnomalyDetector.Stats one = empty().plus(value(20), 1);
+        AnomalyDetector.Stats none = one.minus(value(20));
+        assertEquals(0, none.count());
+        assertEquals(0, none.mean());
+        assertEquals(0, none.sd());
+
+        // The EWMA can't forget a single value, so removing one leaves it where it was
+        AnomalyDetector.Stats two = one.plus(value(40), 2);
+        AnomalyDetector.Stats back = two.minus(value(40));
+        assertEquals(two.ewmaMean(), back.ewmaMean());
+        assertEquals(two.ewmaVar(), back.ewmaVar());
+    }
+
+    @Test
+    void aHugeRestaurantBillInANormalMonthIsUnusual() {
+        // A month of ordinary restaurant bills, $18 to $95
+        Random random = new Random(8);
+        AnomalyDetector.Stats month = empty();
+        for (int day = 1; day <= 30; day++) month = month.plus(value(18 + random.nextDouble() * 77), day);
+
+        assertTrue(month.score(value(7361)) >= AnomalyDetector.THRESHOLD, "score " + month.score(value(7361)));
+        assertTrue(month.score(value(60)) < AnomalyDetector.THRESHOLD);
+        assertTrue(month.score(value(120)) < AnomalyDetector.THRESHOLD);
+    }
+
+    @Test
+    void tooLittleHistoryScoresNothing() {
+        AnomalyDetector.Stats s = empty();
+        for (int i = 1; i <= 4; i++) s = s.plus(value(20), i);
+        assertEquals(0, s.score(value(7361)));
+        // Identical bills still leave room: the spread is never taken as less than the minimum
+        s = s.plus(value(20), 5);
+        assertTrue(s.score(value(7361)) >= AnomalyDetector.THRESHOLD);
+        assertTrue(s.score(value(21)) < AnomalyDetector.THRESHOLD);
+    }
+}
@@ -0,0 +1,34 @@
+package dev.atomtables.financetracker;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Runs the contract on the SQLite store. Database is a singleton on the file -Dfinancetracker.db names,
+ * emptied before each test, so this only runs when that is a scratch file under target/ or the temporary
+ * directory (Maven's surefire setup points it at target/test-data.db); never against the real data.db.
+ */
+class DatabaseLedgerStoreTest extends LedgerStoreContractTest {
+    @Override
+    protected LedgerStore open(Path dir) {
+        // Checked before anything touches Database, whose first use opens (and creates) the file
+        assumeTrue(isScratch(System.getProperty("financetracker.db")),
+                "-Dfinancetracker.db must name a scratch database under target/ or the temporary directory");
+        return Database.database;
+    }
+
+    // The singleton's writer can't be started again once closed
+    @Override
+    protected void close(LedgerStore store) {}
+
+    // True for a jdbc:sqlite: URL whose file is under a target/ directory or the temporary directory
+    static boolean isScratch(String url) {
+        if (url == null || !url.startsWith("jdbc:sqlite:")) return false;
+        Path file = Path.of(url.substring("jdbc:sqlite:".length())).toAbsolutePath().normalize();
+        Path tmp = Path.of(System.getProperty("java.io.tmpdir")).toAbsolutePath().normalize();
+        if (file.startsWith(tmp)) return true;
+        for (Path part : file.getParent()) if (part.toString().equals("target")) return true;
+        return false;
+    }
+}
@@ -0,0 +1,89 @@
+package dev.atomtables.financetracker;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DatabaseWriterTest {
+    @TempDir
+    Path dir;
+
+    private DatabaseWriter writer;
+
+    @BeforeEach
+    void open() throws Exception {
+        writer = new DatabaseWriter("jdbc:sqlite:" + dir.resolve("test.db"));
+        writer.submit(statements -> statements.prepare("CREATE TABLE t (v INTEGER);").executeUpdate()).get(5, TimeUnit.SECONDS);
+    }
+
+    @AfterEach
+    void close() {
+        writer.close();
+    }
+
+    // Inserts v and returns 1
+    private CompletableFuture<Integer> insert(int v) {
+        return writer.submit(statements -> {
+            var stmt = statements.prepare("INSERT INTO t (v) VALUES (?);");
+            stmt.setInt(1, v);
+            return stmt.executeUpdate();
+        });
+    }
+
+    private int count() throws Exception {
+        return writer.submit(statements -> {
+            try (var rs = statements.prepare("SELECT count(*) FROM t;").executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }).get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void throwingWriteFailsAloneAndTheWriterCarriesOn() throws Exception {
+        CompletableFuture<Integer> before = insert(1);
+        CompletableFuture<Integer> throwing = writer.submit(statements -> {
+            statements.prepare("INSERT INTO t (v) VALUES (2);").executeUpdate();
+            throw new IllegalStateException("boom");
+        });
+        CompletableFuture<Integer> after = insert(3);
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> throwing.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, failure.getCause());
+        assertEquals(1, before.get(5, TimeUnit.SECONDS));
+        assertEquals(1, after.get(5, TimeUnit.SECONDS));
+        // The throwing write's own insert was rolled back with it
+        assertEquals(2, count());
+    }
+
+    @Test
+    void throwingAloneWriteFailsAndTheWriterCarriesOn() throws Exception {
+        CompletableFuture<Integer> throwing = writer.submitAlone(statements -> {
+            throw new NullPointerException("no name");
+        });
+        CompletableFuture<Integer> after = insert(1);
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> throwing.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(NullPointerException.class, failure.getCause());
+        assertEquals(1, after.get(5, TimeUnit.SECONDS));
+        assertEquals(1, count());
+    }
+
+    @Test
+    void errorInAWriteDoesNotStopTheThread() throws Exception {
+        CompletableFuture<Integer> failing = writer.submit(statements -> {
+            throw new StackOverflowError();
+        });
+        assertThrows(ExecutionException.class, () -> failing.get(5, TimeUnit.SECONDS));
+        assertEquals(1, insert(1).get(5, TimeUnit.SECONDS));
+        assertEquals(1, count());
+    }
+}
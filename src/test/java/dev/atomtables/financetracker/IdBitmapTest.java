@@ -0,0 +1,143 @@
+package dev.atomtables.financetracker;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks IdBitmap against a TreeSet doing the same thing, around the places its chunks change form
+ */
+class IdBitmapTest {
+    // Ids per chunk (all the ids sharing their high 16 bits)
+    private static final int CHUNK = 1 << 16;
+
+    // Asserts the bitmap holds exactly the model's ids, in order
+    static void assertMatches(TreeSet<Integer> model, IdBitmap bitmap) {
+        assertArrayEquals(model.stream().mapToInt(Integer::intValue).toArray(), bitmap.toArray());
+        assertEquals(model.size(), bitmap.cardinality());
+        assertEquals(model.isEmpty(), bitmap.isEmpty());
+    }
+
+    static IdBitmap bitmapOf(TreeSet<Integer> ids) {
+        IdBitmap bitmap = new IdBitmap();
+        for (int id : ids) bitmap.add(id);
+        return bitmap;
+    }
+
+    // Count distinct random ids below bound
+    static TreeSet<Integer> randomIds(Random random, int count, int bound) {
+        TreeSet<Integer> ids = new TreeSet<>();
+        while (ids.size() < count) ids.add(random.nextInt(bound));
+        return ids;
+    }
+
+    @Test
+    void addRemoveAndContainsMatchTheModel() {
+        Random random = new Random(1);
+        TreeSet<Integer> model = new TreeSet<>();
+        IdBitmap bitmap = new IdBitmap();
+        for (int i = 0; i < 50_000; i++) {
+            // Three chunks, the first dense enough to switch to words and back
+            int id = random.nextInt(3) == 0 ? random.nextInt(3 * CHUNK) : random.nextInt(6000);
+            if (random.nextBoolean()) assertEquals(model.add(id), bitmap.add(id));
+            else assertEquals(model.remove(id), bitmap.remove(id));
+            if (i % 5000 == 0) assertMatches(model, bitmap);
+        }
+        assertMatches(model, bitmap);
+        for (int id = 0; id < 6000; id++) assertEquals(model.contains(id), bitmap.contains(id));
+        assertFalse(bitmap.contains(-1));
+        assertFalse(bitmap.remove(-1));
+        assertThrows(IllegalArgumentException.class, () -> bitmap.add(-1));
+    }
+
+    @Test
+    void crossesTheArrayLimitBothWays() {
+        TreeSet<Integer> model = new TreeSet<>();
+        IdBitmap bitmap = new IdBitmap();
+        // Up to the 4096 limit as an array, then one more turns the chunk into words
+        for (int id = 0; id < 4096; id++) assertTrue(bitmap.add(id * 3) && model.add(id * 3));
+        assertMatches(model, bitmap);
+        assertTrue(bitmap.add(5) && model.add(5));
+        assertFalse(bitmap.add(5));
+        assertMatches(model, bitmap);
+
+        // Hovering just around the limit (the chunk stays words) gives the same answers every time
+        for (int i = 0; i < 10; i++) {
+            assertTrue(bitmap.remove(5) && model.remove(5));
+            assertFalse(bitmap.contains(5));
+            assertMatches(model, bitmap);
+            assertTrue(bitmap.add(5) && model.add(5));
+            assertMatches(model, bitmap);
+        }
+
+        // Down to 2048 switches back to an array; every step stays exact
+        for (int id : model.descendingSet().stream().limit(2049).toList()) {
+            assertTrue(bitmap.remove(id));
+            model.remove(id);
+            assertFalse(bitmap.remove(id));
+            assertFalse(bitmap.contains(id));
+        }
+        assertEquals(2048, bitmap.cardinality());
+        assertMatches(model, bitmap);
+
+        // And up past the limit again
+        for (int id = 1; model.size() <= 4096; id += 3) assertEquals(model.add(id), bitmap.add(id));
+        assertMatches(model, bitmap);
+
+        // Emptying a chunk drops it
+        for (int id : new TreeSet<>(model)) assertTrue(bitmap.remove(id));
+        assertTrue(bitmap.isEmpty());
+        assertEquals(0, bitmap.toArray().length);
+    }
+
+    @Test
+    void setOperationsMatchTheModelAcrossChunks() {
+        Random random = new Random(2);
+        // Sparse and dense chunks on either side, and chunks only one side has
+        TreeSet<Integer> a = randomIds(random, 9000, 2 * CHUNK);
+        a.addAll(randomIds(random, 100, CHUNK).stream().map(id -> id + 4 * CHUNK).toList());
+        TreeSet<Integer> b = randomIds(random, 300, CHUNK);
+        b.addAll(randomIds(random, 7000, CHUNK).stream().map(id -> id + CHUNK).toList());
+        b.addAll(randomIds(random, 50, CHUNK).stream().map(id -> id + 3 * CHUNK).toList());
+        IdBitmap x = bitmapOf(a), y = bitmapOf(b);
+
+        TreeSet<Integer> and = new TreeSet<>(a);
+        and.retainAll(b);
+        TreeSet<Integer> or = new TreeSet<>(a);
+        or.addAll(b);
+        TreeSet<Integer> andNot = new TreeSet<>(a);
+        andNot.removeAll(b);
+        TreeSet<Integer> notAnd = new TreeSet<>(b);
+        notAnd.removeAll(a);
+
+        assertMatches(and, x.and(y));
+        assertMatches(and, y.and(x));
+        assertMatches(or, x.or(y));
+        assertMatches(or, y.or(x));
+        assertMatches(andNot, x.andNot(y));
+        assertMatches(notAnd, y.andNot(x));
+        assertMatches(new TreeSet<>(), x.andNot(x));
+        assertMatches(a, x.or(new IdBitmap()));
+        assertMatches(new TreeSet<>(), x.and(new IdBitmap()));
+    }
+
+    @Test
+    void resultsDontShareChunksWithTheirInputs() {
+        TreeSet<Integer> a = randomIds(new Random(3), 5000, CHUNK);
+        IdBitmap x = bitmapOf(a);
+        IdBitmap union = x.or(new IdBitmap());
+        IdBitmap copy = x.copy();
+        for (int id : a.headSet(1000)) {
+            union.remove(id);
+            copy.remove(id);
+        }
+        assertMatches(a, x);
+        x.add(2 * CHUNK);
+        assertFalse(union.contains(2 * CHUNK));
+        assertFalse(copy.contains(2 * CHUNK));
+        assertEquals(a.tailSet(1000).size(), copy.cardinality());
+    }
+}
@@ -0,0 +1,116 @@
+package dev.atomtables.financetracker;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the Aho-Corasick matcher against a naive search at every position, and the rule tie-break built on it
+ */
+class KeywordMatcherTest {
+    static List<Integer> matches(List<String> keywords, String text) {
+        List<Integer> out = new ArrayList<>();
+        new KeywordMatcher(keywords).match(text, out::add);
+        return out;
+    }
+
+    // Every occurrence by trying each keyword at each position: in the order matches end, longest first
+    // for the same end (as the automaton walks its fail chain). A keyword listed twice reports as the first.
+    static List<Integer> naive(List<String> keywords, String text) {
+        String folded = fold(text);
+        List<Integer> out = new ArrayList<>();
+        for (int end = 1; end <= text.length(); end++) {
+            for (int length = end; length >= 1; length--) {
+                for (int k = 0; k < keywords.size(); k++) {
+                    String keyword = fold(keywords.get(k));
+                    if (keyword.length() == length && folded.startsWith(keyword, end - length)
+                            && !keywords.subList(0, k).stream().map(KeywordMatcherTest::fold).toList().contains(keyword)) {
+                        out.add(k);
+                    }
+                }
+            }
+        }
+        return out;
+    }
+
+    // Lower case one char at a time, as the matcher compares
+    static String fold(String s) {
+        StringBuilder out = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) out.append(Character.toLowerCase(s.charAt(i)));
+        return out.toString();
+    }
+
+    static String random(Random random, String alphabet, int length) {
+        StringBuilder out = new StringBuilder(length);
+        for (int i = 0; i < length; i++) out.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        return out.toString();
+    }
+
+    @Test
+    void findsOverlappingKeywords() {
+        List<String> keywords = List.of("he", "she", "his", "hers");
+        assertEquals(List.of(1, 0, 3), matches(keywords, "ushers"));
+        assertEquals(naive(keywords, "ushers"), matches(keywords, "ushers"));
+        // Every occurrence counts, including ones sharing characters
+        assertEquals(List.of(0, 0, 0), matches(List.of("aa"), "aaaa"));
+    }
+
+    @Test
+    void ignoresCase() {
+        assertEquals(List.of(0, 1), matches(List.of("STARBUCKS", "Coffee"), "starbucks COFFEE"));
+        assertEquals(List.of(0), matches(List.of("Uber"), "UBER *TRIP"));
+    }
+
+    @Test
+    void skipsEmptyKeywordsAndReportsADuplicateOnce() {
+        assertEquals(List.of(1, 1), matches(List.of("", "ab", ""), "abab"));
+        assertEquals(List.of(0), matches(List.of("Bar", "bar", "BAR"), "bar"));
+        assertEquals(List.of(), matches(List.of(), "anything"));
+        assertEquals(List.of(), matches(List.of("x"), ""));
+    }
+
+    @Test
+    void agreesWithNaiveSearch() {
+        Random random = new Random(7);
+        for (int round = 0; round < 500; round++) {
+            // A small alphabet in both cases, so keywords overlap, nest and repeat a lot
+            List<String> keywords = new ArrayList<>();
+            int count = 1 + random.nextInt(12);
+            for (int k = 0; k < count; k++) {
+                keywords.add(random.nextInt(10) == 0 && !keywords.isEmpty()
+                        ? keywords.get(random.nextInt(keywords.size())).toUpperCase()
+                        : random(random, "abcAB", random.nextInt(5)));
+            }
+            String text = random(random, "abcABd", random.nextInt(60));
+            assertEquals(naive(keywords, text), matches(keywords, text), () -> keywords + " in " + text);
+        }
+    }
+
+    @Test
+    void longestKeywordThenLowestIdDecidesTheType() throws Exception {
+        CategoryRules rules = CategoryRules.of(List.of(
+                new CategoryRules.Rule(7, "star", Database.Finance.Type.ENTERTAINMENT, List.of("space")),
+                new CategoryRules.Rule(3, "starbucks", Database.Finance.Type.FOODDRINK, List.of("coffee")),
+                new CategoryRules.Rule(9, "bucks", null, List.of("money")),
+                new CategoryRules.Rule(5, "train", Database.Finance.Type.TRANSPORTATION, List.of()),
+                new CategoryRules.Rule(2, "trail", Database.Finance.Type.TRAVEL, List.of())));
+
+        // The longest matching keyword wins, and every match adds its tags
+        CategoryRules.Category starbucks = rules.categorize("STARBUCKS #123");
+        assertEquals(Database.Finance.Type.FOODDRINK, starbucks.type());
+        assertEquals(List.of("space", "coffee", "money"), starbucks.tags());
+        // Same length: the lower id wins, whatever order the rules are listed or matched in
+        assertEquals(Database.Finance.Type.TRAVEL, rules.categorize("train to the trail").type());
+        assertEquals(Database.Finance.Type.TRAVEL, rules.categorize("trail then train").type());
+        // A rule without a type only adds tags
+        CategoryRules.Category bucks = rules.categorize("Bucks");
+        assertNull(bucks.type());
+        assertEquals(List.of("money"), bucks.tags());
+        assertNull(rules.categorize("Grocery"));
+        assertNull(rules.categorize(null));
+    }
+}
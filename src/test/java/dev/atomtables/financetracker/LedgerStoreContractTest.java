@@ -0,0 +1,183 @@
+package dev.atomtables.financetracker;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * What every LedgerStore must do the same way; each implementation runs it through a subclass
+ */
+abstract class LedgerStoreContractTest {
+    @TempDir
+    Path dir;
+
+    protected LedgerStore store;
+
+    // An empty store for one test, kept under dir if it keeps anything
+    protected abstract LedgerStore open(Path dir) throws Exception;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        store = open(dir);
+        store.reset();
+    }
+
+    @AfterEach
+    void tearDown() {
+        close(store);
+    }
+
+    // Lets go of the store after a test
+    protected void close(LedgerStore store) {
+        store.close();
+    }
+
+    // A record dated at the start of a day
+    static Database.Finance finance(String name, double amount, Database.Finance.Type type, LocalDate day) {
+        Database.Finance f = new Database.Finance();
+        f.name = name;
+        f.direction = amount > 0;
+        f.amount = amount;
+        f.type = type;
+        f.date = Date.from(day.atStartOfDay(ZoneId.systemDefault()).toInstant());
+        return f;
+    }
+
+    static long millis(LocalDate day) {
+        return day.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    static List<Integer> ids(List<Database.Finance> fs) {
+        return fs.stream().map(f -> f.id).toList();
+    }
+
+    @Test
+    void addsGiveNewIdsInOrder() throws Exception {
+        Database.Finance a = finance("Coffee", -4.5, Database.Finance.Type.FOODDRINK, LocalDate.of(2024, 3, 1));
+        store.addFinance(a);
+        Database.Finance b = finance("Train", -12, Database.Finance.Type.TRANSPORTATION, LocalDate.of(2024, 3, 2));
+        int bId = store.addFinanceAsync(b).get(5, TimeUnit.SECONDS);
+        List<Database.Finance> more = List.of(
+                finance("Salary", 2000, Database.Finance.Type.SERVICES, LocalDate.of(2024, 3, 3)),
+                finance("Shoes", -80, Database.Finance.Type.SHOPPING, LocalDate.of(2024, 3, 4)));
+        for (CompletableFuture<Integer> write : store.addFinancesAsync(more)) write.get(5, TimeUnit.SECONDS);
+
+        assertEquals(bId, b.id);
+        assertTrue(a.id < b.id && b.id < more.get(0).id && more.get(0).id < more.get(1).id);
+        List<Database.Finance> all = store.getFinances(FinanceFilter.NONE);
+        assertEquals(List.of(a.id, b.id, more.get(0).id, more.get(1).id), ids(all));
+        Database.Finance coffee = all.get(0);
+        assertEquals("Coffee", coffee.name);
+        assertEquals(-4.5, coffee.amount);
+        assertEquals(false, coffee.direction);
+        assertEquals(Database.Finance.Type.FOODDRINK, coffee.type);
+        assertEquals(a.date.getTime(), coffee.date.getTime());
+    }
+
+    @Test
+    void deleteRemovesOnlyThatRecord() throws Exception {
+        Database.Finance a = finance("Coffee", -4.5, Database.Finance.Type.FOODDRINK, LocalDate.of(2024, 3, 1));
+        Database.Finance b = finance("Train", -12, Database.Finance.Type.TRANSPORTATION, LocalDate.of(2024, 3, 2));
+        Database.Finance c = finance("Cinema", -15, Database.Finance.Type.ENTERTAINMENT, LocalDate.of(2024, 3, 3));
+        store.addFinance(a);
+        store.addFinance(b);
+        store.addFinance(c);
+
+        store.deleteFinance(b.id);
+        assertEquals(List.of(a.id, c.id), ids(store.getFinances(FinanceFilter.NONE)));
+        store.deleteFinances(List.of(a.id, c.id));
+        assertTrue(store.getFinances(FinanceFilter.NONE).isEmpty());
+    }
+
+    @Test
+    void replaceOverwritesTheRecord() throws Exception {
+        Database.Finance a = finance("Coffee", -4.5, Database.Finance.Type.FOODDRINK, LocalDate.of(2024, 3, 1));
+        store.addFinance(a);
+
+        Database.Finance edited = a.copy();
+        edited.name = "Lunch";
+        edited.amount = -11;
+        edited.type = Database.Finance.Type.SERVICES;
+        edited.tags = List.of("work");
+        store.replaceFinance(edited);
+
+        Database.Finance stored = store.getFinances(FinanceFilter.NONE).get(0);
+        assertEquals(a.id, stored.id);
+        assertEquals("Lunch", stored.name);
+        assertEquals(-11, stored.amount);
+        assertEquals(Database.Finance.Type.SERVICES, stored.type);
+        assertEquals(List.of("work"), stored.tags);
+    }
+
+    @Test
+    void restoreBringsARecordBackUnderItsId() throws Exception {
+        Database.Finance a = finance("Coffee", -4.5, Database.Finance.Type.FOODDRINK, LocalDate.of(2024, 3, 1));
+        Database.Finance b = finance("Train", -12, Database.Finance.Type.TRANSPORTATION, LocalDate.of(2024, 3, 2));
+        store.addFinance(a);
+        store.addFinance(b);
+        Database.Finance deleted = store.getFinances(FinanceFilter.NONE).get(0);
+        store.deleteFinance(a.id);
+
+        store.restoreFinance(deleted);
+        assertEquals(List.of(a.id, b.id), ids(store.getFinances(FinanceFilter.NONE)));
+        assertEquals("Coffee", store.getFinances(FinanceFilter.NONE).get(0).name);
+
+        // Ids are never handed out twice
+        Database.Finance c = finance("Cinema", -15, Database.Finance.Type.ENTERTAINMENT, LocalDate.of(2024, 3, 3));
+        store.addFinance(c);
+        assertTrue(c.id > b.id);
+    }
+
+    @Test
+    void filterPicksDatesTypesAndAccount() throws Exception {
+        Database.Finance feb = finance("Coffee", -4.5, Database.Finance.Type.FOODDRINK, LocalDate.of(2024, 2, 10));
+        Database.Finance march = finance("Train", -12, Database.Finance.Type.TRANSPORTATION, LocalDate.of(2024, 3, 5));
+        Database.Finance marchFood = finance("Bakery", -6, Database.Finance.Type.FOODDRINK, LocalDate.of(2024, 3, 20));
+        Database.Finance april = finance("Cinema", -15, Database.Finance.Type.ENTERTAINMENT, LocalDate.of(2024, 4, 1));
+        april.accountId = 2;
+        for (Database.Finance f : List.of(feb, march, marchFood, april)) store.addFinance(f);
+
+        // From inclusive, to exclusive
+        FinanceFilter inMarch = FinanceFilter.NONE.withDates(millis(LocalDate.of(2024, 3, 1)), millis(LocalDate.of(2024, 4, 1)));
+        assertEquals(List.of(march.id, marchFood.id), ids(store.getFinances(inMarch)));
+        assertEquals(List.of(marchFood.id),
+                ids(store.getFinances(inMarch.withTypes(Set.of(Database.Finance.Type.FOODDRINK)))));
+        assertEquals(List.of(april.id), ids(store.getFinances(FinanceFilter.NONE.withAccount(2))));
+        assertEquals(List.of(feb.id, march.id, marchFood.id),
+                ids(store.getFinances(FinanceFilter.NONE.withAccount(Database.DEFAULT_ACCOUNT))));
+    }
+
+    @Test
+    void userIsKept() throws Exception {
+        assertNull(store.getUser());
+        store.setUser(new Database.User("Ada", "Lovelace", "ada@example.com", "1815-12-10", "Analyst", 250));
+
+        Database.User user = store.getUser();
+        assertEquals("Ada", user.firstName);
+        assertEquals("Lovelace", user.lastName);
+        assertEquals("ada@example.com", user.email);
+        assertEquals(250, user.balance);
+    }
+
+    @Test
+    void resetEmptiesTheStore() throws Exception {
+        store.setUser(new Database.User("Ada", "Lovelace", "ada@example.com", "1815-12-10", "Analyst", 250));
+        store.addFinance(finance("Coffee", -4.5, Database.Finance.Type.FOODDRINK, LocalDate.of(2024, 3, 1)));
+
+        store.reset();
+        assertNull(store.getUser());
+        assertTrue(store.getFinances(FinanceFilter.NONE).isEmpty());
+    }
+}
@@ -0,0 +1,78 @@
+package dev.atomtables.financetracker;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogLedgerStoreTest extends LedgerStoreContractTest {
+    @Override
+    protected LedgerStore open(Path dir) {
+        return new LogLedgerStore(dir.resolve("ledger.log"));
+    }
+
+    // Closes the store and opens its file again, as the next launch would
+    private LedgerStore reopen() {
+        store.close();
+        store = open(dir);
+        return store;
+    }
+
+    @Test
+    void everyChangeSurvivesAReopen() throws Exception {
+        store.setUser(new Database.User("Ada", "Lovelace", "ada@example.com", "1815-12-10", "Analyst", 250));
+        Database.Finance a = finance("Coffee", -4.5, Database.Finance.Type.FOODDRINK, LocalDate.of(2024, 3, 1));
+        Database.Finance b = finance("Train", -12, Database.Finance.Type.TRANSPORTATION, LocalDate.of(2024, 3, 2));
+        Database.Finance c = finance("Cinema", -15, Database.Finance.Type.ENTERTAINMENT, LocalDate.of(2024, 3, 3));
+        store.addFinance(a);
+        store.addFinance(b);
+        store.addFinance(c);
+        Database.Finance edited = b.copy();
+        edited.name = "Bus";
+        store.replaceFinance(edited);
+        store.deleteFinance(c.id);
+
+        List<Database.Finance> after = reopen().getFinances(FinanceFilter.NONE);
+        assertEquals(List.of(a.id, b.id), ids(after));
+        assertEquals("Bus", after.get(1).name);
+        assertEquals("Ada", store.getUser().firstName);
+        // The deleted record's id isn't handed out again
+        Database.Finance d = finance("Shoes", -80, Database.Finance.Type.SHOPPING, LocalDate.of(2024, 3, 4));
+        store.addFinance(d);
+        assertTrue(d.id > c.id);
+    }
+
+    @Test
+    void compactionKeepsTheLatestVersions() throws Exception {
+        store.setUser(new Database.User("Ada", "Lovelace", "ada@example.com", "1815-12-10", "Analyst", 250));
+        Database.Finance kept = finance("Coffee", -4.5, Database.Finance.Type.FOODDRINK, LocalDate.of(2024, 3, 1));
+        Database.Finance edited = finance("Rent", -900, Database.Finance.Type.SERVICES, LocalDate.of(2024, 3, 2));
+        Database.Finance gone = finance("Train", -12, Database.Finance.Type.TRANSPORTATION, LocalDate.of(2024, 3, 3));
+        store.addFinance(kept);
+        store.addFinance(edited);
+        store.addFinance(gone);
+        store.deleteFinance(gone.id);
+
+        // Enough superseded versions to pass the compaction threshold (4096 slots, over half the file)
+        long compactions = Metrics.metrics.counter("store.log.compactions");
+        for (int i = 1; i <= 5000; i++) {
+            Database.Finance version = edited.copy();
+            version.amount = -900 - i;
+            store.replaceFinance(version);
+        }
+        assertTrue(Metrics.metrics.counter("store.log.compactions") > compactions);
+
+        for (LedgerStore s : List.of(store, reopen())) {
+            List<Database.Finance> all = s.getFinances(FinanceFilter.NONE);
+            assertEquals(List.of(kept.id, edited.id), ids(all));
+            assertEquals(-5900, all.get(1).amount);
+            assertEquals("Ada", s.getUser().firstName);
+        }
+        Database.Finance next = finance("Shoes", -80, Database.Finance.Type.SHOPPING, LocalDate.of(2024, 3, 4));
+        store.addFinance(next);
+        assertTrue(next.id > gone.id);
+    }
+}
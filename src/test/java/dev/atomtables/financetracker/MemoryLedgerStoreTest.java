@@ -0,0 +1,10 @@
+package dev.atomtables.financetracker;
+
+import java.nio.file.Path;
+
+class MemoryLedgerStoreTest extends LedgerStoreContractTest {
+    @Override
+    protected LedgerStore open(Path dir) {
+        return new MemoryLedgerStore();
+    }
+}
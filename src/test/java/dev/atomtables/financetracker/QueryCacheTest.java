@@ -0,0 +1,142 @@
+package dev.atomtables.financetracker;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Which writes drop which cached totals, and that a load overtaken by a write isn't kept
+ */
+class QueryCacheTest {
+    // How many times each query was loaded; the totals returned carry that number as their count
+    private final Map<QueryCache.Query, Integer> loads = new HashMap<>();
+    private Runnable duringLoad = () -> {};
+    private final QueryCache cache = new QueryCache(16, query -> {
+        duringLoad.run();
+        return new QueryCache.Totals(0, 0, loads.merge(query, 1, Integer::sum));
+    });
+
+    private static final QueryCache.Query MARCH = month(2024, 3, 1);
+    private static final QueryCache.Query APRIL = month(2024, 4, 1);
+    private static final QueryCache.Query MARCH_OTHER_ACCOUNT = month(2024, 3, 2);
+    private static final QueryCache.Query YEAR = QueryCache.Query.of(
+            millis(LocalDate.of(2024, 1, 1)), millis(LocalDate.of(2025, 1, 1)), null, null, 1);
+
+    static long millis(LocalDate day) {
+        return LedgerStoreContractTest.millis(day);
+    }
+
+    static QueryCache.Query month(int year, int month, int account) {
+        LocalDate first = LocalDate.of(year, month, 1);
+        return QueryCache.Query.of(millis(first), millis(first.plusMonths(1)), null, null, account);
+    }
+
+    static Database.Finance record(int account, LocalDate day) {
+        Database.Finance f = LedgerStoreContractTest.finance("Coffee", -4.5, Database.Finance.Type.FOODDRINK, day);
+        f.accountId = account;
+        return f;
+    }
+
+    // Loads every query once, so each is cached
+    private void warm(QueryCache.Query... queries) throws Exception {
+        for (QueryCache.Query query : queries) cache.totals(query);
+    }
+
+    // How many times a query has been loaded, after asking for it once more
+    private long loadsAfterAsking(QueryCache.Query query) throws Exception {
+        return cache.totals(query).count();
+    }
+
+    @Test
+    void repeatedQueriesAreServedFromMemory() throws Exception {
+        warm(MARCH, APRIL);
+        assertEquals(1, loadsAfterAsking(MARCH));
+        assertEquals(1, loadsAfterAsking(APRIL));
+        // Equal queries share an entry: the full set of types is the same as no type filter
+        assertEquals(1, loadsAfterAsking(QueryCache.Query.of(MARCH.from(), MARCH.to(),
+                EnumSet.allOf(Database.Finance.Type.class), null, 1)));
+    }
+
+    @Test
+    void aWriteDropsOnlyItsAccountsEntriesCoveringItsMonth() throws Exception {
+        warm(MARCH, APRIL, MARCH_OTHER_ACCOUNT, YEAR);
+        cache.invalidate(1, millis(LocalDate.of(2024, 3, 15)));
+
+        assertEquals(2, loadsAfterAsking(MARCH));
+        assertEquals(2, loadsAfterAsking(YEAR));
+        assertEquals(1, loadsAfterAsking(APRIL));
+        assertEquals(1, loadsAfterAsking(MARCH_OTHER_ACCOUNT));
+    }
+
+    @Test
+    void aBulkWriteDropsTheEntriesOfEveryAccountAndMonthItTouched() throws Exception {
+        QueryCache.Query may = month(2024, 5, 1);
+        warm(MARCH, APRIL, may, MARCH_OTHER_ACCOUNT);
+        cache.invalidate(List.of(record(1, LocalDate.of(2024, 4, 2)), record(2, LocalDate.of(2024, 3, 30))));
+
+        assertEquals(2, loadsAfterAsking(APRIL));
+        assertEquals(2, loadsAfterAsking(MARCH_OTHER_ACCOUNT));
+        assertEquals(1, loadsAfterAsking(MARCH));
+        assertEquals(1, loadsAfterAsking(may));
+        // Nothing written, nothing dropped
+        cache.invalidate(List.of());
+        assertEquals(2, loadsAfterAsking(APRIL));
+    }
+
+    @Test
+    void anUpdateMovingARecordToAnotherMonthDropsBothMonths() throws Exception {
+        QueryCache.Query may = month(2024, 5, 1);
+        warm(MARCH, APRIL, may);
+        Database.Finance before = record(1, LocalDate.of(2024, 3, 10));
+        Database.Finance after = before.copy();
+        after.date = record(1, LocalDate.of(2024, 5, 10)).date;
+
+        // As Database.replaceFinance does: the old and new versions together
+        cache.invalidate(List.of(before, after));
+        assertEquals(2, loadsAfterAsking(MARCH));
+        assertEquals(2, loadsAfterAsking(may));
+        assertEquals(1, loadsAfterAsking(APRIL));
+
+        // As MemoryLedgerStore.replaceFinance does: once for each, here moving it back to March
+        cache.invalidate(after.accountId, after.date.getTime());
+        cache.invalidate(before.accountId, before.date.getTime());
+        assertEquals(3, loadsAfterAsking(MARCH));
+        assertEquals(3, loadsAfterAsking(may));
+        assertEquals(1, loadsAfterAsking(APRIL));
+    }
+
+    @Test
+    void aLoadOvertakenByAWriteIsNotKept() throws Exception {
+        // A write lands while the query runs, so its result may already be out of date
+        duringLoad = () -> {
+            duringLoad = () -> {};
+            cache.invalidate(1, millis(LocalDate.of(2024, 3, 15)));
+        };
+        assertEquals(1, loadsAfterAsking(MARCH));
+        // It was handed back but not stored, so the next ask loads again; that load is kept
+        assertEquals(2, loadsAfterAsking(MARCH));
+        assertEquals(2, loadsAfterAsking(MARCH));
+
+        // Any write counts, even one to another account: the cache can't tell what the load read
+        duringLoad = () -> {
+            duringLoad = () -> {};
+            cache.invalidate(2, millis(LocalDate.of(2020, 1, 1)));
+        };
+        assertEquals(1, loadsAfterAsking(APRIL));
+        assertEquals(2, loadsAfterAsking(APRIL));
+        assertEquals(2, loadsAfterAsking(APRIL));
+
+        duringLoad = () -> {
+            duringLoad = () -> {};
+            cache.clear();
+        };
+        assertEquals(1, loadsAfterAsking(YEAR));
+        assertEquals(2, loadsAfterAsking(YEAR));
+    }
+}
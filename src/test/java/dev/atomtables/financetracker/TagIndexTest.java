@@ -0,0 +1,96 @@
+package dev.atomtables.financetracker;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The tag query language, on a fixed index over a handful of records
+ */
+class TagIndexTest {
+    // 1: food, work   2: food   3: transport, work   4: food, work, reimbursed   5: shopping split into food
+    private final TagIndex index = TagIndex.of(List.of(
+            record(1, Database.Finance.Type.FOODDRINK, "work"),
+            record(2, Database.Finance.Type.FOODDRINK),
+            record(3, Database.Finance.Type.TRANSPORTATION, "work"),
+            record(4, Database.Finance.Type.FOODDRINK, "work", "reimbursed"),
+            split(5, Database.Finance.Type.SHOPPING, Database.Finance.Type.FOODDRINK)));
+
+    static Database.Finance record(int id, Database.Finance.Type type, String... tags) {
+        Database.Finance f = LedgerStoreContractTest.finance("r" + id, -10, type, LocalDate.of(2024, 3, 1));
+        f.id = id;
+        f.tags = List.of(tags);
+        return f;
+    }
+
+    static Database.Finance split(int id, Database.Finance.Type type, Database.Finance.Type other) {
+        Database.Finance f = record(id, type);
+        f.splits = List.of(new Database.Finance.Split(type, -6), new Database.Finance.Split(other, -4));
+        return f;
+    }
+
+    List<Integer> query(String expression) throws Exception {
+        List<Integer> ids = new ArrayList<>();
+        index.query(expression).forEach(ids::add);
+        return ids;
+    }
+
+    @Test
+    void termsMatchTypesAndTags() throws Exception {
+        assertEquals(List.of(1, 2, 4, 5), query("FOODDRINK"));
+        assertEquals(List.of(1, 2, 4, 5), query("fooddrink"));
+        assertEquals(List.of(1, 3, 4), query("tag:work"));
+        assertEquals(List.of(1, 3, 4), query("TAG:Work"));
+        assertEquals(List.of(), query("tag:nothing"));
+    }
+
+    @Test
+    void andBindsTighterThanOr() throws Exception {
+        // TRANSPORTATION OR (FOODDRINK AND tag:reimbursed), not (TRANSPORTATION OR FOODDRINK) AND tag:reimbursed
+        assertEquals(List.of(3, 4), query("TRANSPORTATION OR FOODDRINK AND tag:reimbursed"));
+        assertEquals(List.of(4), query("(TRANSPORTATION OR FOODDRINK) AND tag:reimbursed"));
+        assertEquals(List.of(3, 4), query("tag:reimbursed AND FOODDRINK OR TRANSPORTATION"));
+    }
+
+    @Test
+    void notIsAgainstEveryRecord() throws Exception {
+        assertEquals(List.of(2, 5), query("NOT tag:work"));
+        assertEquals(List.of(1), query("FOODDRINK AND tag:work AND NOT tag:reimbursed"));
+        assertEquals(List.of(1, 3, 4), query("NOT NOT tag:work"));
+        assertEquals(List.of(1, 4), query("FOODDRINK AND NOT NOT tag:work"));
+        assertEquals(List.of(2, 3, 5), query("NOT (FOODDRINK AND tag:work)"));
+        assertEquals(List.of(3), query("NOT FOODDRINK"));
+    }
+
+    @Test
+    void parenthesesNest() throws Exception {
+        assertEquals(List.of(1, 3), query("((tag:work) AND NOT (tag:reimbursed))"));
+        assertEquals(List.of(1, 2, 3, 4, 5), query("(FOODDRINK OR (TRANSPORTATION AND tag:work))"));
+    }
+
+    @Test
+    void queriesDontChangeTheIndex() throws Exception {
+        // A bare term is handed out as a copy, so the caller can't change the index through it
+        index.query("tag:work").add(2);
+        assertEquals(List.of(1, 3, 4), query("tag:work"));
+    }
+
+    @Test
+    void badQueriesSayWhatIsWrong() {
+        assertEquals("Empty query", message("   "));
+        assertEquals("Query ends early", message("FOODDRINK AND"));
+        assertEquals("Query ends early", message("NOT"));
+        assertEquals("Missing )", message("(FOODDRINK OR tag:work"));
+        assertEquals("Unexpected \")\"", message("FOODDRINK)"));
+        assertEquals("Unexpected \"tag:work\"", message("FOODDRINK tag:work"));
+        assertEquals("Unknown type \"lunch\"", message("lunch"));
+    }
+
+    private String message(String expression) {
+        return assertThrows(IllegalArgumentException.class, () -> index.query(expression)).getMessage();
+    }
+}